@@ -0,0 +1,27 @@
+package code.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of target/benchmarks.jar: the usual JMH command line, with the GC profiler
+ * always on so every result carries allocation rates (gc.alloc.rate.norm = bytes per op).
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner(){}
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if(cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams()
+                || cmd.shouldListProfilers() || cmd.shouldListResultFormats()){
+            Main.main(args);
+            return;
+        }
+        Options opts = new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,49 @@
+package code.bench;
+
+import code.delivery.*;
+import code.model.*;
+import code.search.MultiGoalSearch;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * CollisionAvoider.makeSafe on the raw (not yet collision-free) routes of a planned world:
+ * each agent's shortest path through its assigned stores and destinations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollisionBenchmark {
+    @Param({"16", "32", "64"})
+    public int size;
+
+    private Map<String, List<Position>> routes;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        Grid grid = Worlds.generate(size, 0.2, 42);
+        List<DeliveryPlanner.Assignment> plan = DeliveryPlanner.planMultiDelivery(grid);
+        GridGraph graph = grid.graph();
+        routes = new LinkedHashMap<>();
+        for(DeliveryPlanner.Assignment a : plan){
+            List<Position> r = new ArrayList<>();
+            r.add(a.agent.pos);
+            Position at = a.agent.pos;
+            for(Position stop : a.stops){
+                List<Position> leg = MultiGoalSearch.forGraph(graph).search(graph, at, List.of(stop), 1, true).route(0);
+                if(leg.size() > 1) r.addAll(leg.subList(1, leg.size()));
+                at = stop;
+            }
+            routes.put(a.agent.id, r);
+        }
+    }
+
+    @Benchmark
+    public CollisionAvoider.Schedule makeSafe(){
+        return CollisionAvoider.makeSafe(routes);
+    }
+}
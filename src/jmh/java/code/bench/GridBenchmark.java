@@ -0,0 +1,34 @@
+package code.bench;
+
+import code.model.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Grid.neighbors over every cell of the grid (one full sweep per invocation). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GridBenchmark {
+    @Param({"32", "128", "512"})
+    public int size;
+
+    private Grid grid;
+    private Position[] cells;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        grid = Worlds.generate(size, 0.2, 42);
+        grid.graph();
+        cells = new Position[size * size];
+        for(int y = 0; y < size; y++) for(int x = 0; x < size; x++) cells[y * size + x] = new Position(x, y);
+    }
+
+    @Benchmark
+    public void neighbors(Blackhole bh){
+        for(Position p : cells) bh.consume(grid.neighbors(p));
+    }
+}
@@ -0,0 +1,48 @@
+package code.bench;
+
+import code.model.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** WorldParser.parse (sequential and chunked) and BinaryWorld.load on a generated world (file cache warm after the first iteration). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({"32", "128", "512"})
+    public int size;
+
+    private String file;
+    private Path binary;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path p = Worlds.writeTemp(Worlds.generate(size, 0.2, 42));
+        file = p.toString();
+        binary = Files.createTempFile("bench", ".bworld");
+        binary.toFile().deleteOnExit();
+        BinaryWorld.convert(p, binary);
+    }
+
+    @Benchmark
+    public Grid parse() throws IOException {
+        return WorldParser.parse(file);
+    }
+
+    @Benchmark
+    public Grid parseParallel() throws IOException {
+        return WorldParser.parse(Path.of(file), ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public Grid loadBinary() throws IOException {
+        return BinaryWorld.load(binary);
+    }
+}
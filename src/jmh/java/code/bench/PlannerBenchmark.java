@@ -0,0 +1,36 @@
+package code.bench;
+
+import code.delivery.*;
+import code.model.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** End-to-end DeliveryPlanner.planMultiDelivery (diagnostics off). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlannerBenchmark {
+    @Param({"16", "32", "64"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Grid grid;
+    private PlannerOptions options;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        grid = Worlds.generate(size, 0.2, 42);
+        options = PlannerOptions.defaults().parallelism(parallelism);
+    }
+
+    @Benchmark
+    public List<DeliveryPlanner.Assignment> plan(){
+        return DeliveryPlanner.planMultiDelivery(grid, options);
+    }
+}
@@ -0,0 +1,50 @@
+package code.bench;
+
+import code.delivery.DeliveryProblem;
+import code.model.*;
+import code.search.GeneralSearch;
+import code.search.SearchStrategy;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * One GeneralSearch query per invocation, cycling through fixed start/goal pairs,
+ * for every strategy over grids of increasing size and obstacle density.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    private static final int QUERIES = 64;
+
+    @Param({"BFS", "DFS", "UCS", "IDS", "GREEDY", "ASTAR", "JPS", "BIBFS", "BIUCS", "BIASTAR", "HPA", "ARASTAR", "IDASTAR", "SMASTAR"})
+    public String strategy;
+
+    @Param({"32", "128"})
+    public int size;
+
+    @Param({"0.0", "0.2", "0.35"})
+    public double density;
+
+    private Grid grid;
+    private Position[][] queries;
+    private SearchStrategy strat;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        grid = Worlds.generate(size, density, 42);
+        grid.graph();
+        queries = Worlds.queries(size, QUERIES, 42);
+        strat = SearchStrategy.valueOf(strategy);
+    }
+
+    @Benchmark
+    public GeneralSearch.Result search(){
+        Position[] q = queries[next++ % QUERIES];
+        return GeneralSearch.generalSearch(new DeliveryProblem(grid, q[0], q[1]), strat);
+    }
+}
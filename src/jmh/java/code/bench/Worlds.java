@@ -0,0 +1,88 @@
+package code.bench;
+
+import code.model.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Worlds: seeded synthetic worlds for the benchmarks.
+ *
+ * A size x size grid with every neighbour pair connected (cost 1..3), a `density` fraction of
+ * the roads blocked, one tunnel between opposite corners, and stores/destinations/agents
+ * scattered over the grid. The same (size, density, seed) always yields the same world.
+ */
+public final class Worlds {
+    private Worlds(){}
+
+    public static Grid generate(int size, double density, long seed){
+        Random r = new Random(seed);
+        Grid g = new Grid(size, size);
+        for(int y = 0; y < size; y++){
+            for(int x = 0; x < size; x++){
+                if(x + 1 < size) road(g, r, density, new Position(x, y), new Position(x + 1, y));
+                if(y + 1 < size) road(g, r, density, new Position(x, y), new Position(x, y + 1));
+            }
+        }
+        g.addTunnel(new Position(0, 0), new Position(size - 1, size - 1));
+        int pois = Math.max(3, size / 4);
+        for(int i = 0; i < pois; i++){
+            g.stores.add(randomCell(r, size));
+            g.destinations.add(randomCell(r, size));
+        }
+        for(int i = 0; i < Math.max(2, pois / 2); i++) g.agents.add(new Agent("A" + (i + 1), randomCell(r, size)));
+        return g;
+    }
+
+    private static void road(Grid g, Random r, double density, Position a, Position b){
+        int cost = r.nextDouble() < density ? 0 : 1 + r.nextInt(3);
+        g.setEdge(a, b, cost);
+        g.setEdge(b, a, cost);
+    }
+
+    private static Position randomCell(Random r, int size){ return new Position(r.nextInt(size), r.nextInt(size)); }
+
+    /** Fixed start/goal pairs drawn from the same seed, for per-query benchmarks. */
+    public static Position[][] queries(int size, int count, long seed){
+        Random r = new Random(seed ^ 0x5DEECE66DL);
+        Position[][] q = new Position[count][];
+        for(int i = 0; i < count; i++) q[i] = new Position[]{randomCell(r, size), randomCell(r, size)};
+        return q;
+    }
+
+    /** The world in .world syntax, as WorldParser reads it. */
+    public static String toWorldText(Grid g){
+        StringBuilder sb = new StringBuilder();
+        sb.append("GRID ").append(g.width).append(' ').append(g.height).append('\n');
+        for(Position p : g.stores) sb.append("STORE ").append(p.x).append(' ').append(p.y).append('\n');
+        for(Position p : g.destinations) sb.append("DEST ").append(p.x).append(' ').append(p.y).append('\n');
+        for(Agent a : g.agents) sb.append("AGENT ").append(a.id).append(' ').append(a.pos.x).append(' ').append(a.pos.y).append('\n');
+        for(int y = 0; y < g.height; y++){
+            for(int x = 0; x < g.width; x++){
+                Position p = new Position(x, y);
+                if(x + 1 < g.width) edge(sb, g, p, new Position(x + 1, y));
+                if(y + 1 < g.height) edge(sb, g, p, new Position(x, y + 1));
+            }
+        }
+        for(Position[] t : g.getTunnels()){
+            sb.append("TUNNEL ").append(t[0].x).append(' ').append(t[0].y).append(' ')
+              .append(t[1].x).append(' ').append(t[1].y).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void edge(StringBuilder sb, Grid g, Position a, Position b){
+        Integer c = g.getEdgeCost(a, b);
+        if(c == null) return;
+        if(c == 0) sb.append("BLOCK ").append(a.x).append(' ').append(a.y).append(' ').append(b.x).append(' ').append(b.y).append('\n');
+        else sb.append("UNDIRECTED_EDGE ").append(a.x).append(' ').append(a.y).append(' ').append(b.x).append(' ').append(b.y)
+               .append(' ').append(c).append('\n');
+    }
+
+    public static Path writeTemp(Grid g) throws IOException {
+        Path file = Files.createTempFile("bench", ".world");
+        Files.writeString(file, toWorldText(g));
+        file.toFile().deleteOnExit();
+        return file;
+    }
+}
@@ -8,14 +8,16 @@ import java.io.IOException;
 import java.util.*;
 
 /**
- * Runner: automated assignment (Option 3 nearest destination with reservation).
+ * Runner: automated assignment (PlannerOptions defaults, each destination used once).
  */
 public class Main {
     public static void main(String[] args) throws IOException {
         String worldFile = "src/main/resources/sample.world";
         if (args.length >= 1) worldFile = args[0];
 
-        Grid grid = WorldParser.parse(worldFile);
+        Grid grid = worldFile.endsWith(".bworld")
+                ? BinaryWorld.load(java.nio.file.Path.of(worldFile))
+                : WorldParser.parse(worldFile);
 
         System.out.println("Parsed world:");
         System.out.println("Grid " + grid.width + "x" + grid.height);
@@ -23,13 +25,20 @@ public class Main {
         System.out.println("Destinations: " + grid.destinations);
         System.out.println("Agents: " + grid.agents);
 
-        // Plan multi-delivery using Reservation (each destination only once)
-        List<DeliveryPlanner.Assignment> assignments = DeliveryPlanner.planMultiDelivery(grid);
+        // Plan multi-delivery using Reservation (each destination only once); a second argument
+        // names a JSONL file for the planner's diagnostics (per-strategy leg comparison)
+        PlannerOptions options = PlannerOptions.defaults()
+                .parallelism(Runtime.getRuntime().availableProcessors());
+        List<DeliveryPlanner.Assignment> assignments;
+        try (DiagnosticSink sink = args.length >= 2 ? new JsonlSink(java.nio.file.Path.of(args[1])) : DiagnosticSink.NONE) {
+            assignments = DeliveryPlanner.planMultiDelivery(grid, options.diagnostics(sink));
+        }
 
         System.out.println("\nAssignments (agent -> route steps):");
         Map<Agent, List<code.model.Position>> routes = new LinkedHashMap<>();
         for (DeliveryPlanner.Assignment a : assignments) {
             System.out.println(a.agent.id + " => " + a.route.size() + " steps, " + a.strategySummary());
+            for (CollisionAvoider.Conflict c : a.conflicts) System.out.println("  unresolved collision: " + c);
             routes.put(a.agent, a.route);
         }
 
@@ -0,0 +1,15 @@
+package code.delivery;
+
+/**
+ * AssignmentMode: how DeliveryPlanner hands stores to agents.
+ *
+ *  GREEDY     - one (agent, store) pair per round, the best remaining one; stores go to the
+ *               Manhattan-nearest free destination
+ *  HUNGARIAN  - stores matched to destinations, then tasks chained behind agents (or, when the
+ *               objective weighs makespan, agents matched to tasks a batch per round), each step
+ *               a minimum-cost matching over path costs (TaskAssignment.hungarian)
+ *  AUCTION    - HUNGARIAN with the matchings solved by TaskAssignment.auction
+ */
+public enum AssignmentMode {
+    GREEDY, HUNGARIAN, AUCTION
+}
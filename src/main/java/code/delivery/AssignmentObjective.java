@@ -0,0 +1,43 @@
+package code.delivery;
+
+/**
+ * AssignmentObjective: what DeliveryPlanner minimises when it picks the next (agent, store) pair.
+ *
+ * Only route costs enter the score. Search-effort numbers (expanded nodes, time, memory) are
+ * reported in SearchStats but never ranked on, so the same world always yields the same plan.
+ *
+ *  TOTAL_COST  - cost the candidate adds to the fleet (agent -> store -> destination)
+ *  MAKESPAN    - fleet makespan after the assignment (latest agent finishing cost)
+ *  weighted    - costWeight * added cost + makespanWeight * resulting makespan
+ */
+public final class AssignmentObjective {
+    public static final AssignmentObjective TOTAL_COST = new AssignmentObjective("TOTAL_COST", 1, 0);
+    public static final AssignmentObjective MAKESPAN = new AssignmentObjective("MAKESPAN", 0, 1);
+
+    private final String name;
+    public final long costWeight;
+    public final long makespanWeight;
+
+    private AssignmentObjective(String name, long costWeight, long makespanWeight){
+        this.name = name; this.costWeight = costWeight; this.makespanWeight = makespanWeight;
+    }
+
+    public static AssignmentObjective weighted(long costWeight, long makespanWeight){
+        if(costWeight < 0 || makespanWeight < 0 || costWeight + makespanWeight == 0)
+            throw new IllegalArgumentException("weights must be non-negative and not both zero");
+        return new AssignmentObjective("WEIGHTED(" + costWeight + "," + makespanWeight + ")", costWeight, makespanWeight);
+    }
+
+    /**
+     * Score of a candidate (lower is better).
+     * @param addedCost     cost of the candidate's legs
+     * @param agentCost     cost the agent is already committed to
+     * @param fleetMakespan largest committed cost over all agents before the assignment
+     */
+    public long score(long addedCost, long agentCost, long fleetMakespan){
+        long makespan = Math.max(fleetMakespan, agentCost + addedCost);
+        return costWeight * addedCost + makespanWeight * makespan;
+    }
+
+    @Override public String toString(){ return name; }
+}
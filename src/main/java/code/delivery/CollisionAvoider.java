@@ -1,37 +1,147 @@
 package code.delivery;
 
 import code.model.Position;
+import code.search.LongLongMap;
 import java.util.*;
 
+/**
+ * CollisionAvoider: turns independent routes into a collision-free timed schedule by inserting waits.
+ *
+ * Agents are scheduled one after another in map order (prioritised planning) against a shared
+ * ReservationTable. For each agent a sweep over timesteps tracks which route indices it can be at
+ * without a vertex conflict (two agents on one cell) or an edge-swap conflict (two agents trading
+ * cells), then the earliest arrival that can park on the last cell is read back. Each agent is
+ * placed once; nothing is restarted. An agent that waits alone cannot save (e.g. an earlier agent
+ * parks on its route) keeps its original timing, and the conflicts it is then left with are
+ * listed in the Schedule.
+ */
 public class CollisionAvoider {
-    public static Map<String,List<Position>> makeSafe(Map<String,List<Position>> routes){
+    /** makeSafe's answer: timed routes, and the conflicts no wait could remove. */
+    public static final class Schedule {
+        public final Map<String,List<Position>> routes;
+        public final List<Conflict> conflicts;        // empty when the routes are collision-free
+        Schedule(Map<String,List<Position>> routes, List<Conflict> conflicts){
+            this.routes = routes; this.conflicts = Collections.unmodifiableList(conflicts);
+        }
+        public boolean collisionFree(){ return conflicts.isEmpty(); }
+        /** Agents kept on their original timing because waiting could not resolve them. */
+        public Set<String> unresolved(){
+            Set<String> out = new LinkedHashSet<>();
+            for(Conflict c : conflicts) out.add(c.agent);
+            return out;
+        }
+    }
+
+    /** agent runs into other (scheduled earlier) at time: on cell `at`, or swapping at -> to. */
+    public static final class Conflict {
+        public final String agent, other;
+        public final int time;
+        public final Position at;
+        public final Position to;                     // null for a vertex conflict
+        Conflict(String agent, String other, int time, Position at, Position to){
+            this.agent = agent; this.other = other; this.time = time; this.at = at; this.to = to;
+        }
+        @Override public String toString(){
+            return agent + (to == null ? " meets " : " swaps with ") + other + " at t=" + time + " " + at + (to == null ? "" : "->" + to);
+        }
+    }
+
+    public static Schedule makeSafe(Map<String,List<Position>> routes){
+        LongLongMap ids = new LongLongMap();      // packed position -> dense cell id
+        Map<String,int[]> paths = new LinkedHashMap<>();
+        for(Map.Entry<String,List<Position>> e : routes.entrySet()){
+            List<Position> r = e.getValue();
+            if(r == null) continue;
+            int[] path = new int[r.size()];
+            for(int i = 0; i < path.length; i++){
+                long key = r.get(i).packed();
+                int id = (int) ids.get(key, -1);
+                if(id < 0){ id = ids.size(); ids.put(key, id); }
+                path[i] = id;
+            }
+            paths.put(e.getKey(), path);
+        }
+
+        ReservationTable table = new ReservationTable(ids.size());
         Map<String,List<Position>> sched = new LinkedHashMap<>();
-        for(Map.Entry<String,List<Position>> e : routes.entrySet()) sched.put(e.getKey(), new ArrayList<>(e.getValue()));
-
-        boolean changed=true; int pass=0;
-        while(changed && pass<2000){
-            changed=false;
-            Map<Integer, Map<Position,String>> reserved = new HashMap<>();
-            int maxT=0;
-            for(List<Position> r: sched.values()) if(r!=null) maxT=Math.max(maxT, r.size());
-            for(int t=0;t<maxT;t++){
-                for(String id: new ArrayList<>(sched.keySet())){
-                    List<Position> r = sched.get(id);
-                    if(r==null || r.isEmpty()) continue;
-                    Position p = (t<r.size()) ? r.get(t) : r.get(r.size()-1);
-                    Map<Position,String> atT = reserved.computeIfAbsent(t, k->new HashMap<>());
-                    if(atT.containsKey(p)){
-                        int insert = Math.min(t, r.size()-1);
-                        Position prev = r.get(Math.max(0, insert-1));
-                        r.add(insert, prev);
-                        changed=true;
-                        break;
-                    } else atT.put(p, id);
-                }
-                if(changed) break;
+        List<Conflict> conflicts = new ArrayList<>();
+        List<String> names = new ArrayList<>(routes.keySet());
+        int agent = 0;
+        for(Map.Entry<String,List<Position>> e : routes.entrySet()){
+            List<Position> r = e.getValue();
+            int[] path = paths.get(e.getKey());
+            if(path == null || path.length == 0){ sched.put(e.getKey(), r == null ? null : new ArrayList<>(r)); agent++; continue; }
+            int[] at = schedule(path, agent, table);
+            if(at == null){
+                at = new int[path.length];
+                for(int t = 0; t < at.length; t++) at[t] = t;
+                conflicts(path, r, agent, table, names, conflicts);
+            }
+            List<Position> timed = new ArrayList<>(at.length);
+            for(int t = 0; t < at.length; t++){
+                table.reserve(path[at[t]], t, agent);
+                timed.add(r.get(at[t]));
             }
-            pass++;
+            table.park(path[path.length - 1], at.length - 1, agent);
+            sched.put(e.getKey(), timed);
+            agent++;
+        }
+        return new Schedule(sched, conflicts);
+    }
+
+    /** Route index the agent is at for every timestep 0..arrival, null if no waits avoid the others. */
+    private static int[] schedule(int[] path, int agent, ReservationTable table){
+        int n = path.length, last = path[n - 1];
+        // past the table's horizon only parked cells block, so a longer wait never helps
+        int limit = table.horizon() + n + 1;
+        List<BitSet> reach = new ArrayList<>();
+        BitSet cur = new BitSet(n);
+        cur.set(0);
+        reach.add(cur);
+        for(int t = 0; ; t++){
+            if(cur.get(n - 1) && table.canPark(last, t, agent)) return readBack(reach, t);
+            if(t >= limit) break;
+            BitSet next = new BitSet(n);
+            for(int i = cur.nextSetBit(0); i >= 0; i = cur.nextSetBit(i + 1)){
+                if(table.vertexFree(path[i], t + 1, agent)) next.set(i);
+                if(i + 1 < n && table.vertexFree(path[i + 1], t + 1, agent) && table.edgeFree(path[i], path[i + 1], t, agent)) next.set(i + 1);
+            }
+            if(next.isEmpty()) break;
+            reach.add(next);
+            cur = next;
+        }
+        return null;
+    }
+
+    /** Clashes of the unwaited route with the agents already in table; after arrival, the first per agent. */
+    private static void conflicts(int[] path, List<Position> r, int agent, ReservationTable table,
+                                  List<String> names, List<Conflict> out){
+        int n = path.length;
+        String self = names.get(agent);
+        for(int t = 0; t < n; t++){
+            int o = table.owner(path[t], t);
+            if(o != ReservationTable.FREE && o != agent) out.add(new Conflict(self, names.get(o), t, r.get(t), null));
+            if(t + 1 < n && !table.edgeFree(path[t], path[t + 1], t, agent)){
+                out.add(new Conflict(self, names.get(table.owner(path[t + 1], t)), t, r.get(t), r.get(t + 1)));
+            }
+        }
+        BitSet seen = new BitSet();
+        for(int t = n, end = Math.max(n, table.horizon() + 1); t <= end; t++){
+            int o = table.owner(path[n - 1], t);
+            if(o == ReservationTable.FREE || o == agent || seen.get(o)) continue;
+            seen.set(o);
+            out.add(new Conflict(self, names.get(o), t, r.get(n - 1), null));
+        }
+    }
+
+    /** Walks back from the arrival, staying put whenever the index was already reachable (move early, wait late). */
+    private static int[] readBack(List<BitSet> reach, int arrival){
+        int[] at = new int[arrival + 1];
+        int i = reach.get(arrival).length() - 1;
+        for(int t = arrival; t >= 0; t--){
+            at[t] = i;
+            if(t > 0 && !reach.get(t - 1).get(i)) i--;
         }
-        return sched;
+        return at;
     }
 }
@@ -0,0 +1,378 @@
+package code.delivery;
+
+import code.model.*;
+import code.search.IndexedMinHeap;
+import code.search.LongLongMap;
+import java.util.*;
+
+/**
+ * ConflictBasedSearch: collision-free paths for the task sequences planMultiDelivery hands out.
+ *
+ * ECBS(w). The high level branches on the earliest vertex or edge-swap conflict between two
+ * agents and constrains each of them in turn. The low level is a space-time A* over
+ * (cell, next waypoint, t) that visits the agent's waypoints in order (start, store, destination,
+ * store, ...), so agents may detour or wait anywhere instead of only at the previous cell.
+ * Both levels keep a focal list of nodes within w of the best lower bound and take the one with
+ * the fewest conflicts; the result costs at most w times the optimum, w = 1 is plain CBS.
+ *
+ * A move takes one timestep and costs its edge cost, a wait costs 1. Finished agents stay on
+ * their last cell. solve() returns null when there is no solution or the node limits are hit.
+ */
+public class ConflictBasedSearch {
+    private static final int INF = GridGraph.UNREACHABLE;
+
+    private final GridGraph graph;
+    private final double bound;
+    private int nodeLimit = 2_000;
+    private int lowLevelLimit = 200_000;
+    private int highLevelExpanded;
+    private long lowLevelExpanded;
+
+    private int[][] waypoints;        // per agent: cells to visit in order, [0] = start
+    private int[][][] distTo;         // per agent, per waypoint: cost from every cell to it
+    private long[][] suffix;          // per agent, per waypoint: cost of the remaining waypoint chain
+
+    /**
+     * One constraint, chained to the parent's: agent may not be at cell at t (from == NONE),
+     * at cell at any time from t on (from == NONE, forever), or move from->cell at t.
+     */
+    private static final class Constraint {
+        final int agent, from, cell, t;
+        final boolean forever;
+        final Constraint parent;
+        Constraint(int agent, int from, int cell, int t, boolean forever, Constraint parent){
+            this.agent = agent; this.from = from; this.cell = cell; this.t = t; this.forever = forever; this.parent = parent;
+        }
+    }
+
+    /**
+     * vertex: a and b on cell at t; swap: a cell->other, b other->cell at t;
+     * target: a already parked on cell when b gets there at t.
+     */
+    private static final class Conflict {
+        int a, b, t, cell, other;
+        boolean swap, target;
+    }
+
+    private static final class HighNode {
+        Constraint constraints;
+        int[][] paths;
+        long[] costs;
+        long[] lbs;
+        long cost, lb;
+        int conflicts;
+        long id;
+    }
+
+    private static final class LowNode {
+        final int cell, wp, t, conflicts;
+        final long g, f;
+        final LowNode parent;
+        final long id;
+        LowNode(int cell, int wp, int t, long g, long f, int conflicts, LowNode parent, long id){
+            this.cell = cell; this.wp = wp; this.t = t; this.g = g; this.f = f;
+            this.conflicts = conflicts; this.parent = parent; this.id = id;
+        }
+    }
+
+    private static final class LowResult {
+        final int[] path; final long cost; final long lb;
+        LowResult(int[] path, long cost, long lb){ this.path = path; this.cost = cost; this.lb = lb; }
+    }
+
+    /** @param bound suboptimality factor w >= 1 */
+    public ConflictBasedSearch(Grid grid, double bound){
+        if(!(bound >= 1)) throw new IllegalArgumentException("bound must be >= 1, got " + bound);
+        this.graph = grid.graph();
+        this.bound = bound;
+    }
+
+    /** Maximum high-level nodes expanded before giving up. */
+    public ConflictBasedSearch nodeLimit(int nodes){ this.nodeLimit = nodes; return this; }
+
+    /** Maximum expansions of a single low-level search. */
+    public ConflictBasedSearch lowLevelLimit(int nodes){ this.lowLevelLimit = nodes; return this; }
+
+    public int highLevelExpanded(){ return highLevelExpanded; }
+    public long lowLevelExpanded(){ return lowLevelExpanded; }
+
+    /**
+     * @param tasks per agent id: start position followed by the positions to visit in order
+     * @return timed route per agent (one position per timestep), or null if no solution within the limits
+     */
+    public Map<String,List<Position>> solve(Map<String,List<Position>> tasks){
+        List<String> ids = new ArrayList<>(tasks.keySet());
+        int n = ids.size();
+        waypoints = new int[n][];
+        distTo = new int[n][][];
+        suffix = new long[n][];
+        Map<Integer,int[]> rows = new HashMap<>();
+        IndexedMinHeap heap = new IndexedMinHeap(graph.cellCount);
+        for(int a = 0; a < n; a++){
+            List<Position> w = tasks.get(ids.get(a));
+            if(w == null || w.isEmpty()) throw new IllegalArgumentException("Agent " + ids.get(a) + " has no start position");
+            waypoints[a] = new int[w.size()];
+            distTo[a] = new int[w.size()][];
+            for(int i = 0; i < w.size(); i++){
+                int c = graph.cellOf(w.get(i));
+                if(c == GridGraph.NONE) return null;
+                waypoints[a][i] = c;
+                distTo[a][i] = rows.computeIfAbsent(c, target -> reverseDijkstra(target, heap));
+            }
+            suffix[a] = new long[w.size()];
+            for(int i = w.size() - 2; i >= 0; i--){
+                int leg = distTo[a][i + 1][waypoints[a][i]];
+                if(leg >= INF) return null;
+                suffix[a][i] = suffix[a][i + 1] + leg;
+            }
+        }
+
+        // agents sharing a start cell, or a final cell they would both park on, have no solution
+        Set<Integer> starts = new HashSet<>(), finals = new HashSet<>();
+        for(int a = 0; a < n; a++){
+            if(!starts.add(waypoints[a][0]) || !finals.add(waypoints[a][waypoints[a].length - 1])) return null;
+        }
+
+        long ids0 = 0;
+        HighNode root = new HighNode();
+        root.paths = new int[n][];
+        root.costs = new long[n];
+        root.lbs = new long[n];
+        for(int a = 0; a < n; a++){
+            LowResult r = lowLevel(a, null, root.paths);
+            if(r == null) return null;
+            root.paths[a] = r.path; root.costs[a] = r.cost; root.lbs[a] = r.lb;
+        }
+        finish(root, ids0++);
+
+        Comparator<HighNode> byLb = Comparator.<HighNode>comparingLong(h -> h.lb).thenComparingLong(h -> h.id);
+        Comparator<HighNode> byConflicts = Comparator.<HighNode>comparingInt(h -> h.conflicts)
+                .thenComparingLong(h -> h.cost).thenComparingLong(h -> h.id);
+        TreeSet<HighNode> open = new TreeSet<>(byLb), focal = new TreeSet<>(byConflicts);
+        open.add(root);
+        focal.add(root);
+        long focalBound = (long) Math.floor(bound * root.lb);
+        highLevelExpanded = 0;
+        while(!open.isEmpty()){
+            long nb = (long) Math.floor(bound * open.first().lb);
+            if(nb > focalBound){
+                for(HighNode h : open) if(h.cost > focalBound && h.cost <= nb) focal.add(h);
+                focalBound = nb;
+            }
+            HighNode node = focal.isEmpty() ? open.first() : focal.pollFirst();
+            open.remove(node);
+            if(node.conflicts == 0) return toRoutes(ids, node.paths);
+            if(++highLevelExpanded > nodeLimit) return null;
+
+            Conflict c = firstConflict(node.paths);
+            for(int side = 0; side < 2; side++){
+                int agent = side == 0 ? c.a : c.b;
+                Constraint con;
+                if(c.swap) con = side == 0 ? new Constraint(agent, c.cell, c.other, c.t, false, node.constraints)
+                                           : new Constraint(agent, c.other, c.cell, c.t, false, node.constraints);
+                // target conflict: either the parked agent finishes after t, or it finished by t
+                // and the other agent may never enter its cell again
+                else con = new Constraint(agent, GridGraph.NONE, c.cell, c.t, c.target && side == 1, node.constraints);
+                LowResult r = lowLevel(agent, con, node.paths);
+                if(r == null) continue;
+                HighNode child = new HighNode();
+                child.constraints = con;
+                child.paths = node.paths.clone();
+                child.costs = node.costs.clone();
+                child.lbs = node.lbs.clone();
+                child.paths[agent] = r.path; child.costs[agent] = r.cost; child.lbs[agent] = r.lb;
+                finish(child, ids0++);
+                open.add(child);
+                if(child.cost <= focalBound) focal.add(child);
+            }
+        }
+        return null;
+    }
+
+    private void finish(HighNode h, long id){
+        h.id = id;
+        for(int a = 0; a < h.paths.length; a++){ h.cost += h.costs[a]; h.lb += h.lbs[a]; }
+        h.conflicts = countConflicts(h.paths, null);
+    }
+
+    private Map<String,List<Position>> toRoutes(List<String> ids, int[][] paths){
+        Map<String,List<Position>> out = new LinkedHashMap<>();
+        for(int a = 0; a < ids.size(); a++){
+            List<Position> r = new ArrayList<>(paths[a].length);
+            for(int c : paths[a]) r.add(graph.position(c));
+            out.put(ids.get(a), r);
+        }
+        return out;
+    }
+
+    private int[] reverseDijkstra(int target, IndexedMinHeap heap){
+        int[] dist = new int[graph.cellCount];
+        Arrays.fill(dist, INF);
+        dist[target] = 0;
+        heap.push(target, 0);
+        while(!heap.isEmpty()){
+            int v = heap.poll();
+            for(int i = graph.firstInEdge(v), end = graph.endInEdge(v); i < end; i++){
+                int u = graph.inEdgeSource(i);
+                int nd = dist[v] + graph.edgeCost(graph.inEdgeForward(i));
+                if(nd < dist[u]){ dist[u] = nd; heap.push(u, nd); }
+            }
+        }
+        return dist;
+    }
+
+    // ---- conflicts ----
+
+    private static int at(int[] path, int t){ return path[Math.min(t, path.length - 1)]; }
+
+    /** Number of pairwise vertex and swap conflicts; the earliest one is written to first when non-null. */
+    private int countConflicts(int[][] paths, Conflict first){
+        int horizon = 0;
+        for(int[] p : paths) horizon = Math.max(horizon, p.length);
+        int[] occ = new int[graph.cellCount], stamp = new int[graph.cellCount];
+        int[] prevOcc = new int[graph.cellCount], prevStamp = new int[graph.cellCount];
+        Arrays.fill(stamp, -1);
+        Arrays.fill(prevStamp, -1);
+        int count = 0;
+        for(int t = 0; t < horizon; t++){
+            for(int a = 0; a < paths.length; a++){
+                int c = at(paths[a], t);
+                if(stamp[c] == t){
+                    if(count++ == 0 && first != null){
+                        int b = occ[c];
+                        boolean aParked = t >= paths[a].length - 1, bParked = t >= paths[b].length - 1;
+                        first.a = aParked && !bParked ? a : b; first.b = first.a == a ? b : a;
+                        first.t = t; first.cell = c; first.swap = false; first.target = aParked != bParked;
+                    }
+                } else { stamp[c] = t; occ[c] = a; }
+                if(t == 0) continue;
+                int u = at(paths[a], t - 1);
+                if(u == c || prevStamp[c] != t - 1) continue;
+                int b = prevOcc[c];
+                if(b > a && at(paths[b], t) == u){
+                    if(count++ == 0 && first != null){ first.a = a; first.b = b; first.t = t - 1; first.cell = u; first.other = c; first.swap = true; first.target = false; }
+                }
+            }
+            int[] s = prevStamp; prevStamp = stamp; stamp = s;
+            int[] o = prevOcc; prevOcc = occ; occ = o;
+        }
+        return count;
+    }
+
+    private Conflict firstConflict(int[][] paths){
+        Conflict c = new Conflict();
+        countConflicts(paths, c);
+        return c;
+    }
+
+    // ---- low level ----
+
+    private long h(int a, int cell, int wp){
+        int last = waypoints[a].length;
+        if(wp == last) return distTo[a][last - 1][cell];
+        int d = distTo[a][wp][cell];
+        return d >= INF ? INF : d + suffix[a][wp];
+    }
+
+    private int advance(int a, int wp, int cell){
+        while(wp < waypoints[a].length && waypoints[a][wp] == cell) wp++;
+        return wp;
+    }
+
+    private LowResult lowLevel(int a, Constraint constraints, int[][] paths){
+        int cells = graph.cellCount;
+        LongLongMap vertex = new LongLongMap(), edge = new LongLongMap();
+        LongLongMap lastBlocked = new LongLongMap();   // cell -> last t it is blocked
+        LongLongMap blockedFrom = new LongLongMap();   // cell -> t from which it is blocked for good
+        int maxT = -1;
+        for(Constraint c = constraints; c != null; c = c.parent){
+            if(c.agent != a) continue;
+            if(c.forever) blockedFrom.putMin(c.cell, c.t);
+            else if(c.from == GridGraph.NONE){
+                vertex.put((long) c.t * cells + c.cell, 1);
+                lastBlocked.putMax(c.cell, c.t);
+            } else edge.put(((long) c.t * cells + c.from) * cells + c.cell, 1);
+            maxT = Math.max(maxT, c.t);
+        }
+        ReservationTable others = new ReservationTable(cells);
+        for(int b = 0; b < paths.length; b++){
+            if(b == a || paths[b] == null) continue;
+            for(int t = 0; t < paths[b].length; t++) others.reserve(paths[b][t], t, b);
+            others.park(paths[b][paths[b].length - 1], paths[b].length - 1, b);
+        }
+
+        int last = waypoints[a].length, goalCell = waypoints[a][last - 1];
+        int cap = maxT + 1;           // past the last constraint time no longer matters
+        // every timestep costs at least 1, so the agent pays at least up to the last block on its goal
+        int earliestFinish = (int) lastBlocked.get(goalCell, -1) + 1;
+        LongLongMap bestG = new LongLongMap();
+        Comparator<LowNode> byF = Comparator.<LowNode>comparingLong(x -> x.f).thenComparingLong(x -> -x.g).thenComparingLong(x -> x.id);
+        Comparator<LowNode> byConflicts = Comparator.<LowNode>comparingInt(x -> x.conflicts)
+                .thenComparingLong(x -> x.f).thenComparingLong(x -> -x.g).thenComparingLong(x -> x.id);
+        TreeSet<LowNode> open = new TreeSet<>(byF), focal = new TreeSet<>(byConflicts);
+        long ids = 0;
+
+        int start = waypoints[a][0];
+        int wp0 = advance(a, 1, start);
+        LowNode root = new LowNode(start, wp0, 0, 0, Math.max(h(a, start, wp0), earliestFinish), 0, null, ids++);
+        open.add(root);
+        focal.add(root);
+        long focalBound = (long) Math.floor(bound * root.f);
+        int expanded = 0;
+        while(!open.isEmpty()){
+            long fmin = open.first().f;
+            long nb = (long) Math.floor(bound * fmin);
+            if(nb > focalBound){
+                for(LowNode x : open.tailSet(new LowNode(0, 0, 0, Long.MAX_VALUE, focalBound + 1, 0, null, -1))){
+                    if(x.f > nb) break;
+                    focal.add(x);
+                }
+                focalBound = nb;
+            }
+            LowNode n = focal.isEmpty() ? open.first() : focal.pollFirst();
+            open.remove(n);
+            if(n.wp == last && n.cell == goalCell && lastBlocked.get(n.cell, -1) < n.t && !blockedFrom.containsKey(n.cell)){
+                lowLevelExpanded += expanded;
+                return new LowResult(path(n), n.g, fmin);
+            }
+            if(++expanded > lowLevelLimit){ lowLevelExpanded += expanded; return null; }
+
+            int t1 = n.t + 1;
+            // wait
+            if(!vertex.containsKey((long) t1 * cells + n.cell) && t1 < blockedFrom.get(n.cell, Integer.MAX_VALUE)){
+                int conf = n.conflicts + (others.vertexFree(n.cell, t1, a) ? 0 : 1);
+                ids = push(a, n, n.cell, n.wp, 1, conf, cap, earliestFinish, bestG, open, focal, focalBound, ids);
+            }
+            for(int e = graph.firstEdge(n.cell), end = graph.endEdge(n.cell); e < end; e++){
+                int v = graph.edgeTarget(e);
+                if(vertex.containsKey((long) t1 * cells + v) || t1 >= blockedFrom.get(v, Integer.MAX_VALUE)) continue;
+                if(edge.containsKey(((long) n.t * cells + n.cell) * cells + v)) continue;
+                int conf = n.conflicts + (others.vertexFree(v, t1, a) ? 0 : 1) + (others.edgeFree(n.cell, v, n.t, a) ? 0 : 1);
+                ids = push(a, n, v, advance(a, n.wp, v), graph.edgeCost(e), conf, cap, earliestFinish, bestG, open, focal, focalBound, ids);
+            }
+        }
+        lowLevelExpanded += expanded;
+        return null;
+    }
+
+    private long push(int a, LowNode parent, int cell, int wp, int cost, int conflicts, int cap, int earliestFinish,
+                      LongLongMap bestG, TreeSet<LowNode> open, TreeSet<LowNode> focal, long focalBound, long ids){
+        long hv = h(a, cell, wp);
+        if(hv >= INF) return ids;
+        int t = parent.t + 1;
+        long g = parent.g + cost;
+        long key = ((long) Math.min(t, cap) * (waypoints[a].length + 1) + wp) * graph.cellCount + cell;
+        if(bestG.get(key, Long.MAX_VALUE) <= g) return ids;
+        bestG.put(key, g);
+        LowNode child = new LowNode(cell, wp, t, g, g + Math.max(hv, earliestFinish - t), conflicts, parent, ids);
+        open.add(child);
+        if(child.f <= focalBound) focal.add(child);
+        return ids + 1;
+    }
+
+    private static int[] path(LowNode n){
+        int[] p = new int[n.t + 1];
+        for(LowNode x = n; x != null; x = x.parent) p[x.t] = x.cell;
+        return p;
+    }
+}
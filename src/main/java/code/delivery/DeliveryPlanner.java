@@ -1,32 +1,89 @@
 package code.delivery;
 
 import code.model.*;
+import code.search.MultiGoalSearch;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
 /**
- * DeliveryPlanner (Option 3: nearest destination per store) with destination reservation.
+ * DeliveryPlanner: assigns every store to an agent and a destination, each destination used once.
+ *
+ * PlannerOptions.assignment picks the pairing (AssignmentMode):
+ *  - HUNGARIAN / AUCTION: stores are first matched to destinations by minimum total path cost
+ *    (TaskAssignment). Under a pure cost objective the agents' task chains then come from one
+ *    more matching, every task choosing its predecessor (chainTasks); when makespan counts, each
+ *    round matches the agents to the remaining tasks by the objective's score, one task per agent
+ *  - GREEDY (Option 3: nearest destination per store), one assignment per round as below
  *
  * For each remaining store:
  *  - determine nearest available destination (skip reserved ones)
- *  - for each agent evaluate best strategy for:
+ *  - for each agent look up (no per-candidate search):
  *       agent -> store  AND  store -> destination
- *  - choose best agent/store pair (combined metrics)
+ *    both come from MultiGoalSearch waves: one from every place an agent stands to all
+ *    stores, one from every store to all destinations, each computed once and reused
+ *  - choose best agent/store pair (PlannerOptions.objective over route costs)
  *  - append both legs to agent route
  *  - update agent position to the destination
  *  - mark destination as reserved (cannot be used again)
  *
- * After all assignments: apply collision avoidance (wait insertions).
+ * The agents' stops are then re-sequenced (RouteSequencer, PlannerOptions.sequencing): tasks move
+ * between agents and within routes, and with capacity > 1 pickups and deliveries interleave.
+ *
+ * After all assignments: apply collision avoidance (wait insertions, CollisionAvoider), or
+ * ConflictBasedSearch over the agents' task sequences when PlannerOptions.mapf is set.
+ * Conflicts waiting cannot remove stay on the agent's Assignment.conflicts (check
+ * Assignment.collisionFree) and are also sent to the diagnostics sink as CONFLICT events.
+ *
+ * Nothing is printed. With PlannerOptions.diagnostics set, every leg of the final (sequenced)
+ * stops is reported to the sink as DiagnosticEvents, next to the same leg solved by each of
+ * STRATEGIES for comparison.
+ *
+ * With PlannerOptions.parallelism > 1 the waves and the candidate scan run on a
+ * ForkJoinPool; the reduction breaks ties by scan order, so the plan equals the sequential one.
  */
 public class DeliveryPlanner {
 
     private static final String[] STRATEGIES = {"BFS","DFS","UCS","IDS","GREEDY","ASTAR"};
+    private static final String CHOSEN = "CHOSEN";
+
+    /** One delivery order: pick up at store, drop at dest. */
+    public static class Task {
+        public final Position store;
+        public final Position dest;
+        public Task(Position store, Position dest){ this.store = store; this.dest = dest; }
+        @Override public String toString(){ return store + "->" + dest; }
+    }
 
     public static class Assignment {
         public final Agent agent;
         public final List<Position> route;
         public final String strategy; // summary
         public final SearchStats stats;
-        public Assignment(Agent a, List<Position> r, String strat, SearchStats st){ this.agent=a; this.route=r; this.strategy=strat; this.stats=st; }
+        public final List<Task> tasks; // in pickup order
+        public final List<Position> stops; // stores and destinations in visiting order
+        public final List<CollisionAvoider.Conflict> conflicts; // collisions of this route waiting could not remove
+        public Assignment(Agent a, List<Position> r, String strat, SearchStats st){ this(a, r, strat, st, Collections.emptyList()); }
+        public Assignment(Agent a, List<Position> r, String strat, SearchStats st, List<Task> tasks){
+            this(a, r, strat, st, tasks, serial(tasks));
+        }
+        public Assignment(Agent a, List<Position> r, String strat, SearchStats st, List<Task> tasks, List<Position> stops){
+            this(a, r, strat, st, tasks, stops, Collections.emptyList());
+        }
+        public Assignment(Agent a, List<Position> r, String strat, SearchStats st, List<Task> tasks, List<Position> stops,
+                          List<CollisionAvoider.Conflict> conflicts){
+            this.agent=a; this.route=r; this.strategy=strat; this.stats=st; this.tasks=Collections.unmodifiableList(new ArrayList<>(tasks));
+            this.stops=Collections.unmodifiableList(new ArrayList<>(stops));
+            this.conflicts=Collections.unmodifiableList(new ArrayList<>(conflicts));
+        }
+        public boolean collisionFree(){ return conflicts.isEmpty(); }
+        /** Stops of tasks served one after another. */
+        static List<Position> serial(List<Task> tasks){
+            List<Position> stops = new ArrayList<>();
+            for(Task t : tasks){ stops.add(t.store); stops.add(t.dest); }
+            return stops;
+        }
         public String strategySummary(){ return strategy + " | stats=" + stats; }
     }
 
@@ -34,26 +91,28 @@ public class DeliveryPlanner {
         Position store;
         Position dest;
         Agent agentSnapshot;
-        String stratToStore;
-        String stratToDest;
-        SearchStats statsToStore;
-        SearchStats statsToDest;
-        List<Position> routeToStore;
-        List<Position> routeToDest;
+        int costToStore;
+        int costToDest;
+        int expandedToStore;
+        int expandedToDest;
+
+        long committed;               // cost the agent already carries
+        long score;                   // objective value, lower is better
+        int order;                    // position in the sequential (store-major) scan
 
         Candidate(Position store, Position dest, Agent agentSnapshot){
             this.store = store; this.dest = dest; this.agentSnapshot = agentSnapshot;
         }
 
-        long combinedExpanded(){ return (long)statsToStore.expanded + (long)statsToDest.expanded; }
-        long combinedTime(){ return statsToStore.timeNanos + statsToDest.timeNanos; }
-        long combinedMem(){ return statsToStore.memoryUsedBytes + statsToDest.memoryUsedBytes; }
+        long combinedExpanded(){ return (long)expandedToStore + (long)expandedToDest; }
+        long combinedCost(){ return (long)costToStore + (long)costToDest; }
+        long finish(){ return committed + combinedCost(); }
     }
 
     /**
      * Get nearest available destination for a store (skip reservedDest).
      */
-    private static Position nearestAvailableDestination(Grid grid, Position store, Set<Position> reservedDest){
+    static Position nearestAvailableDestination(Grid grid, Position store, Set<Position> reservedDest){
         Position best = null;
         int bestD = Integer.MAX_VALUE;
         for(Position d : grid.destinations){
@@ -65,10 +124,27 @@ public class DeliveryPlanner {
     }
 
     public static List<Assignment> planMultiDelivery(Grid grid){
+        return planMultiDelivery(grid, PlannerOptions.defaults());
+    }
+
+    public static List<Assignment> planMultiDelivery(Grid grid, PlannerOptions options){
+        ForkJoinPool pool = options.parallelism() > 1 ? new ForkJoinPool(options.parallelism()) : null;
+        try {
+            return plan(grid, options, pool);
+        } finally {
+            if(pool != null) pool.shutdown();
+        }
+    }
+
+    private static List<Assignment> plan(Grid grid, PlannerOptions options, ForkJoinPool pool){
+        AssignmentObjective objective = options.objective();
+        DiagnosticSink diagnostics = options.diagnostics();
         // Agent state tracking
         Map<String, Agent> agentSnap = new LinkedHashMap<>();
         Map<String, List<Position>> assigned = new LinkedHashMap<>();
+        Map<String, List<Task>> agentTasks = new HashMap<>();
         for(Agent ag : grid.agents){
+            agentTasks.put(ag.id, new ArrayList<>());
             agentSnap.put(ag.id, new Agent(ag.id, new Position(ag.pos.x, ag.pos.y)));
             assigned.put(ag.id, new ArrayList<>(Collections.singletonList(ag.pos)));
         }
@@ -87,117 +163,140 @@ public class DeliveryPlanner {
 
         List<Position> remainingStores = new ArrayList<>(grid.stores);
         Set<Position> reservedDestinations = new HashSet<>();
+        Legs legs = new Legs(grid);
+        legs.prepare(grid.stores, true, pool);
+
+        AssignmentMode mode = options.assignment();
+        List<Position[]> matched = mode == AssignmentMode.GREEDY ? null : matchDestinations(grid, legs, mode);
+        List<Deque<Position[]>> chains = matched == null || objective.makespanWeight > 0
+                ? null : chainTasks(matched, grid.agents, legs, mode, pool);
 
         while(!remainingStores.isEmpty()){
-            Candidate best = null;
-            String loggingAgentId = null;
-            Position loggingStore = null, loggingDest = null;
-            String chosenStoreStrat = null, chosenDestStrat = null;
-
-            for(Position store : new ArrayList<>(remainingStores)){
-                Position dest = nearestAvailableDestination(grid, store, reservedDestinations);
-                if(dest == null) continue;
-
-                for(Agent ag : grid.agents){
-                    Agent snapshot = agentSnap.get(ag.id);
-
-                    // Leg 1: agent -> store
-                    SearchStats bestStoreStats = null; String bestStoreStrat = null;
-                    for(String s : STRATEGIES){
-                        SearchStats st = DeliverySearch.solveWithStats(grid, snapshot.pos, store, s);
-                        if(!st.success) continue;
-                        if(bestStoreStats == null || prefer(st, bestStoreStats)){
-                            bestStoreStats = st; bestStoreStrat = s;
-                        }
-                    }
-                    if(bestStoreStats == null) continue;
-
-                    // Leg 2: store -> dest
-                    SearchStats bestDestStats = null; String bestDestStrat = null;
-                    for(String s : STRATEGIES){
-                        SearchStats st = DeliverySearch.solveWithStats(grid, store, dest, s);
-                        if(!st.success) continue;
-                        if(bestDestStats == null || prefer(st, bestDestStats)){
-                            bestDestStats = st; bestDestStrat = s;
-                        }
-                    }
-                    if(bestDestStats == null) continue;
-
-                    Candidate c = new Candidate(store, dest, new Agent(snapshot.id, new Position(snapshot.pos.x, snapshot.pos.y)));
-                    c.stratToStore = bestStoreStrat; c.stratToDest = bestDestStrat;
-                    c.statsToStore = bestStoreStats; c.statsToDest = bestDestStats;
-                    c.routeToStore = bestStoreStats.route; c.routeToDest = bestDestStats.route;
-
-                    if(best == null || combinedPrefer(c, best)) {
-                        best = c;
-                        loggingAgentId = ag.id;
-                        loggingStore = store;
-                        loggingDest = dest;
-                        chosenStoreStrat = bestStoreStrat;
-                        chosenDestStrat = bestDestStrat;
-                    }
+            List<Position[]> tasks = matched;
+            if(tasks == null){
+                tasks = new ArrayList<>();
+                for(Position store : remainingStores){
+                    Position dest = nearestAvailableDestination(grid, store, reservedDestinations);
+                    if(dest == null) continue;
+                    if(legs.toDest(store, dest) < GridGraph.UNREACHABLE) tasks.add(new Position[]{store, dest});
                 }
             }
-
-            if(best == null) break;
-
-            // === DETAILED LOGGING ===
-            System.out.println("\n🔍 Assignment Details for Agent " + loggingAgentId);
-            System.out.println("Task: " + best.agentSnapshot.pos + " → " + loggingStore + " → " + loggingDest);
-
-            System.out.println("\n➡️  Leg 1: Agent → Store");
-            System.out.printf("%-8s | %8s | %10s | %6s | %6s%n", "Algo", "Expanded", "Time", "Cost", "Steps");
-            for (String s : STRATEGIES) {
-                SearchStats st = DeliverySearch.solveWithStats(grid, best.agentSnapshot.pos, loggingStore, s);
-                if (st.success) {
-                    System.out.printf("%-8s | %8d | %10s | %6d | %6d%n",
-                            s, st.expanded, SearchStats.formatTime(st.timeNanos), st.cost, st.route.size() - 1);
-                } else {
-                    System.out.printf("%-8s | %8s | %10s | %6s | %6s%n", s, "—", "—", "—", "—");
+            List<Agent> snapshots = new ArrayList<>();
+            long[] committed = new long[grid.agents.size()];
+            for(int i=0;i<committed.length;i++){
+                Agent ag = grid.agents.get(i);
+                snapshots.add(agentSnap.get(ag.id));
+                committed[i] = totalCost.get(ag.id);
+            }
+            List<Position> standing = new ArrayList<>();
+            for(Agent ag : snapshots) standing.add(ag.pos);
+            legs.prepare(standing, false, pool);
+
+            List<Candidate> chosen;
+            if(matched == null){
+                Candidate best = selectBest(tasks, snapshots, committed, objective, legs, pool);
+                chosen = best == null ? Collections.emptyList() : Collections.singletonList(best);
+            } else if(chains == null){
+                chosen = matchAgents(tasks, snapshots, committed, objective, legs, mode);
+            } else {
+                chosen = new ArrayList<>();
+                for(int a=0;a<chains.size();a++){
+                    Position[] task = chains.get(a).poll();
+                    Candidate c = task == null ? null : evaluate(task, snapshots.get(a), a, legs);
+                    if(c != null) chosen.add(c);
                 }
             }
-            System.out.println("✅ Chosen: " + chosenStoreStrat + " | Actions: " + best.statsToStore.actions);
-
-            System.out.println("\n➡️  Leg 2: Store → Destination");
-            System.out.printf("%-8s | %8s | %10s | %6s | %6s%n", "Algo", "Expanded", "Time", "Cost", "Steps");
-            for (String s : STRATEGIES) {
-                SearchStats st = DeliverySearch.solveWithStats(grid, loggingStore, loggingDest, s);
-                if (st.success) {
-                    System.out.printf("%-8s | %8d | %10s | %6d | %6d%n",
-                            s, st.expanded, SearchStats.formatTime(st.timeNanos), st.cost, st.route.size() - 1);
-                } else {
-                    System.out.printf("%-8s | %8s | %10s | %6s | %6s%n", s, "—", "—", "—", "—");
+            if(chosen.isEmpty()) break;
+
+            for(Candidate best : chosen){
+                String aid = best.agentSnapshot.id;
+                SearchStats statsToStore = legs.leg(best.agentSnapshot.pos, best.store);
+                SearchStats statsToDest = legs.leg(best.store, best.dest);
+                // Assign route
+                List<Position> current = assigned.get(aid);
+                for(int i=1;i<statsToStore.route.size();i++) current.add(statsToStore.route.get(i));
+                for(int i=1;i<statsToDest.route.size();i++) current.add(statsToDest.route.get(i));
+                agentSnap.get(aid).pos = best.dest;
+                reservedDestinations.add(best.dest);
+                remainingStores.remove(best.store);
+                agentTasks.get(aid).add(new Task(best.store, best.dest));
+
+                // Update aggregated stats
+                totalCost.merge(aid, statsToStore.cost + statsToDest.cost, Integer::sum);
+                totalExpanded.merge(aid, (int)best.combinedExpanded(), Integer::sum);
+                totalTimeNanos.merge(aid, statsToStore.timeNanos + statsToDest.timeNanos, Long::sum);
+                totalMemoryKB.merge(aid, statsToStore.memoryUsedBytes + statsToDest.memoryUsedBytes, Long::sum);
+            }
+            if(matched != null) matched.removeIf(t -> !remainingStores.contains(t[0]));
+        }
+
+        Map<String, List<Position>> agentStops = new HashMap<>();
+        Map<String, List<RouteSequencer.Stop>> agentSequence = new HashMap<>();
+        for(Agent ag : grid.agents){
+            agentStops.put(ag.id, Assignment.serial(agentTasks.get(ag.id)));
+            List<RouteSequencer.Stop> serial = new ArrayList<>();
+            for(Task t : agentTasks.get(ag.id)){ serial.add(new RouteSequencer.Stop(t, true)); serial.add(new RouteSequencer.Stop(t, false)); }
+            agentSequence.put(ag.id, serial);
+        }
+        if(options.sequencingRounds() > 0){
+            RouteSequencer sequencer = new RouteSequencer(grid, objective, options.capacity(),
+                    options.sequencingRounds(), options.sequencingMillis() * 1_000_000L);
+            List<List<Task>> initial = new ArrayList<>();
+            for(Agent ag : grid.agents) initial.add(agentTasks.get(ag.id));
+            List<List<RouteSequencer.Stop>> sequenced = sequencer.sequence(grid.agents, initial, pool);
+            for(int i=0;i<grid.agents.size();i++){
+                Agent ag = grid.agents.get(i);
+                List<Position> route = new ArrayList<>(Collections.singletonList(ag.pos));
+                List<Position> stops = new ArrayList<>();
+                List<Task> pickups = new ArrayList<>();
+                int cost = 0, expanded = 0;
+                long time = 0, memory = 0;
+                Position at = ag.pos;
+                for(RouteSequencer.Stop stop : sequenced.get(i)){
+                    SearchStats leg = legs.leg(at, stop.pos());
+                    route.addAll(leg.route.subList(Math.min(1, leg.route.size()), leg.route.size()));
+                    cost += leg.cost; expanded += leg.expanded; time += leg.timeNanos; memory += leg.memoryUsedBytes;
+                    stops.add(stop.pos());
+                    if(stop.pickup) pickups.add(stop.task);
+                    at = stop.pos();
                 }
+                assigned.put(ag.id, route);
+                agentTasks.put(ag.id, pickups);
+                agentStops.put(ag.id, stops);
+                agentSequence.put(ag.id, sequenced.get(i));
+                totalCost.put(ag.id, cost);
+                totalExpanded.put(ag.id, expanded);
+                totalTimeNanos.put(ag.id, time);
+                totalMemoryKB.put(ag.id, memory);
             }
-            System.out.println("✅ Chosen: " + chosenDestStrat + " | Actions: " + best.statsToDest.actions);
+        }
 
-            // Assign route
-            String aid = best.agentSnapshot.id;
-            List<Position> current = assigned.get(aid);
-            if(best.routeToStore != null && best.routeToStore.size() > 1){
-                for(int i=1;i<best.routeToStore.size();i++) current.add(best.routeToStore.get(i));
+        if(diagnostics != DiagnosticSink.NONE){
+            for(Agent ag : grid.agents) report(grid, diagnostics, ag, agentSequence.get(ag.id), legs);
+        }
+
+        // Collision avoidance: ECBS over the stop sequences when asked for, wait insertion otherwise
+        Map<String, List<Position>> safe = null;
+        Map<String, List<CollisionAvoider.Conflict>> conflicts = Collections.emptyMap();
+        if(options.mapfBound() > 0){
+            Map<String, List<Position>> waypoints = new LinkedHashMap<>();
+            for(Agent ag : grid.agents){
+                List<Position> w = new ArrayList<>();
+                w.add(ag.pos);
+                w.addAll(agentStops.get(ag.id));
+                waypoints.put(ag.id, w);
             }
-            if(best.routeToDest != null && best.routeToDest.size() > 1){
-                for(int i=1;i<best.routeToDest.size();i++) current.add(best.routeToDest.get(i));
+            safe = new ConflictBasedSearch(grid, options.mapfBound()).solve(waypoints);
+            if(safe != null){
+                // detours change what each agent pays
+                for(Agent ag : grid.agents) totalCost.put(ag.id, routeCost(grid, safe.get(ag.id)));
             }
-            agentSnap.get(aid).pos = best.dest;
-            reservedDestinations.add(best.dest);
-            remainingStores.remove(best.store);
-
-            // Update aggregated stats
-            totalCost.merge(aid, best.statsToStore.cost + best.statsToDest.cost, Integer::sum);
-            totalExpanded.merge(aid, (int)best.combinedExpanded(), Integer::sum);
-            totalTimeNanos.merge(aid, best.statsToStore.timeNanos + best.statsToDest.timeNanos, Long::sum);
-            totalMemoryKB.merge(aid, best.combinedMem(), Long::sum);
-
-            System.out.println("📌 Final: " + best.store + " → " + best.dest + " assigned to " + aid +
-                    " using " + best.stratToStore + " + " + best.stratToDest +
-                    " (total expanded=" + best.combinedExpanded() +
-                    ", time=" + SearchStats.formatTime(best.statsToStore.timeNanos + best.statsToDest.timeNanos) + ")\n");
         }
-
-        // Collision avoidance
-        Map<String, List<Position>> safe = applyCollisionAvoidance(assigned, grid);
+        if(safe == null){
+            CollisionAvoider.Schedule schedule = applyCollisionAvoidance(assigned, grid, diagnostics);
+            safe = schedule.routes;
+            conflicts = byAgent(schedule);
+        }
 
         // Final assignments with REAL stats
         List<Assignment> out = new ArrayList<>();
@@ -209,31 +308,274 @@ public class DeliveryPlanner {
                     totalExpanded.get(ag.id),
                     totalTimeNanos.get(ag.id),
                     totalMemoryKB.get(ag.id),
-                    r
+                    r,
+                    SearchStats.NO_PLAN
             );
-            out.add(new Assignment(new Agent(ag.id, ag.pos), r, "AUTO", realStats));
+            out.add(new Assignment(new Agent(ag.id, ag.pos), r, "AUTO", realStats, agentTasks.get(ag.id), agentStops.get(ag.id),
+                    conflicts.getOrDefault(ag.id, Collections.emptyList())));
+            diagnostics.accept(DiagnosticEvent.agent(ag.id, realStats));
         }
 
         return out;
     }
 
-    // UPDATED COMPARISON LOGIC — uses timeNanos and memory
-    private static boolean prefer(SearchStats a, SearchStats b){
-        if(a.expanded != b.expanded) return a.expanded < b.expanded;
-        if(a.timeNanos != b.timeNanos) return a.timeNanos < b.timeNanos;
-        return a.memoryUsedBytes < b.memoryUsedBytes;
+    /** LEG events for every leg of the agent's final stops, and an ASSIGNMENT per task once it is dropped. */
+    private static void report(Grid grid, DiagnosticSink sink, Agent ag, List<RouteSequencer.Stop> stops, Legs legs){
+        Map<Task, SearchStats> toStore = new HashMap<>();
+        Position at = ag.pos;
+        int leg = 0;
+        for(RouteSequencer.Stop stop : stops){
+            SearchStats st = legs.leg(at, stop.pos());
+            compare(grid, sink, ag.id, ++leg, at, stop.pos(), st);
+            if(stop.pickup) toStore.put(stop.task, st);
+            else sink.accept(DiagnosticEvent.assignment(ag.id, stop.task.store, stop.task.dest, toStore.get(stop.task), st));
+            at = stop.pos();
+        }
+    }
+
+    /** Emits the chosen leg (CHOSEN, the MultiGoalSearch route) and, for comparison, the same leg solved by each of STRATEGIES. */
+    private static void compare(Grid grid, DiagnosticSink sink, String agent, int leg, Position from, Position to, SearchStats chosen){
+        sink.accept(DiagnosticEvent.leg(agent, leg, from, to, CHOSEN, chosen));
+        for(String s : STRATEGIES) sink.accept(DiagnosticEvent.leg(agent, leg, from, to, s, DeliverySearch.solveWithStats(grid, from, to, s)));
+    }
+
+    /** Best candidate over every (task, agent) pair, scanned store-major like the sequential loop. */
+    private static Candidate selectBest(List<Position[]> tasks, List<Agent> agents, long[] committed,
+                                        AssignmentObjective objective, Legs legs, ForkJoinPool pool){
+        int n = tasks.size() * agents.size();
+        long makespan = 0;
+        for(long c : committed) makespan = Math.max(makespan, c);
+        long fleetMakespan = makespan;
+        IntFunction<Candidate> eval = k -> {
+            int a = k % agents.size();
+            Candidate c = evaluate(tasks.get(k / agents.size()), agents.get(a), k, legs);
+            if(c != null){
+                c.committed = committed[a];
+                c.score = objective.score(c.combinedCost(), c.committed, fleetMakespan);
+            }
+            return c;
+        };
+        if(pool == null){
+            Candidate best = null;
+            for(int k=0;k<n;k++){
+                Candidate c = eval.apply(k);
+                if(c != null && (best == null || combinedPrefer(c, best))) best = c;
+            }
+            return best;
+        }
+        return pool.submit(() -> IntStream.range(0, n).parallel()
+                .mapToObj(eval)
+                .filter(Objects::nonNull)
+                .reduce(DeliveryPlanner::better)
+                .orElse(null)).join();
+    }
+
+    /**
+     * Stores matched to destinations (each used once) by least total store -> destination cost;
+     * stores left without a reachable destination get no task. Tasks come back in store order.
+     */
+    private static List<Position[]> matchDestinations(Grid grid, Legs legs, AssignmentMode mode){
+        List<Position> stores = new ArrayList<>(new LinkedHashSet<>(grid.stores));
+        List<Position> dests = new ArrayList<>(new LinkedHashSet<>(grid.destinations));
+        long[][] cost = new long[stores.size()][dests.size()];
+        for(int i=0;i<stores.size();i++){
+            for(int j=0;j<dests.size();j++){
+                int d = legs.toDest(stores.get(i), dests.get(j));
+                cost[i][j] = d < GridGraph.UNREACHABLE ? d : TaskAssignment.NO_PAIR;
+            }
+        }
+        int[] match = solve(cost, mode);
+        List<Position[]> tasks = new ArrayList<>();
+        for(int i=0;i<match.length;i++) if(match[i] >= 0) tasks.add(new Position[]{stores.get(i), dests.get(match[i])});
+        return tasks;
     }
 
+    /** One round of agent -> task matching by objective score; the chosen candidates in agent order. */
+    private static List<Candidate> matchAgents(List<Position[]> tasks, List<Agent> agents, long[] committed,
+                                               AssignmentObjective objective, Legs legs, AssignmentMode mode){
+        long makespan = 0;
+        for(long c : committed) makespan = Math.max(makespan, c);
+        Candidate[][] candidates = new Candidate[agents.size()][tasks.size()];
+        long[][] cost = new long[agents.size()][tasks.size()];
+        for(int a=0;a<agents.size();a++){
+            for(int t=0;t<tasks.size();t++){
+                Candidate c = evaluate(tasks.get(t), agents.get(a), t * agents.size() + a, legs);
+                if(c == null){
+                    cost[a][t] = TaskAssignment.NO_PAIR;
+                    continue;
+                }
+                c.committed = committed[a];
+                c.score = objective.score(c.combinedCost(), c.committed, makespan);
+                candidates[a][t] = c;
+                cost[a][t] = c.score;
+            }
+        }
+        int[] match = solve(cost, mode);
+        List<Candidate> chosen = new ArrayList<>();
+        for(int a=0;a<match.length;a++) if(match[a] >= 0) chosen.add(candidates[a][match[a]]);
+        return chosen;
+    }
+
+    /**
+     * Task sequences minimising total cost, as a minimum-cost path cover: each task is matched to
+     * a predecessor (an agent's start or another task's destination) at the cost of reaching its
+     * store from there. Task cycles the matching may close, and tasks whose chain has no agent,
+     * are cut and spliced in where they add least; pieces no agent can reach are dropped.
+     */
+    private static List<Deque<Position[]>> chainTasks(List<Position[]> tasks, List<Agent> agents, Legs legs,
+                                                      AssignmentMode mode, ForkJoinPool pool){
+        int n = tasks.size(), k = agents.size();
+        List<Position> ends = new ArrayList<>();               // predecessor nodes: agents, then tasks
+        for(Agent ag : agents) ends.add(ag.pos);
+        for(Position[] t : tasks) ends.add(t[1]);
+        legs.prepare(ends, false, pool);
+        long[][] link = new long[k + n][n];
+        long[][] cost = new long[n][k + n];
+        for(int p=0;p<k+n;p++){
+            for(int t=0;t<n;t++){
+                int d = p == k + t ? GridGraph.UNREACHABLE : legs.toStore(ends.get(p), tasks.get(t)[0]);
+                link[p][t] = cost[t][p] = d < GridGraph.UNREACHABLE ? d : TaskAssignment.NO_PAIR;
+            }
+        }
+        int[] pred = solve(cost, mode);
+        int[] next = new int[k + n];
+        Arrays.fill(next, -1);
+        for(int t=0;t<n;t++) if(pred[t] >= 0) next[pred[t]] = t;
+
+        boolean[] placed = new boolean[n], seen = new boolean[n];
+        for(int a=0;a<k;a++) for(int t=next[a]; t>=0; t=next[k + t]) placed[t] = seen[t] = true;
+        for(int s=0;s<n;s++){
+            if(seen[s]) continue;
+            int head = s;                                      // back to the piece's first task, or once round its cycle
+            while(pred[head] >= k && pred[head] - k != s) head = pred[head] - k;
+            boolean cycle = pred[head] - k == s;
+            List<Integer> piece = new ArrayList<>();
+            for(int t=head; t>=0 && !seen[t]; t=next[k + t]){ piece.add(t); seen[t] = true; }
+            long best = TaskAssignment.NO_PAIR;
+            int bestQ = -1, bestCut = 0;
+            for(int cut=0;cut<(cycle ? piece.size() : 1);cut++){
+                int first = piece.get(cut), last = piece.get((cut + piece.size() - 1) % piece.size());
+                long saved = cycle ? link[k + last][first] : 0;
+                for(int q=0;q<k+n;q++){
+                    if(q >= k && !placed[q - k]) continue;
+                    int nq = next[q];
+                    long add = link[q][first] + (nq >= 0 ? link[k + last][nq] - link[q][nq] : 0) - saved;
+                    if(link[q][first] >= TaskAssignment.NO_PAIR || (nq >= 0 && link[k + last][nq] >= TaskAssignment.NO_PAIR)) continue;
+                    if(add < best){ best = add; bestQ = q; bestCut = cut; }
+                }
+            }
+            if(bestQ < 0) continue;
+            int first = piece.get(bestCut), last = piece.get((bestCut + piece.size() - 1) % piece.size());
+            int nq = next[bestQ];
+            next[bestQ] = first;
+            pred[first] = bestQ;
+            next[k + last] = nq;
+            if(nq >= 0) pred[nq] = k + last;
+            for(int t : piece) placed[t] = true;
+        }
+
+        List<Deque<Position[]>> chains = new ArrayList<>();
+        for(int a=0;a<k;a++){
+            Deque<Position[]> chain = new ArrayDeque<>();
+            for(int t=next[a]; t>=0; t=next[k + t]) chain.add(tasks.get(t));
+            chains.add(chain);
+        }
+        return chains;
+    }
+
+    private static int[] solve(long[][] cost, AssignmentMode mode){
+        return mode == AssignmentMode.AUCTION ? TaskAssignment.auction(cost) : TaskAssignment.hungarian(cost);
+    }
+
+    private static Candidate evaluate(Position[] task, Agent snapshot, int order, Legs legs){
+        Position store = task[0], dest = task[1];
+        // Leg 1: agent -> store
+        int toStore = legs.toStore(snapshot.pos, store);
+        if(toStore >= GridGraph.UNREACHABLE) return null;
+        Candidate c = new Candidate(store, dest, new Agent(snapshot.id, new Position(snapshot.pos.x, snapshot.pos.y)));
+        c.order = order;
+        c.costToStore = toStore;
+        c.expandedToStore = legs.expandedToStore(snapshot.pos, store);
+        // Leg 2: store -> dest
+        c.costToDest = legs.toDest(store, dest);
+        c.expandedToDest = legs.expandedToDest(store, dest);
+        return c;
+    }
+
+    /**
+     * Leg costs for the candidate scan: a MultiGoalSearch wave to every store from each place an
+     * agent has stood, and to every destination from each store. Waves are cached by source.
+     */
+    private static final class Legs {
+        final Grid grid;
+        final GridGraph graph;
+        final Map<Position, Integer> storeIndex = new HashMap<>(), destIndex = new HashMap<>();
+        final Map<Position, MultiGoalSearch.Result> toStores = new HashMap<>(), toDests = new HashMap<>();
+
+        Legs(Grid grid){
+            this.grid = grid;
+            this.graph = grid.graph();
+            for(int i = grid.stores.size() - 1; i >= 0; i--) storeIndex.put(grid.stores.get(i), i);
+            for(int i = grid.destinations.size() - 1; i >= 0; i--) destIndex.put(grid.destinations.get(i), i);
+        }
+
+        /** Runs the missing waves from sources (to destinations when fromStores, to stores otherwise). */
+        void prepare(Collection<Position> sources, boolean fromStores, ForkJoinPool pool){
+            Map<Position, MultiGoalSearch.Result> cache = fromStores ? toDests : toStores;
+            List<Position> goals = fromStores ? grid.destinations : grid.stores;
+            List<Position> missing = new ArrayList<>();
+            for(Position p : sources) if(!cache.containsKey(p) && !missing.contains(p)) missing.add(p);
+            MultiGoalSearch.Result[] waves = new MultiGoalSearch.Result[missing.size()];
+            IntFunction<MultiGoalSearch.Result> wave = i ->
+                    MultiGoalSearch.forGraph(graph).search(graph, missing.get(i), goals, goals.size(), false);
+            if(pool == null){
+                for(int i = 0; i < waves.length; i++) waves[i] = wave.apply(i);
+            } else {
+                pool.submit(() -> IntStream.range(0, waves.length).parallel().forEach(i -> waves[i] = wave.apply(i))).join();
+            }
+            for(int i = 0; i < waves.length; i++) cache.put(missing.get(i), waves[i]);
+        }
+
+        int toStore(Position from, Position store){ return toStores.get(from).cost(storeIndex.get(store)); }
+        int expandedToStore(Position from, Position store){ return toStores.get(from).expanded(storeIndex.get(store)); }
+        int toDest(Position store, Position dest){ return toDests.get(store).cost(destIndex.get(dest)); }
+        int expandedToDest(Position store, Position dest){ return toDests.get(store).expanded(destIndex.get(dest)); }
+
+        /** Route of one chosen leg, from a single-goal wave that keeps its path. */
+        SearchStats leg(Position from, Position to){
+            MultiGoalSearch.Result r = MultiGoalSearch.forGraph(graph).search(graph, from, Collections.singletonList(to), 1, true);
+            if(!r.reached(0)){
+                return new SearchStats(false, Integer.MAX_VALUE, 0, r.timeNanos, 0L, Collections.emptyList(), SearchStats.NO_PLAN);
+            }
+            return new SearchStats(true, r.cost(0), r.expanded(0), r.timeNanos, 0L, r.route(0), r.plan(0));
+        }
+    }
+
+    /** Associative pick for the parallel reduce: combinedPrefer first, then sequential scan order. */
+    private static Candidate better(Candidate a, Candidate b){
+        if(combinedPrefer(b, a)) return b;
+        if(combinedPrefer(a, b)) return a;
+        return a.order <= b.order ? a : b;
+    }
+
+    // Deterministic ranking: objective score, then added cost, then agent finish. Search effort is never compared.
     private static boolean combinedPrefer(Candidate A, Candidate B){
-        long expA = A.combinedExpanded(), expB = B.combinedExpanded();
-        if(expA != expB) return expA < expB;
-        long timeA = A.statsToStore.timeNanos + A.statsToDest.timeNanos;
-        long timeB = B.statsToStore.timeNanos + B.statsToDest.timeNanos;
-        if(timeA != timeB) return timeA < timeB;
-        return A.combinedMem() < B.combinedMem();
+        if(A.score != B.score) return A.score < B.score;
+        if(A.combinedCost() != B.combinedCost()) return A.combinedCost() < B.combinedCost();
+        return A.finish() < B.finish();
+    }
+
+    private static int routeCost(Grid grid, List<Position> route){
+        int cost = 0;
+        for(int i=1;i<route.size();i++) if(!route.get(i).equals(route.get(i-1))) cost += grid.moveCost(route.get(i-1), route.get(i));
+        return cost;
     }
 
-    private static Map<String, List<Position>> applyCollisionAvoidance(Map<String, List<Position>> routes, Grid grid){
+    /**
+     * CollisionAvoider over routes (empty ones stand on the agent's cell). Conflicts left are
+     * returned in the schedule and also go to sink.
+     */
+    static CollisionAvoider.Schedule applyCollisionAvoidance(Map<String, List<Position>> routes, Grid grid, DiagnosticSink sink){
         Map<String, List<Position>> sched = new LinkedHashMap<>();
         for(Map.Entry<String, List<Position>> e : routes.entrySet()){
             List<Position> copy = new ArrayList<>(e.getValue());
@@ -244,34 +586,15 @@ public class DeliveryPlanner {
             }
             sched.put(e.getKey(), copy);
         }
+        CollisionAvoider.Schedule safe = CollisionAvoider.makeSafe(sched);
+        for(CollisionAvoider.Conflict c : safe.conflicts) sink.accept(DiagnosticEvent.conflict(c));
+        return safe;
+    }
 
-        Map<Integer, Map<Position, String>> reserved = new HashMap<>();
-        boolean changed = true;
-        int passes = 0;
-        while(changed && passes < 2000){
-            changed = false;
-            reserved.clear();
-            int maxT = 0;
-            for(List<Position> r : sched.values()) maxT = Math.max(maxT, r.size());
-            for(int t=0;t<maxT;t++){
-                for(String aid : new ArrayList<>(sched.keySet())){
-                    List<Position> r = sched.get(aid);
-                    Position p = (t < r.size()) ? r.get(t) : r.get(r.size()-1);
-                    Map<Position, String> atT = reserved.computeIfAbsent(t, k->new HashMap<>());
-                    if(atT.containsKey(p)){
-                        int insertPos = Math.min(t, r.size()-1);
-                        Position prev = r.get(Math.max(0, insertPos-1));
-                        r.add(insertPos, prev);
-                        changed = true;
-                        break;
-                    } else {
-                        atT.put(p, aid);
-                    }
-                }
-                if(changed) break;
-            }
-            passes++;
-        }
-        return sched;
+    /** The schedule's unresolved conflicts grouped by the agent that runs into them. */
+    static Map<String, List<CollisionAvoider.Conflict>> byAgent(CollisionAvoider.Schedule schedule){
+        Map<String, List<CollisionAvoider.Conflict>> out = new HashMap<>();
+        for(CollisionAvoider.Conflict c : schedule.conflicts) out.computeIfAbsent(c.agent, k -> new ArrayList<>()).add(c);
+        return out;
     }
 }
@@ -8,55 +8,69 @@ import java.util.*;
 public class DeliverySearch {
 
     public static SearchResult solveInternal(Grid grid, Position start, Position goal, String strat){
+        return solveInternal(grid, start, goal, strat, SearchOptions.defaults());
+    }
+
+    /** As above, within options' limits; a route an anytime search had when stopped still counts. */
+    public static SearchResult solveInternal(Grid grid, Position start, Position goal, String strat, SearchOptions options){
         DeliveryProblem problem = new DeliveryProblem(grid, start, goal);
         SearchStrategy s;
         try { s = SearchStrategy.valueOf(strat.toUpperCase()); }
         catch(Exception ex){ return null; }
 
-        GeneralSearch.Result res = GeneralSearch.generalSearch(problem, s);
+        return searchResult(GeneralSearch.generalSearch(problem, s, options));
+    }
 
+    /**
+     * Races strategies on start -> goal with a Portfolio, each under its own copy of limits, and
+     * returns the kept route. Memory is not measured (0): the strategies share the heap.
+     */
+    public static SearchStats race(Grid grid, Position start, Position goal, Collection<SearchStrategy> strategies,
+                                   Portfolio.Goal objective, SearchOptions limits){
+        Map<SearchStrategy, SearchOptions> entries = new LinkedHashMap<>();
+        for(SearchStrategy s : strategies) entries.put(s, limits);
+        Portfolio.Outcome out = new Portfolio().race(new DeliveryProblem(grid, start, goal), entries, objective);
+        SearchResult r = searchResult(out.result);
+        boolean success = r.plan != null;
+        return new SearchStats(success, r.cost, r.expanded, out.timeNanos, 0L,
+                success ? r.route : Collections.emptyList(), success ? r.plan : SearchStats.NO_PLAN);
+    }
+
+    private static SearchResult searchResult(GeneralSearch.Result res){
         if(res.node == null) return new SearchResult(null, Integer.MAX_VALUE, res.nodesExpanded, Collections.emptyList());
 
-        // reconstruct actions
-        List<String> actions = new ArrayList<>();
-        code.search.Node cur = res.node;
-        while(cur.parent != null){
-            actions.add(cur.action);
-            cur = cur.parent;
-        }
-        Collections.reverse(actions);
-        String plan = String.join(",", actions);
-
-        // reconstruct route positions
-        List<Position> route = new ArrayList<>();
-        Position p = start;
-        route.add(p);
-        for(String a : actions){
-            switch(a){
-                case "up": p = new Position(p.x, p.y-1); break;
-                case "down": p = new Position(p.x, p.y+1); break;
-                case "left": p = new Position(p.x-1, p.y); break;
-                case "right": p = new Position(p.x+1, p.y); break;
-                case "tunnel":
-                    Position partner = grid.tunnelPartner(p);
-                    if(partner != null) p = partner;
-                    break;
-                case "wait":
-                    break;
-                default:
-                    break;
-            }
-            route.add(p);
-        }
-
-        return new SearchResult(plan, res.node.pathCost, res.nodesExpanded, route);
+        // reconstruct route; node states are the grid's canonical positions
+        List<Position> route = new ArrayList<>(res.node.depth + 1);
+        for(code.search.Node cur = res.node; cur != null; cur = cur.parent) route.add((Position) cur.state);
+        Collections.reverse(route);
+
+        return new SearchResult(res.plan, res.node.pathCost, res.nodesExpanded, route);
     }
 
+    /** Solves start -> goal with the named strategy, answering from the grid's RouteCache when it can. */
     public static SearchStats solveWithStats(Grid grid, Position start, Position goal, String strat){
+        return solveWithStats(grid, start, goal, strat, SearchOptions.defaults());
+    }
+
+    /** As above, within options' limits. Results searched under limits are not cached: they may be cut short. */
+    public static SearchStats solveWithStats(Grid grid, Position start, Position goal, String strat, SearchOptions options){
+        SearchStrategy s;
+        try { s = SearchStrategy.valueOf(strat.toUpperCase()); }
+        catch(Exception ex){ return measure(grid, start, goal, strat, options); }
+        RouteCache cache = RouteCache.forGrid(grid);
+        long version = grid.version();
+        SearchStats cached = cache.get(version, start, goal, s);
+        if(cached != null) return cached;
+        SearchStats stats = measure(grid, start, goal, strat, options);
+        if(!options.hasLimits()) cache.put(version, start, goal, s, stats);
+        return stats;
+    }
+
+    private static SearchStats measure(Grid grid, Position start, Position goal, String strat, SearchOptions options){
         long memBefore = usedMemoryBytes();
         long t0 = System.nanoTime(); // ← HIGH-RESOLUTION
 
-        SearchResult r = solveInternal(grid, start, goal, strat);
+        SearchResult r = solveInternal(grid, start, goal, strat, options);
 
         long t1 = System.nanoTime(); // ← HIGH-RESOLUTION
         long memAfter = usedMemoryBytes();
@@ -68,12 +82,7 @@ public class DeliverySearch {
         long memBytes = Math.max(0L, memAfter - memBefore);
         List<Position> route = success ? r.route : Collections.emptyList();
 
-        List<String> actions = Collections.emptyList();
-        if (success && r.plan != null && !r.plan.isEmpty()) {
-            actions = Arrays.asList(r.plan.split(","));
-        }
-
-        return new SearchStats(success, cost, expanded, timeNanos, memBytes, route, actions);
+        return new SearchStats(success, cost, expanded, timeNanos, memBytes, route, success ? r.plan : SearchStats.NO_PLAN);
     }
 
     // Replace usedMemoryKB() with:
@@ -0,0 +1,99 @@
+package code.delivery;
+
+import code.model.Position;
+
+/**
+ * DiagnosticEvent: one structured record from DeliveryPlanner.
+ *
+ *  LEG         - leg n of an agent's final stops (1 = agent -> first stop, n = stop n-1 -> stop n),
+ *                solved by `strategy`: CHOSEN is the route the planner used (a MultiGoalSearch
+ *                wave), the others are the comparison run only while diagnostics are on
+ *  ASSIGNMENT  - a task an agent serves: from = store, to = destination, the legs arriving at
+ *                its pickup and its drop summed
+ *  AGENT       - an agent's final plan after sequencing and collision handling
+ *  CONFLICT    - a collision waiting could not remove (CollisionAvoider.Conflict): the agent runs
+ *                into `other` at step `steps`, on `from`, or swapping from -> to
+ *
+ * Counters that do not apply to a kind are 0; positions that do not apply are null.
+ */
+public final class DiagnosticEvent {
+    public enum Kind { LEG, ASSIGNMENT, AGENT, CONFLICT }
+
+    public final Kind kind;
+    public final String agent;
+    public final int leg;
+    public final Position from;
+    public final Position to;
+    public final String strategy;
+    public final boolean success;
+    public final long expanded;
+    public final long timeNanos;
+    public final long cost;
+    public final int steps;
+    public final String other;
+
+    private DiagnosticEvent(Kind kind, String agent, int leg, Position from, Position to, String strategy,
+                            boolean success, long expanded, long timeNanos, long cost, int steps){
+        this(kind, agent, leg, from, to, strategy, success, expanded, timeNanos, cost, steps, null);
+    }
+
+    private DiagnosticEvent(Kind kind, String agent, int leg, Position from, Position to, String strategy,
+                            boolean success, long expanded, long timeNanos, long cost, int steps, String other){
+        this.kind = kind; this.agent = agent; this.leg = leg; this.from = from; this.to = to; this.strategy = strategy;
+        this.success = success; this.expanded = expanded; this.timeNanos = timeNanos; this.cost = cost; this.steps = steps;
+        this.other = other;
+    }
+
+    public static DiagnosticEvent leg(String agent, int leg, Position from, Position to, String strategy, SearchStats st){
+        return new DiagnosticEvent(Kind.LEG, agent, leg, from, to, strategy, st.success, st.expanded, st.timeNanos,
+                st.success ? st.cost : -1, st.success ? st.route.size() - 1 : -1);
+    }
+
+    public static DiagnosticEvent assignment(String agent, Position store, Position dest, SearchStats toStore, SearchStats toDest){
+        return new DiagnosticEvent(Kind.ASSIGNMENT, agent, 0, store, dest, null, true,
+                (long) toStore.expanded + toDest.expanded, toStore.timeNanos + toDest.timeNanos,
+                (long) toStore.cost + toDest.cost, toStore.route.size() + toDest.route.size() - 2);
+    }
+
+    public static DiagnosticEvent agent(String agent, SearchStats st){
+        return new DiagnosticEvent(Kind.AGENT, agent, 0, null, null, null, st.success, st.expanded, st.timeNanos,
+                st.cost, Math.max(0, st.route.size() - 1));
+    }
+
+    public static DiagnosticEvent conflict(CollisionAvoider.Conflict c){
+        return new DiagnosticEvent(Kind.CONFLICT, c.agent, 0, c.at, c.to, null, false, 0, 0, 0, c.time, c.other);
+    }
+
+    /** The event as one line of JSON. */
+    public String toJson(){
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("{\"kind\":\"").append(kind).append('"');
+        sb.append(",\"agent\":");
+        string(sb, agent);
+        if(kind == Kind.LEG) sb.append(",\"leg\":").append(leg);
+        if(from != null) sb.append(",\"from\":[").append(from.x).append(',').append(from.y).append(']');
+        if(to != null) sb.append(",\"to\":[").append(to.x).append(',').append(to.y).append(']');
+        if(strategy != null){ sb.append(",\"strategy\":"); string(sb, strategy); }
+        if(other != null){ sb.append(",\"other\":"); string(sb, other); }
+        sb.append(",\"success\":").append(success);
+        sb.append(",\"expanded\":").append(expanded);
+        sb.append(",\"timeNanos\":").append(timeNanos);
+        sb.append(",\"cost\":").append(cost);
+        sb.append(",\"steps\":").append(steps);
+        return sb.append('}').toString();
+    }
+
+    private static void string(StringBuilder sb, String s){
+        if(s == null){ sb.append("null"); return; }
+        sb.append('"');
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\') sb.append('\\').append(c);
+            else if(c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    @Override public String toString(){ return toJson(); }
+}
@@ -0,0 +1,19 @@
+package code.delivery;
+
+/**
+ * DiagnosticSink: receives DeliveryPlanner's DiagnosticEvents when PlannerOptions.diagnostics is set.
+ * Events arrive on the planning thread, in planning order.
+ *
+ *  NONE            - drops everything; the planner skips the strategy comparison entirely
+ *  RingBufferSink  - keeps the last n events in memory
+ *  JsonlSink       - one JSON object per line to a file
+ */
+@FunctionalInterface
+public interface DiagnosticSink extends AutoCloseable {
+    DiagnosticSink NONE = e -> {};
+
+    void accept(DiagnosticEvent event);
+
+    /** Flushes and releases whatever the sink holds; nothing by default. */
+    @Override default void close(){}
+}
@@ -0,0 +1,32 @@
+package code.delivery;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/** JsonlSink: appends each event as a JSON line (DiagnosticEvent.toJson) to a file. Thread-safe. */
+public final class JsonlSink implements DiagnosticSink {
+    private final Writer out;
+
+    /** Creates or truncates file. */
+    public JsonlSink(Path file) throws IOException {
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    @Override public synchronized void accept(DiagnosticEvent event){
+        try {
+            out.write(event.toJson());
+            out.write('\n');
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override public synchronized void close(){
+        try {
+            out.close();
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+}
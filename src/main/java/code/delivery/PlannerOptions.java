@@ -0,0 +1,101 @@
+package code.delivery;
+
+import java.util.Objects;
+
+/**
+ * PlannerOptions: settings for DeliveryPlanner.planMultiDelivery.
+ * Setters return this so options can be chained: PlannerOptions.defaults().parallelism(8).
+ */
+public class PlannerOptions {
+    private int parallelism = 1;
+    private AssignmentObjective objective = AssignmentObjective.TOTAL_COST;
+    private double mapfBound = 0;
+    private AssignmentMode assignment = AssignmentMode.HUNGARIAN;
+    private int capacity = 1;
+    private int sequencingRounds = RouteSequencer.DEFAULT_ROUNDS;
+    private long sequencingMillis = 0;
+    private DiagnosticSink diagnostics = DiagnosticSink.NONE;
+
+    public static PlannerOptions defaults(){ return new PlannerOptions(); }
+
+    /** Worker threads for the MultiGoalSearch waves and candidate evaluation; 1 keeps everything on the caller. */
+    public PlannerOptions parallelism(int threads){
+        if(threads < 1) throw new IllegalArgumentException("parallelism must be >= 1, got " + threads);
+        this.parallelism = threads;
+        return this;
+    }
+
+    public int parallelism(){ return parallelism; }
+
+    /** Ranking used to pick assignments; TOTAL_COST by default. */
+    public PlannerOptions objective(AssignmentObjective objective){
+        this.objective = Objects.requireNonNull(objective);
+        return this;
+    }
+
+    public AssignmentObjective objective(){ return objective; }
+
+    /** How agents, stores and destinations are paired; HUNGARIAN by default. */
+    public PlannerOptions assignment(AssignmentMode mode){
+        this.assignment = Objects.requireNonNull(mode);
+        return this;
+    }
+
+    public AssignmentMode assignment(){ return assignment; }
+
+    /**
+     * Re-sequence every agent's stops with RouteSequencer for at most rounds improvement rounds
+     * (0 turns it off), carrying up to capacity orders at once. On by default with capacity 1 and
+     * RouteSequencer.DEFAULT_ROUNDS; the plan then depends only on the world.
+     */
+    public PlannerOptions sequencing(int capacity, int rounds){
+        if(capacity < 1) throw new IllegalArgumentException("capacity must be >= 1, got " + capacity);
+        if(rounds < 0) throw new IllegalArgumentException("rounds must be >= 0, got " + rounds);
+        this.capacity = capacity;
+        this.sequencingRounds = rounds;
+        return this;
+    }
+
+    /**
+     * Also stop sequencing after budgetMillis of wall time; 0, the default, sets no time limit.
+     * With a budget the plan may differ between runs and machines.
+     */
+    public PlannerOptions sequencingBudget(long budgetMillis){
+        if(budgetMillis < 0) throw new IllegalArgumentException("budget must be >= 0, got " + budgetMillis);
+        this.sequencingMillis = budgetMillis;
+        return this;
+    }
+
+    /** Orders an agent may carry at once. */
+    public int capacity(){ return capacity; }
+
+    /** RouteSequencer round limit, 0 when sequencing is off. */
+    public int sequencingRounds(){ return sequencingRounds; }
+
+    /** RouteSequencer time budget, 0 when there is none. */
+    public long sequencingMillis(){ return sequencingMillis; }
+
+    /**
+     * Send DiagnosticEvents to sink, including a per-strategy comparison of every chosen leg
+     * (extra searches); DiagnosticSink.NONE, the default, turns both off. The sink is not closed.
+     */
+    public PlannerOptions diagnostics(DiagnosticSink sink){
+        this.diagnostics = Objects.requireNonNull(sink);
+        return this;
+    }
+
+    public DiagnosticSink diagnostics(){ return diagnostics; }
+
+    /**
+     * Resolve collisions with ConflictBasedSearch (ECBS, cost within bound x optimum; 1 = CBS)
+     * instead of wait insertion. Falls back to wait insertion if ECBS hits its node limit.
+     */
+    public PlannerOptions mapf(double bound){
+        if(!(bound >= 1)) throw new IllegalArgumentException("mapf bound must be >= 1, got " + bound);
+        this.mapfBound = bound;
+        return this;
+    }
+
+    /** ECBS bound, 0 when collisions are resolved by wait insertion. */
+    public double mapfBound(){ return mapfBound; }
+}
@@ -0,0 +1,337 @@
+package code.delivery;
+
+import code.model.*;
+import code.search.GridSearchEngine;
+import code.search.LpaStar;
+import java.util.*;
+
+/**
+ * PlanningSession: keeps a fleet plan up to date while the world changes at runtime.
+ *
+ * The initial plan comes from DeliveryPlanner.planMultiDelivery, stops in the order it sequenced
+ * them. Every leg of every agent (position -> first stop, stop -> next stop, ...) owns an LPA* search,
+ * so an edge update only re-expands the legs whose shortest path the change can reach.
+ * Store, destination and agent updates rebuild just the legs that start or end at them;
+ * stores that cannot be served yet (no free destination, unreachable) wait in a pending list.
+ */
+public class PlanningSession {
+    private final Grid grid;
+    private final PlannerOptions options;
+    private final Map<String, AgentPlan> plans = new LinkedHashMap<>();
+    private final List<Position> pendingStores = new ArrayList<>();
+    private long gridVersion;
+
+    private static final class Leg {
+        final Position from;
+        final Position to;
+        final LpaStar search;         // null when an endpoint is off the grid
+        List<Position> route;         // cached, cleared when the search repairs
+        Leg(Position from, Position to, LpaStar search){ this.from = from; this.to = to; this.search = search; }
+        int cost(){ return search == null ? GridGraph.UNREACHABLE : search.cost(); }
+    }
+
+    private static final class AgentPlan {
+        final Agent agent;
+        final List<DeliveryPlanner.Task> tasks = new ArrayList<>();           // in pickup order
+        final List<RouteSequencer.Stop> stops = new ArrayList<>();            // in visiting order
+        List<Leg> legs = new ArrayList<>();
+        AgentPlan(Agent agent){ this.agent = agent; }
+
+        Position end(){ return stops.isEmpty() ? agent.pos : stops.get(stops.size() - 1).pos(); }
+
+        void add(DeliveryPlanner.Task t){
+            tasks.add(t);
+            stops.add(new RouteSequencer.Stop(t, true));
+            stops.add(new RouteSequencer.Stop(t, false));
+        }
+
+        boolean remove(DeliveryPlanner.Task t){
+            stops.removeIf(s -> s.task == t);
+            return tasks.remove(t);
+        }
+
+        long cost(){
+            long c = 0;
+            for(Leg l : legs){
+                if(l.cost() >= GridGraph.UNREACHABLE) break;
+                c += l.cost();
+            }
+            return c;
+        }
+    }
+
+    public PlanningSession(Grid grid){ this(grid, PlannerOptions.defaults()); }
+
+    public PlanningSession(Grid grid, PlannerOptions options){
+        this.grid = grid;
+        this.options = options;
+        Set<Position> placed = new HashSet<>();
+        for(DeliveryPlanner.Assignment a : DeliveryPlanner.planMultiDelivery(grid, options)){
+            AgentPlan p = new AgentPlan(new Agent(a.agent.id, a.agent.pos));
+            p.tasks.addAll(a.tasks);
+            p.stops.addAll(stops(a));
+            for(DeliveryPlanner.Task t : a.tasks) placed.add(t.store);
+            plans.put(a.agent.id, p);
+        }
+        for(Position s : grid.stores) if(!placed.contains(s)) pendingStores.add(s);
+        gridVersion = grid.version();
+        for(AgentPlan p : plans.values()) syncLegs(p);
+    }
+
+    // ---- world updates ----
+
+    /** Sets the cost of directed edge a->b (0 blocks it); returns how many legs had to be repaired. */
+    public int updateEdge(Position a, Position b, int cost){
+        refreshIfStale();
+        grid.setEdge(a, b, cost);
+        return repairAfterEdit(a, b);
+    }
+
+    /** Sets both directions of a<->b, like UNDIRECTED_EDGE; returns how many legs were repaired. */
+    public int updateUndirectedEdge(Position a, Position b, int cost){
+        refreshIfStale();
+        grid.setEdge(a, b, cost);
+        grid.setEdge(b, a, cost);
+        return repairAfterEdit(a, b);
+    }
+
+    /** Road closure in both directions, like BLOCK. */
+    public int block(Position a, Position b){ return updateUndirectedEdge(a, b, 0); }
+
+    public void addStore(Position store){
+        refreshIfStale();
+        grid.stores.add(store);
+        pendingStores.add(store);
+        assignPending();
+    }
+
+    /** Drops a store and its orders; the destinations they held go to pending stores. */
+    public boolean removeStore(Position store){
+        refreshIfStale();
+        boolean found = grid.stores.remove(store) | pendingStores.remove(store);
+        for(AgentPlan p : plans.values()){
+            boolean changed = false;
+            for(DeliveryPlanner.Task t : new ArrayList<>(p.tasks)) if(t.store.equals(store)) changed |= p.remove(t);
+            if(changed){ syncLegs(p); found = true; }
+        }
+        assignPending();
+        return found;
+    }
+
+    public void addDestination(Position dest){
+        refreshIfStale();
+        grid.destinations.add(dest);
+        assignPending();
+    }
+
+    /** Drops a destination; orders bound to it go back to the pending list and are reassigned. */
+    public boolean removeDestination(Position dest){
+        refreshIfStale();
+        boolean found = grid.destinations.remove(dest);
+        for(AgentPlan p : plans.values()){
+            boolean changed = false;
+            for(DeliveryPlanner.Task t : new ArrayList<>(p.tasks)){
+                if(!t.dest.equals(dest)) continue;
+                p.remove(t);
+                pendingStores.add(t.store);
+                changed = true;
+            }
+            if(changed) syncLegs(p);
+        }
+        assignPending();
+        return found;
+    }
+
+    /** Agent reported a new position: only its first leg is replanned. */
+    public void moveAgent(String agentId, Position pos){
+        refreshIfStale();
+        AgentPlan p = plans.get(agentId);
+        if(p == null) throw new IllegalArgumentException("Unknown agent: " + agentId);
+        p.agent.pos = pos;
+        for(Agent a : grid.agents) if(a.id.equals(agentId)) a.pos = pos;
+        syncLegs(p);
+    }
+
+    // ---- current plan ----
+
+    public List<Position> pendingStores(){ return Collections.unmodifiableList(pendingStores); }
+
+    public List<DeliveryPlanner.Task> tasks(String agentId){
+        AgentPlan p = plans.get(agentId);
+        return p == null ? Collections.emptyList() : Collections.unmodifiableList(p.tasks);
+    }
+
+    /** Current route per agent (legs concatenated, cut at the first unreachable leg). */
+    public Map<String, List<Position>> routes(){
+        refreshIfStale();
+        Map<String, List<Position>> out = new LinkedHashMap<>();
+        for(AgentPlan p : plans.values()){
+            List<Position> r = new ArrayList<>();
+            r.add(p.agent.pos);
+            for(Leg l : p.legs){
+                List<Position> lr = route(l);
+                if(lr.isEmpty()) break;
+                for(int i = 1; i < lr.size(); i++) r.add(lr.get(i));
+            }
+            out.put(p.agent.id, r);
+        }
+        return out;
+    }
+
+    /** Assignments built from the current routes, with waits inserted; Assignment.conflicts holds what waiting could not fix. */
+    public List<DeliveryPlanner.Assignment> assignments(){
+        CollisionAvoider.Schedule schedule = DeliveryPlanner.applyCollisionAvoidance(routes(), grid, options.diagnostics());
+        Map<String, List<Position>> safe = schedule.routes;
+        Map<String, List<CollisionAvoider.Conflict>> conflicts = DeliveryPlanner.byAgent(schedule);
+        List<DeliveryPlanner.Assignment> out = new ArrayList<>();
+        for(AgentPlan p : plans.values()){
+            int expanded = 0;
+            for(Leg l : p.legs) if(l.search != null) expanded += l.search.expanded();
+            List<Position> r = safe.get(p.agent.id);
+            SearchStats st = new SearchStats(true, (int) p.cost(), expanded, 0L, 0L, r, SearchStats.NO_PLAN);
+            List<Position> stops = new ArrayList<>();
+            for(RouteSequencer.Stop s : p.stops) stops.add(s.pos());
+            out.add(new DeliveryPlanner.Assignment(new Agent(p.agent.id, p.agent.pos), r, "LPA*", st, p.tasks, stops,
+                    conflicts.getOrDefault(p.agent.id, Collections.emptyList())));
+        }
+        return out;
+    }
+
+    // ---- internals ----
+
+    private List<Position> route(Leg l){
+        if(l.search == null) return Collections.emptyList();
+        if(l.route == null) l.route = l.search.route();
+        return l.route;
+    }
+
+    private int repairAfterEdit(Position a, Position b){
+        gridVersion = grid.version();
+        GridGraph graph = grid.graph();
+        int ca = graph.cellOf(a), cb = graph.cellOf(b);
+        if(ca == GridGraph.NONE || cb == GridGraph.NONE) return 0; // never a traversable move
+        int repaired = 0;
+        for(AgentPlan p : plans.values()){
+            for(Leg l : p.legs){
+                if(l.search == null) continue;
+                l.search.edgesChanged(graph, ca, cb);
+                // an equal-cost detour needs no expansions but still moves the route off the edited edge
+                if(l.search.computeShortestPath() > 0 || uses(l.route, a, b)){ l.route = null; repaired++; }
+            }
+        }
+        return repaired;
+    }
+
+    private static boolean uses(List<Position> route, Position a, Position b){
+        if(route == null) return false;
+        for(int i = 1; i < route.size(); i++){
+            Position u = route.get(i - 1), v = route.get(i);
+            if((u.equals(a) && v.equals(b)) || (u.equals(b) && v.equals(a))) return true;
+        }
+        return false;
+    }
+
+    /** The grid was edited behind the session's back: incremental state is unusable, start over. */
+    private void refreshIfStale(){
+        if(grid.version() == gridVersion) return;
+        gridVersion = grid.version();
+        for(AgentPlan p : plans.values()){
+            p.legs = new ArrayList<>();
+            syncLegs(p);
+        }
+    }
+
+    /** Rebuilds the leg list from the stop list, keeping every leg whose endpoints did not change. */
+    private void syncLegs(AgentPlan p){
+        List<Leg> old = new LinkedList<>(p.legs);
+        List<Leg> legs = new ArrayList<>();
+        Position from = p.agent.pos;
+        for(RouteSequencer.Stop s : p.stops){
+            legs.add(reuseOrCreate(old, from, s.pos()));
+            from = s.pos();
+        }
+        p.legs = legs;
+    }
+
+    /** a.stops matched back to a.tasks: a pickup is the first task not yet on board with that store. */
+    private static List<RouteSequencer.Stop> stops(DeliveryPlanner.Assignment a){
+        List<DeliveryPlanner.Task> waiting = new ArrayList<>(a.tasks), onBoard = new ArrayList<>();
+        List<RouteSequencer.Stop> out = new ArrayList<>();
+        for(Position pos : a.stops){
+            DeliveryPlanner.Task t = take(onBoard, pos, false);
+            if(t != null){ out.add(new RouteSequencer.Stop(t, false)); continue; }
+            t = take(waiting, pos, true);
+            if(t == null) throw new IllegalArgumentException("Stop " + pos + " of " + a.agent.id + " matches no task");
+            onBoard.add(t);
+            out.add(new RouteSequencer.Stop(t, true));
+        }
+        for(DeliveryPlanner.Task t : waiting){ out.add(new RouteSequencer.Stop(t, true)); onBoard.add(t); }
+        for(DeliveryPlanner.Task t : onBoard) out.add(new RouteSequencer.Stop(t, false));
+        return out;
+    }
+
+    private static DeliveryPlanner.Task take(List<DeliveryPlanner.Task> tasks, Position pos, boolean pickup){
+        for(Iterator<DeliveryPlanner.Task> it = tasks.iterator(); it.hasNext();){
+            DeliveryPlanner.Task t = it.next();
+            if((pickup ? t.store : t.dest).equals(pos)){ it.remove(); return t; }
+        }
+        return null;
+    }
+
+    private Leg reuseOrCreate(List<Leg> old, Position from, Position to){
+        for(Iterator<Leg> it = old.iterator(); it.hasNext();){
+            Leg l = it.next();
+            if(l.from.equals(from) && l.to.equals(to)){ it.remove(); return l; }
+        }
+        GridGraph graph = grid.graph();
+        int s = graph.cellOf(from), g = graph.cellOf(to);
+        if(s == GridGraph.NONE || g == GridGraph.NONE) return new Leg(from, to, null);
+        LpaStar search = new LpaStar(graph, s, g);
+        search.computeShortestPath();
+        return new Leg(from, to, search);
+    }
+
+    private Set<Position> reservedDestinations(){
+        Set<Position> used = new HashSet<>();
+        for(AgentPlan p : plans.values()) for(DeliveryPlanner.Task t : p.tasks) used.add(t.dest);
+        return used;
+    }
+
+    /** Appends pending stores to the agent the objective prefers, as the planner would. */
+    private void assignPending(){
+        for(Iterator<Position> it = pendingStores.iterator(); it.hasNext();){
+            Position store = it.next();
+            Position dest = DeliveryPlanner.nearestAvailableDestination(grid, store, reservedDestinations());
+            if(dest == null) continue;
+            int toDest = cost(store, dest);
+            if(toDest >= GridGraph.UNREACHABLE) continue;
+
+            long makespan = 0;
+            for(AgentPlan p : plans.values()) makespan = Math.max(makespan, p.cost());
+            AgentPlan best = null;
+            long bestScore = 0, bestAdded = 0, bestFinish = 0;
+            for(AgentPlan p : plans.values()){
+                int toStore = cost(p.end(), store);
+                if(toStore >= GridGraph.UNREACHABLE) continue;
+                long added = (long) toStore + toDest, committed = p.cost();
+                long score = options.objective().score(added, committed, makespan);
+                long finish = committed + added;
+                boolean better = best == null || score < bestScore
+                        || (score == bestScore && (added < bestAdded || (added == bestAdded && finish < bestFinish)));
+                if(better){ best = p; bestScore = score; bestAdded = added; bestFinish = finish; }
+            }
+            if(best == null) continue;
+            best.add(new DeliveryPlanner.Task(store, dest));
+            syncLegs(best);
+            it.remove();
+        }
+    }
+
+    private int cost(Position from, Position to){
+        GridGraph graph = grid.graph();
+        int s = graph.cellOf(from), g = graph.cellOf(to);
+        if(s == GridGraph.NONE || g == GridGraph.NONE) return GridGraph.UNREACHABLE;
+        code.search.GeneralSearch.Result r = GridSearchEngine.forGraph(graph).search(graph, s, g, null);
+        return r.node == null ? GridGraph.UNREACHABLE : r.node.pathCost;
+    }
+}
@@ -0,0 +1,116 @@
+package code.delivery;
+
+import java.util.Arrays;
+
+/**
+ * ReservationTable: which agent occupies which cell at which timestep.
+ *
+ * (cell, t) is packed into a long and stored in an open-addressing table of primitive arrays,
+ * so reserving and probing never allocate. An agent that finished its schedule parks on its
+ * last cell for good; parking is one entry per cell (parkedFrom) rather than an open-ended run
+ * of timesteps. Cells are small dense ints chosen by the caller.
+ */
+public final class ReservationTable {
+    public static final int FREE = -1;
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int[] owners;
+    private int size;
+    private int[] lastReserved;       // latest t reserved on the cell, -1 if never
+    private int[] parkedFrom;         // t from which the cell is taken forever, MAX_VALUE if not
+    private int[] parkedBy;
+    private int horizon;              // latest t reserved anywhere
+
+    public ReservationTable(int cells){
+        keys = new long[64];
+        owners = new int[64];
+        Arrays.fill(keys, EMPTY);
+        lastReserved = new int[cells];
+        parkedFrom = new int[cells];
+        parkedBy = new int[cells];
+        Arrays.fill(lastReserved, -1);
+        Arrays.fill(parkedFrom, Integer.MAX_VALUE);
+        Arrays.fill(parkedBy, FREE);
+    }
+
+    private static long key(int cell, int t){ return ((long) t << 32) | cell; }
+
+    private static int hash(long k){
+        k *= 0x9E3779B97F4A7C15L;
+        return (int) (k ^ (k >>> 32));
+    }
+
+    /** Agent occupying cell at t (parking included), FREE if nobody. */
+    public int owner(int cell, int t){
+        if(t >= parkedFrom[cell]) return parkedBy[cell];
+        if(t > lastReserved[cell]) return FREE;
+        long k = key(cell, t);
+        int mask = keys.length - 1;
+        for(int i = hash(k) & mask; ; i = (i + 1) & mask){
+            if(keys[i] == k) return owners[i];
+            if(keys[i] == EMPTY) return FREE;
+        }
+    }
+
+    /** Claims cell at t for agent; the first claim wins if two agents overlap. */
+    public void reserve(int cell, int t, int agent){
+        if((size + 1) * 2 > keys.length) grow();
+        long k = key(cell, t);
+        int mask = keys.length - 1;
+        for(int i = hash(k) & mask; ; i = (i + 1) & mask){
+            if(keys[i] == k) return;
+            if(keys[i] == EMPTY){
+                keys[i] = k; owners[i] = agent; size++;
+                break;
+            }
+        }
+        lastReserved[cell] = Math.max(lastReserved[cell], t);
+        horizon = Math.max(horizon, t);
+    }
+
+    /** Agent stays on cell from t onwards. */
+    public void park(int cell, int t, int agent){
+        if(t >= parkedFrom[cell]) return;
+        parkedFrom[cell] = t;
+        parkedBy[cell] = agent;
+        horizon = Math.max(horizon, t);
+    }
+
+    private void grow(){
+        long[] oldKeys = keys;
+        int[] oldOwners = owners;
+        keys = new long[oldKeys.length * 2];
+        owners = new int[keys.length];
+        Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for(int j = 0; j < oldKeys.length; j++){
+            if(oldKeys[j] == EMPTY) continue;
+            int i = hash(oldKeys[j]) & mask;
+            while(keys[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            owners[i] = oldOwners[j];
+        }
+    }
+
+    /** Vertex check: nobody else is on cell at t. */
+    public boolean vertexFree(int cell, int t, int agent){
+        int o = owner(cell, t);
+        return o == FREE || o == agent;
+    }
+
+    /** Edge check for a move from -> to between t and t+1: nobody comes the other way. */
+    public boolean edgeFree(int from, int to, int t, int agent){
+        if(from == to) return true;
+        int o = owner(to, t);
+        return o == FREE || o == agent || owner(from, t + 1) != o;
+    }
+
+    /** Agent can stop on cell at t and stay there: no later reservation touches it. */
+    public boolean canPark(int cell, int t, int agent){
+        return lastReserved[cell] < t && (parkedBy[cell] == FREE || parkedBy[cell] == agent);
+    }
+
+    /** Latest timestep anything was reserved; past it only parked cells are taken. */
+    public int horizon(){ return horizon; }
+}
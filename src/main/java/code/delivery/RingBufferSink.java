@@ -0,0 +1,37 @@
+package code.delivery;
+
+import java.util.*;
+
+/** RingBufferSink: keeps the most recent `capacity` events; older ones are overwritten. Thread-safe. */
+public final class RingBufferSink implements DiagnosticSink {
+    private final DiagnosticEvent[] buffer;
+    private long written;
+
+    public RingBufferSink(int capacity){
+        if(capacity < 1) throw new IllegalArgumentException("capacity must be >= 1, got " + capacity);
+        buffer = new DiagnosticEvent[capacity];
+    }
+
+    @Override public synchronized void accept(DiagnosticEvent event){
+        buffer[(int) (written++ % buffer.length)] = event;
+    }
+
+    /** Retained events, oldest first. */
+    public synchronized List<DiagnosticEvent> events(){
+        int n = (int) Math.min(written, buffer.length);
+        List<DiagnosticEvent> out = new ArrayList<>(n);
+        for(long i = written - n; i < written; i++) out.add(buffer[(int) (i % buffer.length)]);
+        return out;
+    }
+
+    /** Events accepted so far, including overwritten ones. */
+    public synchronized long written(){ return written; }
+
+    /** Events lost to overwriting. */
+    public synchronized long dropped(){ return Math.max(0, written - buffer.length); }
+
+    public synchronized void clear(){
+        Arrays.fill(buffer, null);
+        written = 0;
+    }
+}
@@ -0,0 +1,234 @@
+package code.delivery;
+
+import code.model.*;
+import code.search.SearchStrategy;
+import java.util.*;
+
+/**
+ * RouteCache: bounded LRU cache of solved legs, one per Grid, keyed by (start, goal, strategy)
+ * under the grid's current version. DeliverySearch.solveWithStats consults it before searching.
+ *
+ * Any edge or tunnel change bumps Grid.version(); the next call sees the new version and drops
+ * every entry. Results computed against an older version are not stored. Entries are evicted
+ * least recently used first once either limit (entries, estimated bytes) is exceeded.
+ *
+ * For strategies that return least-cost paths (OPTIMAL), a miss may still be answered from a
+ * cached route that passes through the query's other endpoint: every prefix and suffix of a
+ * shortest path is itself a shortest path. Those answers report 0 expanded nodes.
+ *
+ * All methods are synchronized on the cache; a lookup is a hash probe plus, for the
+ * prefix/suffix case, a scan of the routes sharing the query's start or goal.
+ */
+public final class RouteCache {
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+    public static final long DEFAULT_MAX_BYTES = 16L << 20;
+    /** Strategies whose routes are least-cost, so their sub-paths may be reused. */
+    public static final Set<SearchStrategy> OPTIMAL = Collections.unmodifiableSet(optimalStrategies());
+
+    private final Grid grid;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Endpoint, List<Entry>> byStart = new HashMap<>(), byGoal = new HashMap<>();
+    private long version;
+    private long bytes;
+    private long hits, partialHits, misses, evictions;
+
+    private static final class Key {
+        final long start, goal;
+        final SearchStrategy strategy;
+        Key(long start, long goal, SearchStrategy strategy){ this.start = start; this.goal = goal; this.strategy = strategy; }
+        @Override public boolean equals(Object o){
+            if(!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return start == k.start && goal == k.goal && strategy == k.strategy;
+        }
+        @Override public int hashCode(){ return (Long.hashCode(start) * 31 + Long.hashCode(goal)) * 31 + strategy.ordinal(); }
+    }
+
+    /** One end of a cached route, for the prefix/suffix index. */
+    private static final class Endpoint {
+        final long pos;
+        final SearchStrategy strategy;
+        Endpoint(long pos, SearchStrategy strategy){ this.pos = pos; this.strategy = strategy; }
+        @Override public boolean equals(Object o){
+            return o instanceof Endpoint && ((Endpoint) o).pos == pos && ((Endpoint) o).strategy == strategy;
+        }
+        @Override public int hashCode(){ return Long.hashCode(pos) * 31 + strategy.ordinal(); }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final SearchStats stats;
+        final int[] costTo;           // cost from the start to route[i]; null unless indexed
+        final long bytes;
+        Entry(Key key, SearchStats stats, int[] costTo){
+            this.key = key; this.stats = stats; this.costTo = costTo;
+            this.bytes = 96 + 8L * stats.route.size() + stats.plan.length + (costTo == null ? 0 : 4L * costTo.length);
+        }
+    }
+
+    private RouteCache(Grid grid){
+        this.grid = grid;
+        this.version = grid.version();
+    }
+
+    /** The cache of grid, created on first use and held by the grid (Grid.derived). */
+    public static RouteCache forGrid(Grid grid){ return grid.derived(RouteCache.class, RouteCache::new); }
+
+    /** Sets both bounds, evicting at once if the cache is over them. */
+    public synchronized RouteCache limits(int maxEntries, long maxBytes){
+        if(maxEntries < 0 || maxBytes < 0) throw new IllegalArgumentException("limits must be >= 0");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        trim();
+        return this;
+    }
+
+    /**
+     * Cached stats for start -> goal under strategy at grid version `version`, or null on a miss.
+     * A hit returns the stats recorded when the leg was solved (a fresh copy).
+     */
+    public synchronized SearchStats get(long version, Position start, Position goal, SearchStrategy strategy){
+        if(!current(version)){ misses++; return null; }
+        Key key = new Key(start.packed(), goal.packed(), strategy);
+        Entry e = entries.get(key);
+        if(e != null){
+            hits++;
+            return copy(e.stats);
+        }
+        if(OPTIMAL.contains(strategy)){
+            long t0 = System.nanoTime();
+            SearchStats sub = subRoute(start, goal, strategy, t0);
+            if(sub != null){
+                partialHits++;
+                insert(key, sub);
+                return copy(sub);
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /** Stores a solved leg, unless the grid changed since `version` was read. */
+    public synchronized void put(long version, Position start, Position goal, SearchStrategy strategy, SearchStats stats){
+        if(!current(version)) return;
+        Key key = new Key(start.packed(), goal.packed(), strategy);
+        if(entries.containsKey(key)) return;
+        insert(key, copy(stats));
+    }
+
+    public synchronized void clear(){
+        entries.clear();
+        byStart.clear();
+        byGoal.clear();
+        bytes = 0;
+    }
+
+    public synchronized long hits(){ return hits; }
+    /** Misses answered from a prefix or suffix of a cached route. */
+    public synchronized long partialHits(){ return partialHits; }
+    public synchronized long misses(){ return misses; }
+    public synchronized long evictions(){ return evictions; }
+    public synchronized int size(){ return entries.size(); }
+    /** Estimated heap held by the cached routes. */
+    public synchronized long bytes(){ return bytes; }
+
+    @Override public synchronized String toString(){
+        return String.format("RouteCache[size=%d bytes=%d hits=%d partial=%d misses=%d evictions=%d]",
+                entries.size(), bytes, hits, partialHits, misses, evictions);
+    }
+
+    /** Drops everything if the grid moved past the cached version; false if `version` is stale. */
+    private boolean current(long version){
+        long now = grid.version();
+        if(now != this.version){
+            clear();
+            this.version = now;
+        }
+        return version == now;
+    }
+
+    private void insert(Key key, SearchStats stats){
+        int[] costTo = OPTIMAL.contains(key.strategy) && stats.success ? costTo(stats) : null;
+        Entry e = new Entry(key, stats, costTo);
+        entries.put(key, e);
+        bytes += e.bytes;
+        if(costTo != null){
+            byStart.computeIfAbsent(new Endpoint(key.start, key.strategy), k -> new ArrayList<>()).add(e);
+            byGoal.computeIfAbsent(new Endpoint(key.goal, key.strategy), k -> new ArrayList<>()).add(e);
+        }
+        trim();
+    }
+
+    private void trim(){
+        Iterator<Entry> it = entries.values().iterator();
+        while((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()){
+            Entry e = it.next();
+            it.remove();
+            bytes -= e.bytes;
+            evictions++;
+            if(e.costTo != null){
+                unindex(byStart, new Endpoint(e.key.start, e.key.strategy), e);
+                unindex(byGoal, new Endpoint(e.key.goal, e.key.strategy), e);
+            }
+        }
+    }
+
+    private static void unindex(Map<Endpoint, List<Entry>> index, Endpoint k, Entry e){
+        List<Entry> l = index.get(k);
+        if(l == null) return;
+        l.remove(e);
+        if(l.isEmpty()) index.remove(k);
+    }
+
+    /** Prefix of a route leaving start, or suffix of one reaching goal, that links start to goal. */
+    private SearchStats subRoute(Position start, Position goal, SearchStrategy strategy, long t0){
+        for(Entry e : index(byStart, start, strategy)){
+            int i = e.stats.route.indexOf(goal);
+            if(i >= 0) return slice(e, 0, i, t0);
+        }
+        for(Entry e : index(byGoal, goal, strategy)){
+            int i = e.stats.route.indexOf(start);
+            if(i >= 0) return slice(e, i, e.stats.route.size() - 1, t0);
+        }
+        return null;
+    }
+
+    private static List<Entry> index(Map<Endpoint, List<Entry>> index, Position p, SearchStrategy strategy){
+        List<Entry> l = index.get(new Endpoint(p.packed(), strategy));
+        return l == null ? Collections.emptyList() : l;
+    }
+
+    private static SearchStats slice(Entry e, int from, int to, long t0){
+        List<Position> route = new ArrayList<>(e.stats.route.subList(from, to + 1));
+        byte[] plan = Arrays.copyOfRange(e.stats.plan, from, to);
+        return new SearchStats(true, e.costTo[to] - e.costTo[from], 0, System.nanoTime() - t0, 0L, route, plan);
+    }
+
+    /** Running cost along a successful route, each step priced by the edge its operator names; null if one is missing. */
+    private int[] costTo(SearchStats stats){
+        GridGraph graph = grid.graph();
+        int[] out = new int[stats.route.size()];
+        for(int i = 0; i < stats.plan.length; i++){
+            int c = graph.cellOf(stats.route.get(i));
+            int step = GridGraph.UNREACHABLE;
+            for(int e = graph.firstEdge(c), end = graph.endEdge(c); e < end; e++){
+                if(graph.edgeOp(e) == stats.plan[i]){ step = graph.edgeCost(e); break; }
+            }
+            if(step == GridGraph.UNREACHABLE) return null;
+            out[i + 1] = out[i] + step;
+        }
+        return out;
+    }
+
+    private static EnumSet<SearchStrategy> optimalStrategies(){
+        EnumSet<SearchStrategy> set = EnumSet.noneOf(SearchStrategy.class);
+        for(SearchStrategy s : SearchStrategy.values()) if(s.optimal()) set.add(s);
+        return set;
+    }
+
+    private static SearchStats copy(SearchStats s){
+        return new SearchStats(s.success, s.cost, s.expanded, s.timeNanos, s.memoryUsedBytes, s.route, s.plan.clone());
+    }
+}
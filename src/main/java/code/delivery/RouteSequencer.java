@@ -0,0 +1,341 @@
+package code.delivery;
+
+import code.model.*;
+import code.search.MultiGoalSearch;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * RouteSequencer: pickup-and-delivery sequencing of the tasks DeliveryPlanner hands out.
+ *
+ * An agent's plan is a sequence of stops, each task's store before its destination, with at most
+ * capacity orders on board at once (1 = deliver before the next pickup). Starting from the
+ * planner's task lists, local search runs in rounds until no move improves the objective, the
+ * round limit is reached or the optional time budget is spent, so the answer is always the best
+ * sequence found so far. Without a time budget the result depends only on the input:
+ *  relocate - take a task out and insert its pickup and delivery where they are cheapest, on any agent
+ *  or-opt   - move a run of 1..3 consecutive stops elsewhere in the same route
+ *  2-opt    - reverse a stretch of a route (only ever feasible with capacity > 1)
+ * Moves that put a delivery before its pickup or overload an agent are rejected. Stop-to-stop
+ * costs come from one MultiGoalSearch wave per distinct stop cell, built before the budget starts;
+ * routes end at the last stop.
+ */
+public final class RouteSequencer {
+    /** Improvement rounds before sequencing stops short of a local optimum. */
+    public static final int DEFAULT_ROUNDS = 100;
+
+    private final Grid grid;
+    private final AssignmentObjective objective;
+    private final int capacity;
+    private final int maxRounds;
+    private final long budgetNanos;       // 0: no time limit
+
+    private int[][] dist;             // between point ids: agents first, then 2t (store) and 2t+1 (dest) of task t
+    private int agents;
+    private long deadline;
+    private boolean timedOut;
+
+    /** One visit: a task's store (pickup) or destination (delivery). */
+    public static final class Stop {
+        public final DeliveryPlanner.Task task;
+        public final boolean pickup;
+        Stop(DeliveryPlanner.Task task, boolean pickup){ this.task = task; this.pickup = pickup; }
+        public Position pos(){ return pickup ? task.store : task.dest; }
+        @Override public String toString(){ return (pickup ? "pickup " : "drop ") + pos(); }
+    }
+
+    /** At most maxRounds rounds of moves and, when budgetNanos > 0, that much time per sequence(). */
+    public RouteSequencer(Grid grid, AssignmentObjective objective, int capacity, int maxRounds, long budgetNanos){
+        if(capacity < 1) throw new IllegalArgumentException("capacity must be >= 1, got " + capacity);
+        if(maxRounds < 0 || budgetNanos < 0) throw new IllegalArgumentException("limits must be >= 0");
+        this.grid = grid;
+        this.objective = Objects.requireNonNull(objective);
+        this.capacity = capacity;
+        this.maxRounds = maxRounds;
+        this.budgetNanos = budgetNanos;
+    }
+
+    /** True if the last sequence() stopped on the time budget rather than at a local optimum. */
+    public boolean timedOut(){ return timedOut; }
+
+    /**
+     * Improved stop sequences, one per agent, starting from tasks.get(a) served one after another.
+     * Stop-cost waves run on pool when it is non-null.
+     */
+    public List<List<Stop>> sequence(List<Agent> fleet, List<List<DeliveryPlanner.Task>> tasks, ForkJoinPool pool){
+        agents = fleet.size();
+        List<DeliveryPlanner.Task> all = new ArrayList<>();
+        for(List<DeliveryPlanner.Task> l : tasks) all.addAll(l);
+        List<Position> points = new ArrayList<>();
+        for(Agent a : fleet) points.add(a.pos);
+        for(DeliveryPlanner.Task t : all){ points.add(t.store); points.add(t.dest); }
+        dist = distances(points, pool);
+        deadline = System.nanoTime() + budgetNanos;       // the budget is for the search, not the waves
+        timedOut = false;
+
+        List<int[]> routes = new ArrayList<>();
+        for(int a = 0, t = 0; a < agents; a++){
+            int[] r = new int[tasks.get(a).size() * 2];
+            for(int i = 0; i < r.length; i += 2, t++){ r[i] = 2 * t; r[i + 1] = 2 * t + 1; }
+            routes.add(r);
+        }
+        long[] cost = new long[agents];
+        for(int a = 0; a < agents; a++) cost[a] = routeCost(a, routes.get(a));
+
+        boolean improved = true;
+        for(int round = 0; improved && round < maxRounds && !expired(); round++){
+            improved = relocate(routes, cost, all.size());
+            for(int a = 0; a < agents && !expired(); a++){
+                improved |= orOpt(a, routes, cost);
+                if(capacity > 1) improved |= twoOpt(a, routes, cost);
+            }
+        }
+
+        List<List<Stop>> out = new ArrayList<>();
+        for(int[] r : routes){
+            List<Stop> stops = new ArrayList<>(r.length);
+            for(int s : r) stops.add(new Stop(all.get(s >> 1), (s & 1) == 0));
+            out.add(stops);
+        }
+        return out;
+    }
+
+    private boolean expired(){
+        if(budgetNanos == 0 || System.nanoTime() < deadline) return false;
+        timedOut = true;
+        return true;
+    }
+
+    private int[][] distances(List<Position> points, ForkJoinPool pool){
+        GridGraph graph = grid.graph();
+        int n = points.size();
+        int[] cells = new int[n];
+        for(int i = 0; i < n; i++) cells[i] = graph.cellOf(points.get(i));
+        int[][] d = new int[n][];
+        // one wave per distinct cell; points sharing a cell share the row
+        Map<Integer, Integer> first = new HashMap<>();
+        List<Integer> sources = new ArrayList<>();
+        for(int i = 0; i < n; i++) if(first.putIfAbsent(cells[i], i) == null) sources.add(i);
+        int[][] rows = new int[sources.size()][];
+        IntConsumer wave = k -> {
+            MultiGoalSearch.Result r = MultiGoalSearch.forGraph(graph).search(graph, cells[sources.get(k)], cells, n, false);
+            int[] row = new int[n];
+            for(int j = 0; j < n; j++) row[j] = r.cost(j);
+            rows[k] = row;
+        };
+        if(pool == null){
+            for(int k = 0; k < rows.length; k++) wave.accept(k);
+        } else {
+            pool.submit(() -> IntStream.range(0, rows.length).parallel().forEach(wave)).join();
+        }
+        for(int k = 0; k < rows.length; k++) d[sources.get(k)] = rows[k];
+        for(int i = 0; i < n; i++) if(d[i] == null) d[i] = d[first.get(cells[i])];
+        return d;
+    }
+
+    private int point(int stop){ return agents + stop; }
+
+    private long leg(int from, int to){ return dist[from][to]; }
+
+    /** Cost between consecutive positions of route a: -1 is the agent's start. */
+    private long step(int a, int[] r, int i, int j){
+        int from = i < 0 ? a : point(r[i]);
+        return leg(from, point(r[j]));
+    }
+
+    private long routeCost(int a, int[] r){
+        long c = 0;
+        for(int i = 0; i < r.length; i++) c += step(a, r, i - 1, i);
+        return c;
+    }
+
+    private long score(long[] cost){
+        long total = 0, makespan = 0;
+        for(long c : cost){ total += c; makespan = Math.max(makespan, c); }
+        return objective.costWeight * total + objective.makespanWeight * makespan;
+    }
+
+    private boolean feasible(int[] r){
+        int load = 0;
+        boolean[] picked = new boolean[dist.length];
+        for(int s : r){
+            if((s & 1) == 0){
+                picked[s >> 1] = true;
+                if(++load > capacity) return false;
+            } else {
+                if(!picked[s >> 1]) return false;
+                load--;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Every task is taken out of its route and reinserted at the cheapest feasible pickup and
+     * delivery positions over all routes; applied when the objective improves.
+     */
+    private boolean relocate(List<int[]> routes, long[] cost, int taskCount){
+        boolean any = false;
+        for(int t = 0; t < taskCount && !expired(); t++){
+            int from = -1;
+            for(int a = 0; a < agents && from < 0; a++) for(int s : routes.get(a)) if(s == 2 * t){ from = a; break; }
+            int[] reduced = remove(routes.get(from), 2 * t, 2 * t + 1);
+            long reducedCost = routeCost(from, reduced);
+            long before = score(cost);
+            long best = before;
+            int bestA = -1, bestI = 0, bestJ = 0;
+            long bestCost = 0;
+            for(int a = 0; a < agents; a++){
+                int[] r = a == from ? reduced : routes.get(a);
+                long base = a == from ? reducedCost : cost[a];
+                long saved = cost[a];
+                long savedFrom = cost[from];
+                cost[from] = reducedCost;
+                int[] load = loads(r);
+                for(int i = 0; i <= r.length; i++){
+                    int prior = i == 0 ? 0 : load[i - 1];
+                    if(prior + 1 > capacity) continue;
+                    int peak = prior;
+                    for(int j = i; j <= r.length; j++){
+                        if(j > i){
+                            peak = Math.max(peak, load[j - 1]);
+                            if(peak + 1 > capacity) break;
+                        }
+                        long c = base + insertion(a, r, i, j, 2 * t);
+                        cost[a] = c;
+                        long s = score(cost);
+                        if(s < best){ best = s; bestA = a; bestI = i; bestJ = j; bestCost = c; }
+                    }
+                }
+                cost[from] = savedFrom;
+                cost[a] = saved;
+            }
+            if(bestA < 0) continue;
+            int[] target = bestA == from ? reduced : routes.get(bestA);
+            routes.set(from, reduced);
+            cost[from] = reducedCost;
+            routes.set(bestA, insert(target, bestI, bestJ, 2 * t));
+            cost[bestA] = bestCost;
+            any = true;
+        }
+        return any;
+    }
+
+    /** Added cost of the pickup before index i and the delivery before index j (i <= j) of r. */
+    private long insertion(int a, int[] r, int i, int j, int pickup){
+        int p = point(pickup), d = point(pickup + 1);
+        int prevI = i == 0 ? a : point(r[i - 1]);
+        if(i == j){
+            long c = leg(prevI, p) + leg(p, d);
+            if(i < r.length) c += leg(d, point(r[i])) - leg(prevI, point(r[i]));
+            return c;
+        }
+        long c = leg(prevI, p) + leg(p, point(r[i])) - leg(prevI, point(r[i]));
+        int prevJ = point(r[j - 1]);
+        c += leg(prevJ, d);
+        if(j < r.length) c += leg(d, point(r[j])) - leg(prevJ, point(r[j]));
+        return c;
+    }
+
+    /** Orders on board after each stop of r. */
+    private static int[] loads(int[] r){
+        int[] load = new int[r.length];
+        for(int i = 0, l = 0; i < r.length; i++){
+            l += (r[i] & 1) == 0 ? 1 : -1;
+            load[i] = l;
+        }
+        return load;
+    }
+
+    private static int[] remove(int[] r, int x, int y){
+        int[] out = new int[r.length - 2];
+        int k = 0;
+        for(int s : r) if(s != x && s != y) out[k++] = s;
+        return out;
+    }
+
+    private static int[] insert(int[] r, int i, int j, int pickup){
+        int[] out = new int[r.length + 2];
+        int k = 0;
+        for(int m = 0; m <= r.length; m++){
+            if(m == i) out[k++] = pickup;
+            if(m == j) out[k++] = pickup + 1;
+            if(m < r.length) out[k++] = r[m];
+        }
+        return out;
+    }
+
+    /** Moves runs of 1..3 stops of route a to a later or earlier gap; first improvement wins. */
+    private boolean orOpt(int a, List<int[]> routes, long[] cost){
+        boolean any = false;
+        for(int len = 1; len <= 3; len++){
+            int[] r = routes.get(a);
+            for(int i = 0; i + len <= r.length; i++){
+                for(int g = 0; g <= r.length; g++){
+                    if(g >= i && g <= i + len) continue;
+                    int[] moved = moveRun(r, i, len, g);
+                    long c = routeCost(a, moved);
+                    if(c >= cost[a] || !feasible(moved)) continue;
+                    long saved = cost[a];
+                    cost[a] = c;
+                    if(score(cost) >= scoreWith(cost, a, saved)){ cost[a] = saved; continue; }
+                    routes.set(a, moved);
+                    r = moved;
+                    any = true;
+                }
+                if(expired()) return any;
+            }
+        }
+        return any;
+    }
+
+    /** Reverses r[i..j] of route a when that is cheaper and still feasible. */
+    private boolean twoOpt(int a, List<int[]> routes, long[] cost){
+        boolean any = false;
+        int[] r = routes.get(a);
+        for(int i = 0; i < r.length; i++){
+            long forward = 0, backward = 0;
+            for(int j = i + 1; j < r.length; j++){
+                forward += step(a, r, j - 1, j);
+                backward += leg(point(r[j]), point(r[j - 1]));
+                long delta = backward - forward
+                        + leg(i == 0 ? a : point(r[i - 1]), point(r[j])) - step(a, r, i - 1, i);
+                if(j + 1 < r.length) delta += leg(point(r[i]), point(r[j + 1])) - step(a, r, j, j + 1);
+                if(delta >= 0) continue;
+                int[] rev = r.clone();
+                for(int x = i, y = j; x < y; x++, y--){ int tmp = rev[x]; rev[x] = rev[y]; rev[y] = tmp; }
+                if(!feasible(rev)) continue;
+                long saved = cost[a];
+                cost[a] = saved + delta;
+                if(score(cost) >= scoreWith(cost, a, saved)){ cost[a] = saved; continue; }
+                routes.set(a, rev);
+                r = rev;
+                any = true;
+                forward = backward = 0;
+                for(int k = i + 1; k <= j; k++){ forward += step(a, r, k - 1, k); backward += leg(point(r[k]), point(r[k - 1])); }
+            }
+            if(expired()) return any;
+        }
+        return any;
+    }
+
+    private long scoreWith(long[] cost, int a, long value){
+        long current = cost[a];
+        cost[a] = value;
+        long s = score(cost);
+        cost[a] = current;
+        return s;
+    }
+
+    private static int[] moveRun(int[] r, int i, int len, int gap){
+        int[] out = new int[r.length];
+        int k = 0;
+        for(int m = 0; m <= r.length; m++){
+            if(m == gap) for(int x = i; x < i + len; x++) out[k++] = r[x];
+            if(m < r.length && (m < i || m >= i + len)) out[k++] = r[m];
+        }
+        return out;
+    }
+}
@@ -4,11 +4,11 @@ import code.model.Position;
 import java.util.List;
 
 public class SearchResult {
-    public final String plan;
+    public final byte[] plan;           // GridGraph op codes, null when no route was found
     public final int cost;
     public final int expanded;
     public final List<Position> route;
-    public SearchResult(String plan, int cost, int expanded, List<Position> route){
+    public SearchResult(byte[] plan, int cost, int expanded, List<Position> route){
         this.plan = plan; this.cost = cost; this.expanded = expanded; this.route = route;
     }
 }
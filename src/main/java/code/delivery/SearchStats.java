@@ -1,5 +1,6 @@
 package code.delivery;
 
+import code.model.GridGraph;
 import code.model.Position;
 import java.util.*;
 
@@ -10,23 +11,32 @@ public class SearchStats {
     public final long timeNanos;        // ← nanoseconds (high-res)
     public final long memoryUsedBytes;
     public final List<Position> route;
-    public final List<String> actions;
+    public final byte[] plan;           // GridGraph op codes; see actions()
+
+    public static final byte[] NO_PLAN = {};
 
     // Legacy constructor (for collision avoidance backward compatibility)
     public SearchStats(boolean success, int cost, int expanded, long timeMs, long memoryUsedBytes, List<Position> route) {
-        this(success, cost, expanded, timeMs * 1_000_000L, memoryUsedBytes, route, Collections.emptyList());
+        this(success, cost, expanded, timeMs * 1_000_000L, memoryUsedBytes, route, NO_PLAN);
     }
 
     // Main constructor
     public SearchStats(boolean success, int cost, int expanded, long timeNanos, long memoryUsedBytes,
-                       List<Position> route, List<String> actions) {
+                       List<Position> route, byte[] plan) {
         this.success = success;
         this.cost = cost;
         this.expanded = expanded;
         this.timeNanos = timeNanos;
         this.memoryUsedBytes = memoryUsedBytes;
         this.route = route != null ? new ArrayList<>(route) : Collections.emptyList();
-        this.actions = actions != null ? new ArrayList<>(actions) : Collections.emptyList();
+        this.plan = plan != null ? plan : NO_PLAN;
+    }
+
+    /** The plan as operator names, for display. */
+    public List<String> actions() {
+        List<String> names = new ArrayList<>(plan.length);
+        for (byte op : plan) names.add(GridGraph.OP_NAMES[op]);
+        return names;
     }
 
     // Helper for readable time formatting
@@ -0,0 +1,166 @@
+package code.delivery;
+
+import java.util.Arrays;
+
+/**
+ * TaskAssignment: minimum-cost one-to-one matching of rows (agents, stores) to columns (tasks,
+ * destinations) over an integer cost matrix.
+ *
+ *  hungarian - Kuhn-Munkres with potentials, O(n^2 m) for n <= m (the matrix is transposed otherwise)
+ *  auction   - Bertsekas' auction with epsilon scaling on the square padding of the matrix; costs are
+ *              scaled by n+1 so the final epsilon = 1 phase is exactly optimal. Each phase is cheap
+ *              and bidders are independent, which suits large fleets with sparse competition.
+ *
+ * Pairs costing NO_PAIR or more are forbidden; rows that can only be matched through them stay
+ * unmatched (-1). Among matchings with the most allowed pairs both return one of least total cost.
+ */
+public final class TaskAssignment {
+    /** Cost marking a pair that cannot be assigned (unreachable store or destination). */
+    public static final long NO_PAIR = Long.MAX_VALUE / 4;
+
+    private TaskAssignment(){}
+
+    /** Column matched to each row, -1 for none. */
+    public static int[] hungarian(long[][] cost){
+        int n = cost.length, m = n == 0 ? 0 : cost[0].length;
+        if(n == 0 || m == 0) return unmatched(n);
+        long[][] c = penalised(cost);
+        if(n > m) return invert(hungarianRows(transpose(c)), n, cost);
+        return allowed(hungarianRows(c), cost);
+    }
+
+    /** Same contract as hungarian(), solved by auction. */
+    public static int[] auction(long[][] cost){
+        int n = cost.length, m = n == 0 ? 0 : cost[0].length;
+        if(n == 0 || m == 0) return unmatched(n);
+        long[][] c = penalised(cost);
+        int s = Math.max(n, m);
+        long scale = s + 1;
+        // benefit = -cost * scale, dummy rows/columns are worth 0 to everyone
+        long[][] benefit = new long[s][s];
+        long spread = 0;
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < m; j++){
+                benefit[i][j] = -c[i][j] * scale;
+                spread = Math.max(spread, c[i][j] * scale);
+            }
+        }
+        long[] price = new long[s];
+        int[] owner = new int[s], object = new int[s];
+        int[] queue = new int[s];
+        for(long eps = Math.max(1, spread / 4); ; eps = Math.max(1, eps / 4)){
+            Arrays.fill(owner, -1);
+            Arrays.fill(object, -1);
+            int head = 0, size = s;
+            for(int i = 0; i < s; i++) queue[i] = i;
+            while(size > 0){
+                int i = queue[head];
+                head = (head + 1) % s;
+                size--;
+                long best = Long.MIN_VALUE, second = Long.MIN_VALUE;
+                int bj = -1;
+                for(int j = 0; j < s; j++){
+                    long v = benefit[i][j] - price[j];
+                    if(v > best){ second = best; best = v; bj = j; }
+                    else if(v > second) second = v;
+                }
+                if(second == Long.MIN_VALUE) second = best;
+                price[bj] += best - second + eps;
+                int prev = owner[bj];
+                if(prev >= 0){
+                    object[prev] = -1;
+                    queue[(head + size) % s] = prev;
+                    size++;
+                }
+                owner[bj] = i;
+                object[i] = bj;
+            }
+            if(eps == 1) break;
+        }
+        int[] out = new int[n];
+        for(int i = 0; i < n; i++) out[i] = object[i] < m ? object[i] : -1;
+        return allowed(out, cost);
+    }
+
+    /** Kuhn-Munkres for n <= m rows; every row is matched. */
+    private static int[] hungarianRows(long[][] a){
+        int n = a.length, m = a[0].length;
+        long[] u = new long[n + 1], v = new long[m + 1], minv = new long[m + 1];
+        int[] p = new int[m + 1], way = new int[m + 1];
+        boolean[] used = new boolean[m + 1];
+        for(int i = 1; i <= n; i++){
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Long.MAX_VALUE);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0], j1 = 0;
+                long delta = Long.MAX_VALUE;
+                for(int j = 1; j <= m; j++){
+                    if(used[j]) continue;
+                    long cur = a[i0 - 1][j - 1] - u[i0] - v[j];
+                    if(cur < minv[j]){ minv[j] = cur; way[j] = j0; }
+                    if(minv[j] < delta){ delta = minv[j]; j1 = j; }
+                }
+                for(int j = 0; j <= m; j++){
+                    if(used[j]){ u[p[j]] += delta; v[j] -= delta; }
+                    else minv[j] -= delta;
+                }
+                j0 = j1;
+            } while(p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while(j0 != 0);
+        }
+        int[] out = new int[n];
+        for(int j = 1; j <= m; j++) if(p[j] != 0) out[p[j] - 1] = j - 1;
+        return out;
+    }
+
+    /**
+     * Forbidden pairs get a penalty larger than any matching of allowed pairs can cost, so the
+     * solvers first maximise the number of allowed pairs, then minimise their cost.
+     */
+    private static long[][] penalised(long[][] cost){
+        int n = cost.length, m = cost[0].length;
+        long max = 0;
+        for(long[] row : cost) for(long x : row) if(x < NO_PAIR) max = Math.max(max, x);
+        long penalty = (max + 1) * (Math.min(n, m) + 1);
+        long[][] c = new long[n][m];
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < m; j++){
+                long x = cost[i][j];
+                if(x < 0) throw new IllegalArgumentException("negative cost at " + i + "," + j);
+                c[i][j] = x >= NO_PAIR ? penalty : x;
+            }
+        }
+        return c;
+    }
+
+    private static long[][] transpose(long[][] a){
+        long[][] t = new long[a[0].length][a.length];
+        for(int i = 0; i < a.length; i++) for(int j = 0; j < a[0].length; j++) t[j][i] = a[i][j];
+        return t;
+    }
+
+    /** Row assignment of the transposed problem turned back into one per original row. */
+    private static int[] invert(int[] colRows, int n, long[][] cost){
+        int[] out = unmatched(n);
+        for(int j = 0; j < colRows.length; j++) out[colRows[j]] = j;
+        return allowed(out, cost);
+    }
+
+    private static int[] allowed(int[] match, long[][] cost){
+        for(int i = 0; i < match.length; i++) if(match[i] >= 0 && cost[i][match[i]] >= NO_PAIR) match[i] = -1;
+        return match;
+    }
+
+    private static int[] unmatched(int n){
+        int[] out = new int[n];
+        Arrays.fill(out, -1);
+        return out;
+    }
+}
@@ -0,0 +1,136 @@
+package code.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Binary .bworld format, loaded through a MappedByteBuffer.
+ *
+ * Layout (big-endian ints):
+ *   magic "BWLD", version, width, height,
+ *   extraEdgeCount, tunnelCount, storeCount, destCount, agentCount,
+ *   declared costs   width*height*4   (GridGraph dirCost layout: per cell UP, DOWN, LEFT, RIGHT; -1 = not declared)
+ *   extra edges      x1 y1 x2 y2 cost (declared edges between non-neighbour cells)
+ *   tunnels          x1 y1 x2 y2
+ *   stores, dests    x y
+ *   agents           x y, id as a short byte length + UTF-8
+ *
+ * The cost block is copied straight into a GridGraph.Builder, so loading allocates nothing per
+ * edge. Files are limited to 2 GB (one mapping). A file that is not a valid binary world is a
+ * WorldFormatException (line 0), like a bad text world.
+ *
+ * Convert a text world:  java -cp ... code.model.BinaryWorld city.world city.bworld
+ */
+public final class BinaryWorld {
+    public static final int MAGIC = 0x42574C44; // "BWLD"
+    public static final int VERSION = 1;
+    private static final int HEADER_INTS = 9;
+
+    private BinaryWorld(){}
+
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2){
+            System.err.println("usage: BinaryWorld <in.world> <out.bworld>");
+            System.exit(2);
+        }
+        convert(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    /** Parses a text .world file and writes it in binary form. */
+    public static void convert(Path world, Path out) throws IOException {
+        write(WorldParser.parse(world), out);
+    }
+
+    public static void write(Grid grid, Path out) throws IOException {
+        GridGraph g = grid.graph();
+        Map<String, Integer> extra = g.extraEdges();
+        List<Position[]> tunnels = g.tunnels();
+        List<byte[]> ids = new ArrayList<>();
+        long size = 4L * (HEADER_INTS + g.cellCount * 4L + extra.size() * 5L + tunnels.size() * 4L
+                + grid.stores.size() * 2L + grid.destinations.size() * 2L + grid.agents.size() * 2L);
+        for(Agent a : grid.agents){
+            byte[] id = a.id.getBytes(StandardCharsets.UTF_8);
+            if(id.length > Short.MAX_VALUE) throw new IllegalArgumentException("Agent id too long: " + a.id);
+            ids.add(id);
+            size += 2 + id.length;
+        }
+        if(size > Integer.MAX_VALUE) throw new IllegalArgumentException("World too large for one mapping: " + size + " bytes");
+
+        Files.deleteIfExists(out);
+        try(FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(g.width).putInt(g.height)
+               .putInt(extra.size()).putInt(tunnels.size())
+               .putInt(grid.stores.size()).putInt(grid.destinations.size()).putInt(grid.agents.size());
+            IntBuffer costs = buf.asIntBuffer();
+            g.writeDirCosts(costs);
+            buf.position(buf.position() + costs.position() * 4);
+            for(Map.Entry<String, Integer> e : extra.entrySet()){
+                String[] ends = e.getKey().split(":");
+                String[] a = ends[0].split(","), b = ends[1].split(",");
+                buf.putInt(Integer.parseInt(a[0])).putInt(Integer.parseInt(a[1]))
+                   .putInt(Integer.parseInt(b[0])).putInt(Integer.parseInt(b[1])).putInt(e.getValue());
+            }
+            for(Position[] t : tunnels) buf.putInt(t[0].x).putInt(t[0].y).putInt(t[1].x).putInt(t[1].y);
+            for(Position p : grid.stores) buf.putInt(p.x).putInt(p.y);
+            for(Position p : grid.destinations) buf.putInt(p.x).putInt(p.y);
+            for(int i = 0; i < grid.agents.size(); i++){
+                Agent a = grid.agents.get(i);
+                buf.putInt(a.pos.x).putInt(a.pos.y).putShort((short) ids.get(i).length).put(ids.get(i));
+            }
+            buf.force();
+        }
+    }
+
+    public static Grid load(Path in) throws IOException {
+        try(FileChannel ch = FileChannel.open(in, StandardOpenOption.READ)){
+            if(ch.size() > Integer.MAX_VALUE) throw new WorldFormatException(in.toString(), 0, "larger than 2 GB");
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return read(buf, in.toString());
+        }
+    }
+
+    private static Grid read(ByteBuffer buf, String name){
+        if(buf.remaining() < HEADER_INTS * 4 || buf.getInt() != MAGIC) throw new WorldFormatException(name, 0, "not a binary world file");
+        int version = buf.getInt();
+        if(version != VERSION) throw new WorldFormatException(name, 0, "unsupported version " + version);
+        int width = buf.getInt(), height = buf.getInt();
+        int extraCount = buf.getInt(), tunnelCount = buf.getInt();
+        int storeCount = buf.getInt(), destCount = buf.getInt(), agentCount = buf.getInt();
+        if(width <= 0 || height <= 0 || (long) width * height * 16 > buf.remaining()){
+            throw new WorldFormatException(name, 0, "bad grid size " + width + "x" + height);
+        }
+
+        GridGraph.Builder edges = new GridGraph.Builder(width, height);
+        IntBuffer costs = buf.asIntBuffer();
+        costs.limit(width * height * 4);
+        edges.readDirCosts(costs);
+        buf.position(buf.position() + width * height * 16);
+        try {
+            for(int i = 0; i < extraCount; i++) edges.setEdge(buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt());
+            for(int i = 0; i < tunnelCount; i++){
+                edges.addTunnel(new Position(buf.getInt(), buf.getInt()), new Position(buf.getInt(), buf.getInt()));
+            }
+            Grid grid = new Grid(edges.build());
+            for(int i = 0; i < storeCount; i++) grid.stores.add(new Position(buf.getInt(), buf.getInt()));
+            for(int i = 0; i < destCount; i++) grid.destinations.add(new Position(buf.getInt(), buf.getInt()));
+            for(int i = 0; i < agentCount; i++){
+                Position p = new Position(buf.getInt(), buf.getInt());
+                int length = buf.getShort();
+                if(length < 0) throw new WorldFormatException(name, 0, "agent " + i + ": negative id length " + length);
+                byte[] id = new byte[length];
+                buf.get(id);
+                grid.agents.add(new Agent(new String(id, StandardCharsets.UTF_8), p));
+            }
+            return grid;
+        } catch(java.nio.BufferUnderflowException e){
+            throw new WorldFormatException(name, 0, "truncated binary world file");
+        }
+    }
+}
@@ -1,38 +1,92 @@
 package code.model;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Grid: explicit directed edges, tunnel list, stores/dests/agents.
  * Edges with cost==0 are blocked.
+ *
+ * Edge and tunnel queries are answered by the compiled GridGraph; mutations go to a
+ * GridGraph.Builder and the graph is recompiled on the next read.
  */
 public class Grid {
     public final int width;
     public final int height;
-    private final Map<String, Integer> edgeCost = new LinkedHashMap<>();
-    private final List<Position[]> tunnels = new ArrayList<>();
+    private volatile GridGraph graph;
+    private GridGraph.Builder pending;
+    private volatile long version;
+    private final PositionTable positions;
+    private final Map<Class<?>, Object> derived = new ConcurrentHashMap<>(); // see derived()
     public final List<Position> stores = new ArrayList<>();
     public final List<Position> destinations = new ArrayList<>();
     public final List<Agent> agents = new ArrayList<>();
 
-    public Grid(int width, int height){ this.width = width; this.height = height; }
+    public Grid(int width, int height){
+        this.width = width; this.height = height;
+        this.pending = new GridGraph.Builder(width, height);
+        this.positions = pending.positions;
+    }
 
-    private String key(Position a, Position b){ return a.x + "," + a.y + ":" + b.x + "," + b.y; }
+    public Grid(GridGraph graph){
+        this.width = graph.width; this.height = graph.height;
+        this.graph = graph;
+        this.positions = graph.positions();
+    }
 
-    public void setEdge(Position a, Position b, int cost){ edgeCost.put(key(a,b), cost); }
+    /** Compiled adjacency for the current edges; the same instance until the next mutation. */
+    public GridGraph graph(){
+        GridGraph g = graph;
+        if(g != null) return g;
+        synchronized(this){
+            if(graph == null){ graph = pending.build(); pending = null; }
+            return graph;
+        }
+    }
 
-    public Integer getEdgeCost(Position a, Position b){ return edgeCost.get(key(a,b)); }
+    /** Canonical Position for in-bounds coordinates (the same instance every call), a fresh one otherwise. */
+    public Position at(int x, int y){ return positions.at(x, y); }
 
-    public Map<String,Integer> getEdgeCostMap(){ return Collections.unmodifiableMap(edgeCost); }
+    /** at() for a Position.pack()ed coordinate. */
+    public Position at(long packed){ return positions.at(Position.unpackX(packed), Position.unpackY(packed)); }
 
-    public boolean hasEdge(Position a, Position b){ return edgeCost.containsKey(key(a,b)); }
+    /** Bumped on every edge/tunnel mutation; caches keyed on it go stale when it changes. */
+    public long version(){ return version; }
 
-    public void addTunnel(Position a, Position b){ tunnels.add(new Position[]{a,b}); }
+    /**
+     * Structures another layer keeps for this grid across edits (e.g. route tables): built by
+     * build on first use, one per type, and held by the grid so they go away with it.
+     */
+    public <T> T derived(Class<T> type, Function<Grid, ? extends T> build){
+        return type.cast(derived.computeIfAbsent(type, k -> build.apply(this)));
+    }
+
+    private GridGraph.Builder edit(){
+        if(pending == null) pending = graph.toBuilder();
+        graph = null;
+        version++;
+        return pending;
+    }
 
-    public List<Position[]> getTunnels(){ return Collections.unmodifiableList(tunnels); }
+    public synchronized void setEdge(Position a, Position b, int cost){ edit().setEdge(a.x, a.y, b.x, b.y, cost); }
+
+    public Integer getEdgeCost(Position a, Position b){ return graph().declaredCost(a, b); }
+
+    public Map<String,Integer> getEdgeCostMap(){ return Collections.unmodifiableMap(graph().declaredEdges()); }
+
+    public boolean hasEdge(Position a, Position b){ return getEdgeCost(a, b) != null; }
+
+    public synchronized void addTunnel(Position a, Position b){ edit().addTunnel(a, b); }
+
+    public List<Position[]> getTunnels(){ return graph().tunnels(); }
 
     public Position tunnelPartner(Position p){
-        for(Position[] t : tunnels){
+        GridGraph g = graph();
+        int c = g.cellOf(p);
+        int q = c == GridGraph.NONE ? GridGraph.NONE : g.tunnelPartner(c);
+        if(q != GridGraph.NONE) return g.position(q);
+        for(Position[] t : getTunnels()){ // tunnels with an off-grid end are not compiled
             if(t[0].equals(p)) return t[1];
             if(t[1].equals(p)) return t[0];
         }
@@ -41,13 +95,14 @@ public class Grid {
 
     public List<Position> neighbors(Position p){
         List<Position> res = new ArrayList<>();
-        int[][] dirs = {{1,0},{-1,0},{0,1},{0,-1}};
-        for(int[] d : dirs){
-            int nx = p.x + d[0], ny = p.y + d[1];
-            if(nx<0 || ny<0 || nx>=width || ny>=height) continue;
-            Position q = new Position(nx, ny);
-            Integer c = getEdgeCost(p,q);
-            if(c != null && c > 0) res.add(q);
+        GridGraph g = graph();
+        int c = g.cellOf(p);
+        if(c != GridGraph.NONE){
+            byte[] order = {GridGraph.RIGHT, GridGraph.LEFT, GridGraph.DOWN, GridGraph.UP};
+            for(byte d : order){
+                int q = g.step(c, d);
+                if(q != GridGraph.NONE && g.dirCost(c, d) > 0) res.add(g.position(q));
+            }
         }
         Position partner = tunnelPartner(p);
         if(partner != null) res.add(partner);
@@ -55,16 +110,15 @@ public class Grid {
     }
 
     public int moveCost(Position a, Position b){
-        Position partner = tunnelPartner(a);
-        if(partner != null && partner.equals(b)){
-            return Math.max(1, Math.abs(a.x - b.x) + Math.abs(a.y - b.y));
-        }
+        GridGraph g = graph();
+        int ca = g.cellOf(a), cb = g.cellOf(b);
+        if(ca != GridGraph.NONE && cb != GridGraph.NONE) return g.moveCost(ca, cb);
         Integer c = getEdgeCost(a,b);
         if(c == null) return Integer.MAX_VALUE/4;
         return c;
     }
 
-    public int minEdgeCost(){ return edgeCost.values().stream().filter(v->v>0).min(Integer::compareTo).orElse(1); }
+    public int minEdgeCost(){ return graph().minEdgeCost(); }
 
     public boolean inBounds(Position p){ return p.x>=0 && p.y>=0 && p.x<width && p.y<height; }
 
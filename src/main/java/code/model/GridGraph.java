@@ -0,0 +1,353 @@
+package code.model;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * GridGraph: frozen, compiled form of a Grid.
+ *
+ * Cells are int ids (y*width + x). Every traversable move (4-neighbour edges with cost>0
+ * plus tunnel hops) is stored in CSR layout: the moves leaving cell c are the edge indices
+ * firstEdge(c) .. firstEdge(c+1)-1, with primitive target/cost/op arrays.
+ * Per cell the moves are ordered UP, DOWN, LEFT, RIGHT, TUNNEL (DeliveryProblem operator order).
+ */
+public final class GridGraph {
+    public static final int NONE = -1;
+    public static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+
+    public static final byte UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3, TUNNEL = 4;
+    public static final String[] OP_NAMES = {"up", "down", "left", "right", "tunnel"};
+    private static final int[] DX = {0, 0, -1, 1};
+    private static final int[] DY = {-1, 1, 0, 0};
+
+    public final int width;
+    public final int height;
+    public final int cellCount;
+
+    private final int[] dirCost;          // cellCount*4, NONE = not declared, 0 = blocked
+    private final Map<String, Integer> extraEdges; // declared edges that are not 4-neighbour moves
+    private final List<Position[]> tunnels;
+    private final int[] tunnelPartner;    // first tunnel partner per cell, NONE if none
+
+    private final int[] edgeStart;        // cellCount+1
+    private final int[] edgeTarget;
+    private final int[] edgeCost;
+    private final byte[] edgeOp;
+    private final int minEdgeCost;
+    private volatile Reverse reverse;     // predecessor CSR, built on first use
+    private final Map<Class<?>, Object> derived = new ConcurrentHashMap<>(); // see derived()
+    private final PositionTable positions; // shared with every graph compiled from the same Grid
+
+    /** Incoming moves per cell: inStart[c] .. inStart[c+1]-1 index inSource/inEdge. */
+    private static final class Reverse {
+        final int[] inStart;
+        final int[] inSource;
+        final int[] inEdge;               // forward edge index (cost/op lookups)
+        Reverse(int[] inStart, int[] inSource, int[] inEdge){
+            this.inStart = inStart; this.inSource = inSource; this.inEdge = inEdge;
+        }
+    }
+
+    private GridGraph(Builder b){
+        this.width = b.width;
+        this.height = b.height;
+        this.cellCount = b.width * b.height;
+        this.positions = b.positions;
+        this.dirCost = b.dirCost.clone();
+        this.extraEdges = Collections.unmodifiableMap(new LinkedHashMap<>(b.extraEdges));
+        this.tunnels = Collections.unmodifiableList(new ArrayList<>(b.tunnels));
+
+        tunnelPartner = new int[cellCount];
+        Arrays.fill(tunnelPartner, NONE);
+        for(int i = tunnels.size() - 1; i >= 0; i--){ // reverse so the first matching tunnel wins
+            Position[] t = tunnels.get(i);
+            if(!inBounds(t[0].x, t[0].y) || !inBounds(t[1].x, t[1].y)) continue;
+            int a = cell(t[0].x, t[0].y), c = cell(t[1].x, t[1].y);
+            tunnelPartner[a] = c;
+            tunnelPartner[c] = a;
+        }
+
+        int count = 0;
+        for(int c = 0; c < cellCount; c++){
+            for(int d = 0; d < 4; d++) if(dirCost[c*4 + d] > 0) count++;
+            if(tunnelPartner[c] != NONE) count++;
+        }
+        edgeStart = new int[cellCount + 1];
+        edgeTarget = new int[count];
+        edgeCost = new int[count];
+        edgeOp = new byte[count];
+        int e = 0, min = Integer.MAX_VALUE;
+        for(int c = 0; c < cellCount; c++){
+            edgeStart[c] = e;
+            int x = x(c), y = y(c);
+            for(int d = 0; d < 4; d++){
+                int cost = dirCost[c*4 + d];
+                if(cost <= 0) continue;
+                edgeTarget[e] = cell(x + DX[d], y + DY[d]);
+                edgeCost[e] = cost;
+                edgeOp[e] = (byte) d;
+                e++;
+                min = Math.min(min, cost);
+            }
+            int p = tunnelPartner[c];
+            if(p != NONE){
+                edgeTarget[e] = p;
+                edgeCost[e] = tunnelCost(c, p);
+                edgeOp[e] = TUNNEL;
+                e++;
+            }
+        }
+        edgeStart[cellCount] = e;
+        for(int v : extraEdges.values()) if(v > 0) min = Math.min(min, v);
+        this.minEdgeCost = min == Integer.MAX_VALUE ? 1 : min;
+    }
+
+    // ---- cell ids ----
+
+    public int cell(int x, int y){ return y * width + x; }
+    public int x(int cell){ return cell % width; }
+    public int y(int cell){ return cell / width; }
+    public boolean inBounds(int x, int y){ return x>=0 && y>=0 && x<width && y<height; }
+
+    /** Cell id of p, or NONE if p lies outside the grid. */
+    public int cellOf(Position p){ return inBounds(p.x, p.y) ? cell(p.x, p.y) : NONE; }
+
+    /** Cell id of a Position.pack()ed coordinate, or NONE if it lies outside the grid. */
+    public int cellOf(long packed){
+        int x = Position.unpackX(packed), y = Position.unpackY(packed);
+        return inBounds(x, y) ? cell(x, y) : NONE;
+    }
+
+    /** Canonical Position of a cell. */
+    public Position position(int cell){ return positions.at(x(cell), y(cell)); }
+
+    /** Canonical Position for in-bounds coordinates, a fresh one otherwise. */
+    public Position position(int x, int y){ return positions.at(x, y); }
+
+    PositionTable positions(){ return positions; }
+
+    // ---- CSR adjacency ----
+
+    public int firstEdge(int cell){ return edgeStart[cell]; }
+    public int endEdge(int cell){ return edgeStart[cell + 1]; }
+    public int edgeTarget(int edge){ return edgeTarget[edge]; }
+    public int edgeCost(int edge){ return edgeCost[edge]; }
+    public byte edgeOp(int edge){ return edgeOp[edge]; }
+    public int edgeCount(){ return edgeTarget.length; }
+
+    /** Cell an edge leaves from (binary search over the CSR offsets). */
+    public int edgeSource(int edge){
+        int lo = 0, hi = cellCount - 1;
+        while(lo < hi){
+            int mid = (lo + hi + 1) >>> 1;
+            if(edgeStart[mid] <= edge) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * Tables another layer derives from this graph (e.g. heuristic bounds): built by build on
+     * first use, one per type, and held by the graph so they go away with it.
+     */
+    public <T> T derived(Class<T> type, Function<GridGraph, ? extends T> build){
+        return type.cast(derived.computeIfAbsent(type, k -> build.apply(this)));
+    }
+
+    /** The derived table of type if it has been built (or kept, see LowerBound), else null; never builds. */
+    public <T> T derivedIfPresent(Class<T> type){
+        return type.cast(derived.get(type));
+    }
+
+    /**
+     * Marks derived tables that stay valid lower bounds on move costs while the costs only rise:
+     * a graph built from toBuilder() keeps them unless an edit lowered a cost or added a move
+     * (an open edge or a tunnel).
+     */
+    public interface LowerBound {}
+
+    private void keepLowerBounds(GridGraph source){
+        for(Map.Entry<Class<?>, Object> e : source.derived.entrySet()){
+            if(e.getValue() instanceof LowerBound) derived.putIfAbsent(e.getKey(), e.getValue());
+        }
+    }
+
+    // ---- reverse adjacency (predecessors) ----
+
+    public int firstInEdge(int cell){ return reverse().inStart[cell]; }
+    public int endInEdge(int cell){ return reverse().inStart[cell + 1]; }
+    /** Cell the i-th incoming move starts from. */
+    public int inEdgeSource(int i){ return reverse().inSource[i]; }
+    /** Forward edge index of the i-th incoming move (for edgeCost/edgeOp). */
+    public int inEdgeForward(int i){ return reverse().inEdge[i]; }
+
+    private Reverse reverse(){
+        Reverse r = reverse;
+        if(r != null) return r;
+        synchronized(this){
+            if(reverse == null){
+                int[] inStart = new int[cellCount + 1];
+                for(int t : edgeTarget) inStart[t + 1]++;
+                for(int c = 0; c < cellCount; c++) inStart[c + 1] += inStart[c];
+                int[] fill = Arrays.copyOf(inStart, cellCount);
+                int[] inSource = new int[edgeTarget.length];
+                int[] inEdge = new int[edgeTarget.length];
+                for(int c = 0; c < cellCount; c++){
+                    for(int e = edgeStart[c]; e < edgeStart[c + 1]; e++){
+                        int slot = fill[edgeTarget[e]]++;
+                        inSource[slot] = c;
+                        inEdge[slot] = e;
+                    }
+                }
+                reverse = new Reverse(inStart, inSource, inEdge);
+            }
+            return reverse;
+        }
+    }
+
+    // ---- per-cell lookups ----
+
+    /** Declared cost of the 4-neighbour edge leaving cell in direction op, NONE if not declared. */
+    public int dirCost(int cell, int op){ return dirCost[cell*4 + op]; }
+
+    /** Neighbour of cell in direction op (UP/DOWN/LEFT/RIGHT), or NONE if outside the grid. */
+    public int step(int cell, int op){
+        int nx = x(cell) + DX[op], ny = y(cell) + DY[op];
+        return inBounds(nx, ny) ? cell(nx, ny) : NONE;
+    }
+
+    public int tunnelPartner(int cell){ return tunnelPartner[cell]; }
+
+    public int tunnelCost(int a, int b){ return Math.max(1, Math.abs(x(a) - x(b)) + Math.abs(y(a) - y(b))); }
+
+    /** Cost of moving a->b as Grid.moveCost defines it (tunnel hop first), UNREACHABLE if no move. */
+    public int moveCost(int a, int b){
+        if(tunnelPartner[a] == b) return tunnelCost(a, b);
+        int dx = x(b) - x(a), dy = y(b) - y(a);
+        for(int d = 0; d < 4; d++){
+            if(DX[d] == dx && DY[d] == dy){
+                int c = dirCost[a*4 + d];
+                return c == NONE ? UNREACHABLE : c;
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    public int minEdgeCost(){ return minEdgeCost; }
+
+    // ---- declared-edge view (Grid API) ----
+
+    /** Declared cost of edge a->b (0 = blocked), or null when never declared. */
+    public Integer declaredCost(Position a, Position b){
+        int d = direction(a, b);
+        if(d != NONE){
+            int c = dirCost[cell(a.x, a.y)*4 + d];
+            return c == NONE ? null : c;
+        }
+        return extraEdges.get(key(a.x, a.y, b.x, b.y));
+    }
+
+    public List<Position[]> tunnels(){ return tunnels; }
+
+    /** All declared edges keyed "x1,y1:x2,y2" (cell order, then non-neighbour edges). */
+    public Map<String, Integer> declaredEdges(){
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for(int c = 0; c < cellCount; c++){
+            for(int d = 0; d < 4; d++){
+                int cost = dirCost[c*4 + d];
+                if(cost == NONE) continue;
+                out.put(key(x(c), y(c), x(c) + DX[d], y(c) + DY[d]), cost);
+            }
+        }
+        out.putAll(extraEdges);
+        return out;
+    }
+
+    /** Raw cellCount*4 declared costs (BinaryWorld). */
+    void writeDirCosts(IntBuffer out){ out.put(dirCost); }
+
+    /** Declared edges that are not 4-neighbour moves, keyed like declaredEdges() (BinaryWorld). */
+    Map<String, Integer> extraEdges(){ return extraEdges; }
+
+    public Builder toBuilder(){
+        Builder b = new Builder(width, height, positions);
+        System.arraycopy(dirCost, 0, b.dirCost, 0, dirCost.length);
+        b.extraEdges.putAll(extraEdges);
+        b.tunnels.addAll(tunnels);
+        b.source = this;
+        return b;
+    }
+
+    private int direction(Position a, Position b){
+        if(!inBounds(a.x, a.y) || !inBounds(b.x, b.y)) return NONE;
+        int dx = b.x - a.x, dy = b.y - a.y;
+        for(int d = 0; d < 4; d++) if(DX[d] == dx && DY[d] == dy) return d;
+        return NONE;
+    }
+
+    static String key(int ax, int ay, int bx, int by){ return ax + "," + ay + ":" + bx + "," + by; }
+
+    /**
+     * Mutable edge store used while a world is being loaded or edited.
+     * Neighbour edges live in a dense int array; build() freezes it into a GridGraph.
+     */
+    public static final class Builder {
+        public final int width;
+        public final int height;
+        private final int[] dirCost;
+        private final Map<String, Integer> extraEdges = new LinkedHashMap<>();
+        private final List<Position[]> tunnels = new ArrayList<>();
+        final PositionTable positions;
+        private GridGraph source;          // graph this builder was copied from (toBuilder)
+        private boolean lowered;           // some move got cheaper or appeared since the copy
+
+        public Builder(int width, int height){ this(width, height, new PositionTable(width, height)); }
+
+        Builder(int width, int height, PositionTable positions){
+            this.width = width;
+            this.height = height;
+            this.positions = positions;
+            this.dirCost = new int[width * height * 4];
+            Arrays.fill(dirCost, NONE);
+        }
+
+        public Builder setEdge(int ax, int ay, int bx, int by, int cost){
+            int dx = bx - ax, dy = by - ay;
+            boolean inside = ax>=0 && ay>=0 && ax<width && ay<height && bx>=0 && by>=0 && bx<width && by<height;
+            if(inside && Math.abs(dx) + Math.abs(dy) == 1){
+                for(int d = 0; d < 4; d++){
+                    if(DX[d] == dx && DY[d] == dy){
+                        int i = (ay*width + ax)*4 + d;
+                        if(cost > 0 && (dirCost[i] <= 0 || cost < dirCost[i])) lowered = true;
+                        dirCost[i] = cost;
+                        break;
+                    }
+                }
+            } else {
+                extraEdges.put(key(ax, ay, bx, by), cost);
+            }
+            return this;
+        }
+
+        /** Bulk load of cellCount*4 declared costs in dirCost layout (BinaryWorld). */
+        Builder readDirCosts(IntBuffer in){
+            in.get(dirCost);
+            lowered = true;
+            return this;
+        }
+
+        public Builder addTunnel(Position a, Position b){
+            tunnels.add(new Position[]{a, b});
+            lowered = true;
+            return this;
+        }
+
+        /** The compiled graph; it keeps the source's LowerBound tables if no edit lowered a cost. */
+        public GridGraph build(){
+            GridGraph g = new GridGraph(this);
+            if(source != null && !lowered) g.keepLowerBounds(source);
+            return g;
+        }
+    }
+}
@@ -1,17 +1,27 @@
 package code.model;
 
-import java.util.Objects;
-
+/**
+ * Immutable grid coordinate. Grids hand out one canonical instance per cell (Grid.at,
+ * GridGraph.position), so equals() usually succeeds on the identity check; where a position
+ * would only be a map key, pack() gives a long that needs no object at all.
+ */
 public class Position {
     public final int x;
     public final int y;
     public Position(int x, int y) { this.x = x; this.y = y; }
+
+    /** x in the high 32 bits, y in the low 32 bits. */
+    public static long pack(int x, int y){ return ((long) x << 32) | (y & 0xFFFFFFFFL); }
+    public static int unpackX(long packed){ return (int) (packed >> 32); }
+    public static int unpackY(long packed){ return (int) packed; }
+    public long packed(){ return pack(x, y); }
+
     @Override public boolean equals(Object o){
         if(this==o) return true;
         if(!(o instanceof Position)) return false;
         Position p=(Position)o;
         return x==p.x && y==p.y;
     }
-    @Override public int hashCode(){ return Objects.hash(x,y); }
+    @Override public int hashCode(){ return x * 92821 + y; }
     @Override public String toString(){ return "(" + x + "," + y + ")"; }
 }
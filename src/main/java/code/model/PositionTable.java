@@ -0,0 +1,32 @@
+package code.model;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Canonical Position per cell of a width x height grid. Rows are created on first use, so a
+ * large grid only pays for the rows that searches actually touch. One table is shared by all
+ * GridGraphs compiled from the same Grid, so instances survive edits.
+ */
+final class PositionTable {
+    private final int width;
+    private final int height;
+    private final AtomicReferenceArray<Position[]> rows;
+
+    PositionTable(int width, int height){
+        this.width = width;
+        this.height = height;
+        this.rows = new AtomicReferenceArray<>(height);
+    }
+
+    /** Canonical instance for an in-bounds cell, a fresh one otherwise. */
+    Position at(int x, int y){
+        if(x < 0 || y < 0 || x >= width || y >= height) return new Position(x, y);
+        Position[] row = rows.get(y);
+        if(row == null){
+            row = new Position[width];
+            for(int i = 0; i < width; i++) row[i] = new Position(i, y);
+            if(!rows.compareAndSet(y, null, row)) row = rows.get(y);
+        }
+        return row[x];
+    }
+}
@@ -0,0 +1,20 @@
+package code.model;
+
+/**
+ * A .world file that cannot be read; the message carries "file:line: problem". Binary worlds
+ * have no lines: line is 0 and the message is "file: problem".
+ */
+public class WorldFormatException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    public final String file;
+    public final int line;
+    public final String problem;
+
+    public WorldFormatException(String file, int line, String problem){
+        super(file + (line > 0 ? ":" + line : "") + ": " + problem);
+        this.file = file;
+        this.line = line;
+        this.problem = problem;
+    }
+}
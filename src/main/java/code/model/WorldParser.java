@@ -1,8 +1,15 @@
 package code.model;
 
-import java.nio.file.*;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * .world parser supporting:
@@ -15,59 +22,297 @@ import java.util.*;
  * BLOCK x1 y1 x2 y2
  * TUNNEL x1 y1 x2 y2
  *
- * Comments start with #
+ * Comments start with # (whole lines or after a directive's arguments). Directives are
+ * case-insensitive; anything else is a WorldFormatException naming the line.
+ *
+ * The file is streamed through a fixed ByteBuffer and numbers are read digit by digit, so no
+ * line is ever materialised as a String. Edges go straight into a GridGraph.Builder, so the
+ * returned Grid is already compiled. With a pool, the file is cut into chunks on line
+ * boundaries, chunks are tokenised in parallel into compact int logs, and the logs are
+ * replayed in file order (later edges still override earlier ones).
  */
 public class WorldParser {
-    public static Grid parse(String path) throws IOException {
-        List<String> lines = Files.readAllLines(Path.of(path));
-        Grid grid = null;
-        for(String raw : lines){
-            String line = raw.trim();
-            if(line.isEmpty() || line.startsWith("#")) continue;
-            String[] tok = line.split("\\s+");
-            String cmd = tok[0].toUpperCase();
-            switch(cmd){
-                case "GRID":
-                    grid = new Grid(Integer.parseInt(tok[1]), Integer.parseInt(tok[2]));
-                    break;
-                case "STORE":
-                    grid.stores.add(new Position(Integer.parseInt(tok[1]), Integer.parseInt(tok[2])));
-                    break;
-                case "DEST":
-                    grid.destinations.add(new Position(Integer.parseInt(tok[1]), Integer.parseInt(tok[2])));
-                    break;
-                case "AGENT":
-                    grid.agents.add(new Agent(tok[1], new Position(Integer.parseInt(tok[2]), Integer.parseInt(tok[3]))));
-                    break;
-                case "EDGE":
-                    Position a = new Position(Integer.parseInt(tok[1]), Integer.parseInt(tok[2]));
-                    Position b = new Position(Integer.parseInt(tok[3]), Integer.parseInt(tok[4]));
-                    int cost = Integer.parseInt(tok[5]);
-                    grid.setEdge(a,b,cost);
-                    break;
-                case "UNDIRECTED_EDGE":
-                    Position a1 = new Position(Integer.parseInt(tok[1]), Integer.parseInt(tok[2]));
-                    Position b1 = new Position(Integer.parseInt(tok[3]), Integer.parseInt(tok[4]));
-                    int cost1 = Integer.parseInt(tok[5]);
-                    grid.setEdge(a1,b1,cost1);
-                    grid.setEdge(b1,a1,cost1);
+    private static final int GRID = 0, STORE = 1, DEST = 2, AGENT = 3, EDGE = 4, UNDIRECTED_EDGE = 5, BLOCK = 6, TUNNEL = 7;
+    private static final String[] NAMES = {"GRID", "STORE", "DEST", "AGENT", "EDGE", "UNDIRECTED_EDGE", "BLOCK", "TUNNEL"};
+    private static final int[] ARGS = {2, 2, 2, 2, 5, 5, 4, 4};     // integers after the directive (AGENT: after the id)
+    private static final byte[][] KEYWORDS = new byte[NAMES.length][];
+    static {
+        for(int i = 0; i < NAMES.length; i++) KEYWORDS[i] = NAMES[i].getBytes(StandardCharsets.US_ASCII);
+    }
+    private static final int MIN_CHUNK = 1 << 20;
+
+    public static Grid parse(String path) throws IOException { return parse(Path.of(path)); }
+
+    public static Grid parse(Path path) throws IOException {
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)){
+            return parse(ch, path.toString());
+        }
+    }
+
+    /** Streams a world from any channel; name is only used in error messages. */
+    public static Grid parse(ReadableByteChannel in, String name) throws IOException {
+        World world = new World(name);
+        new Tokenizer(in, null, 0, Long.MAX_VALUE, name).run(world);
+        return world.finish();
+    }
+
+    /** Parses chunks of the file on pool (sequentially when pool is null or the file is small). */
+    public static Grid parse(Path path, ForkJoinPool pool) throws IOException {
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)){
+            long size = ch.size();
+            int chunks = pool == null ? 1 : (int) Math.min(pool.getParallelism() * 4L, size / MIN_CHUNK);
+            if(chunks <= 1) return parse(ch, path.toString());
+            long[] bounds = new long[chunks + 1];
+            bounds[chunks] = size;
+            for(int i = 1; i < chunks; i++) bounds[i] = Math.max(bounds[i - 1], lineStartAfter(ch, size * i / chunks));
+            String name = path.toString();
+            Log[] logs = new Log[chunks];
+            pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(i -> {
+                Log log = new Log();
+                try {
+                    new Tokenizer(null, ch, bounds[i], bounds[i + 1], name).run(log);
+                } catch(WorldFormatException e){
+                    log.error = e;
+                } catch(IOException e){
+                    log.io = e;
+                }
+                logs[i] = log;
+            })).join();
+
+            World world = new World(name);
+            int lineBase = 0;
+            for(Log log : logs){
+                if(log.io != null) throw log.io;
+                if(log.error != null) throw new WorldFormatException(name, lineBase + log.error.line, log.error.problem);
+                log.replay(world, lineBase);
+                lineBase += log.lines;
+            }
+            return world.finish();
+        }
+    }
+
+    /** Offset of the first line that starts at or after pos. */
+    private static long lineStartAfter(FileChannel ch, long pos) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4096);
+        long at = pos - 1;
+        if(at < 0) return 0;
+        while(true){
+            b.clear();
+            int n = ch.read(b, at);
+            if(n <= 0) return ch.size();
+            for(int i = 0; i < n; i++) if(b.get(i) == '\n') return at + i + 1;
+            at += n;
+        }
+    }
+
+    // ---- directive sinks ----
+
+    private interface Sink {
+        void directive(int kind, int line, String id, int[] a);
+    }
+
+    /** Applies directives to the world being built. */
+    private static final class World implements Sink {
+        final String name;
+        GridGraph.Builder edges;
+        final List<Position> stores = new ArrayList<>();
+        final List<Position> destinations = new ArrayList<>();
+        final List<Agent> agents = new ArrayList<>();
+        int lastLine;
+
+        World(String name){ this.name = name; }
+
+        @Override public void directive(int kind, int line, String id, int[] a){
+            lastLine = line;
+            switch(kind){
+                case GRID:
+                    if(edges != null) throw new WorldFormatException(name, line, "GRID declared twice");
+                    if(a[0] <= 0 || a[1] <= 0) throw new WorldFormatException(name, line, "GRID needs a positive width and height");
+                    if((long) a[0] * a[1] * 4 > Integer.MAX_VALUE) throw new WorldFormatException(name, line, "GRID " + a[0] + "x" + a[1] + " is too large");
+                    edges = new GridGraph.Builder(a[0], a[1]);
+                    return;
+                case STORE: stores.add(new Position(a[0], a[1])); return;
+                case DEST: destinations.add(new Position(a[0], a[1])); return;
+                case AGENT: agents.add(new Agent(id, new Position(a[0], a[1]))); return;
+                default:
+            }
+            if(edges == null) throw new WorldFormatException(name, line, NAMES[kind] + " before GRID W H");
+            switch(kind){
+                case EDGE:
+                    edges.setEdge(a[0], a[1], a[2], a[3], a[4]);
                     break;
-                case "BLOCK":
-                    Position p1 = new Position(Integer.parseInt(tok[1]), Integer.parseInt(tok[2]));
-                    Position p2 = new Position(Integer.parseInt(tok[3]), Integer.parseInt(tok[4]));
-                    grid.setEdge(p1,p2,0);
-                    grid.setEdge(p2,p1,0);
+                case UNDIRECTED_EDGE:
+                    edges.setEdge(a[0], a[1], a[2], a[3], a[4]);
+                    edges.setEdge(a[2], a[3], a[0], a[1], a[4]);
                     break;
-                case "TUNNEL":
-                    Position ta = new Position(Integer.parseInt(tok[1]), Integer.parseInt(tok[2]));
-                    Position tb = new Position(Integer.parseInt(tok[3]), Integer.parseInt(tok[4]));
-                    grid.addTunnel(ta,tb);
+                case BLOCK:
+                    edges.setEdge(a[0], a[1], a[2], a[3], 0);
+                    edges.setEdge(a[2], a[3], a[0], a[1], 0);
                     break;
-                default:
-                    System.err.println("Unknown directive: " + cmd);
+                default: // TUNNEL
+                    edges.addTunnel(new Position(a[0], a[1]), new Position(a[2], a[3]));
+            }
+        }
+
+        Grid finish(){
+            if(edges == null) throw new WorldFormatException(name, Math.max(1, lastLine), "World file must start with GRID W H");
+            Grid grid = new Grid(edges.build());
+            grid.stores.addAll(stores);
+            grid.destinations.addAll(destinations);
+            grid.agents.addAll(agents);
+            return grid;
+        }
+    }
+
+    /** A chunk's directives as ints (kind, line, 5 args), replayed into a World in file order. */
+    private static final class Log implements Sink {
+        private static final int STRIDE = 7;
+        int[] ops = new int[STRIDE * 1024];
+        int size;
+        final List<String> ids = new ArrayList<>();
+        int lines;
+        WorldFormatException error;
+        IOException io;
+
+        @Override public void directive(int kind, int line, String id, int[] a){
+            if(size + STRIDE > ops.length) ops = Arrays.copyOf(ops, ops.length * 2);
+            ops[size] = kind;
+            ops[size + 1] = line;
+            System.arraycopy(a, 0, ops, size + 2, 5);
+            size += STRIDE;
+            if(id != null) ids.add(id);
+        }
+
+        void replay(World world, int lineBase){
+            int[] a = new int[5];
+            int agent = 0;
+            for(int i = 0; i < size; i += STRIDE){
+                System.arraycopy(ops, i + 2, a, 0, 5);
+                int kind = ops[i];
+                world.directive(kind, lineBase + ops[i + 1], kind == AGENT ? ids.get(agent++) : null, a);
+            }
+        }
+    }
+
+    // ---- tokenizer ----
+
+    /** Reads [start, end) of file (positional reads) or all of in, one byte at a time from a fixed buffer. */
+    private static final class Tokenizer {
+        final ReadableByteChannel in;
+        final FileChannel file;
+        long pos;
+        final long end;
+        final String name;
+        final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        final byte[] bytes = buf.array();
+        int i, n;
+        int line = 1;
+        final byte[] word = new byte[32];
+        byte[] text = new byte[32];           // raw bytes of a token, decoded as UTF-8
+        final int[] args = new int[5];
+
+        Tokenizer(ReadableByteChannel in, FileChannel file, long start, long end, String name){
+            this.in = in; this.file = file; this.pos = start; this.end = end; this.name = name;
+        }
+
+        private boolean fill() throws IOException {
+            buf.clear();
+            if(file != null){
+                if(pos >= end) return false;
+                buf.limit((int) Math.min(buf.capacity(), end - pos));
+                int r = file.read(buf, pos);
+                if(r <= 0) return false;
+                pos += r;
+            } else if(in.read(buf) <= 0){
+                // a non-blocking channel may return 0 before the end; world files come from files and streams
+                return false;
+            }
+            i = 0;
+            n = buf.position();
+            return true;
+        }
+
+        private int peek() throws IOException { return i < n || fill() ? bytes[i] & 0xFF : -1; }
+
+        private WorldFormatException error(String problem){ return new WorldFormatException(name, line, problem); }
+
+        /** Skips spaces and tabs (not newlines); returns the next byte without consuming it. */
+        private int skipBlanks() throws IOException {
+            int c;
+            while((c = peek()) == ' ' || c == '\t' || c == '\r') i++;
+            return c;
+        }
+
+        void run(Sink sink) throws IOException {
+            while(true){
+                int c = skipBlanks();
+                if(c < 0) break;
+                if(c == '\n'){ i++; line++; continue; }
+                if(c == '#'){ skipLine(); continue; }
+                int kind = directive();
+                String id = kind == AGENT ? token("agent id") : null;
+                Arrays.fill(args, 0);
+                for(int k = 0; k < ARGS[kind]; k++) args[k] = integer(NAMES[kind]);
+                c = skipBlanks();
+                if(c == '#') skipLine();
+                else if(c >= 0 && c != '\n') throw error("unexpected text after " + NAMES[kind] + " arguments");
+                sink.directive(kind, line, id, args);
+            }
+            if(sink instanceof Log) ((Log) sink).lines = line - 1;
+        }
+
+        private void skipLine() throws IOException {
+            int c;
+            while((c = peek()) >= 0 && c != '\n') i++;
+        }
+
+        private int directive() throws IOException {
+            int len = 0, c;
+            while((c = peek()) >= 0 && c != ' ' && c != '\t' && c != '\r' && c != '\n' && c != '#'){
+                if(len == word.length) throw error("unknown directive");
+                word[len++] = (byte) (c >= 'a' && c <= 'z' ? c - 32 : c);
+                i++;
+            }
+            for(int k = 0; k < KEYWORDS.length; k++){
+                if(KEYWORDS[k].length == len && Arrays.equals(KEYWORDS[k], 0, len, word, 0, len)) return k;
+            }
+            throw error("unknown directive '" + new String(word, 0, len, StandardCharsets.UTF_8) + "'");
+        }
+
+        /** Next blank-separated token as UTF-8 (delimiters are ASCII, so they never split a character). */
+        private String token(String what) throws IOException {
+            int c = skipBlanks();
+            int len = 0;
+            while(c >= 0 && c != ' ' && c != '\t' && c != '\r' && c != '\n' && c != '#'){
+                if(len == text.length) text = Arrays.copyOf(text, len * 2);
+                text[len++] = (byte) c;
+                i++;
+                c = peek();
+            }
+            if(len == 0) throw error("missing " + what);
+            try {
+                return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(text, 0, len)).toString();
+            } catch(CharacterCodingException e){
+                throw error(what + " is not valid UTF-8");
+            }
+        }
+
+        private int integer(String directive) throws IOException {
+            int c = skipBlanks();
+            boolean negative = c == '-';
+            if(negative){ i++; c = peek(); }
+            if(c < '0' || c > '9') throw error(directive + ": expected an integer");
+            long v = 0;
+            while(c >= '0' && c <= '9'){
+                v = v * 10 + (c - '0');
+                if(v > Integer.MAX_VALUE + 1L) throw error(directive + ": number out of range");
+                i++;
+                c = peek();
             }
+            if(c >= 0 && c != ' ' && c != '\t' && c != '\r' && c != '\n' && c != '#') throw error(directive + ": expected an integer");
+            v = negative ? -v : v;
+            if(v > Integer.MAX_VALUE) throw error(directive + ": number out of range");
+            return (int) v;
         }
-        if(grid == null) throw new IllegalArgumentException("World file must start with GRID W H");
-        return grid;
     }
 }
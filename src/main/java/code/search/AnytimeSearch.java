@@ -0,0 +1,163 @@
+package code.search;
+
+import code.model.GridGraph;
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * AnytimeSearch: ARA*-style anytime A* over a compiled GridGraph.
+ *
+ * Runs rounds of weighted A* ordered by g + w*h. w starts at SearchOptions.initialWeight() and
+ * drops by weightStep() per round down to 1, where the round is plain A*. A round ends once no
+ * open cell's key is below the goal's g. The next round keeps g, parents and the open list and
+ * only re-keys the open cells, so it repairs the previous route rather than starting over.
+ * With an admissible heuristic the route costs at most bound() times the optimum, where
+ * bound() = min(w, g(goal) / min over open cells of g + h).
+ *
+ * Unlike the original ARA*, a closed cell whose g drops is reopened at once instead of being
+ * parked until the next round: the tunnel-aware bounds are admissible but not always consistent.
+ *
+ * When SearchOptions stop the search, the best route so far comes back with limited set (and a
+ * valid bound()); if there is none yet, the reached cell nearest the goal comes back as partial.
+ */
+public final class AnytimeSearch {
+    private static final ThreadLocal<AnytimeSearch> LOCAL = new ThreadLocal<>();
+
+    private final int capacity;
+    private final int[] g;
+    private final int[] h;
+    private final int[] parentEdge;
+    private final int[] parent;
+    private final int[] stamp;
+    private final int[] queued;           // open ids while re-keying
+    private final IndexedMinHeap open;
+    private int generation;
+    private double bound = Double.POSITIVE_INFINITY;
+
+    private AnytimeSearch(int capacity){
+        this.capacity = capacity;
+        g = new int[capacity];
+        h = new int[capacity];
+        parentEdge = new int[capacity];
+        parent = new int[capacity];
+        stamp = new int[capacity];
+        queued = new int[capacity];
+        open = new IndexedMinHeap(capacity);
+    }
+
+    /** Engine for the calling thread, grown if the graph has more cells than it can hold. */
+    public static AnytimeSearch forGraph(GridGraph graph){
+        AnytimeSearch e = LOCAL.get();
+        if(e == null || e.capacity < graph.cellCount){
+            e = new AnytimeSearch(graph.cellCount);
+            LOCAL.set(e);
+        }
+        return e;
+    }
+
+    /** Proven ratio of the last route's cost to the optimum (1 = optimal); infinite when no route was found. */
+    public double bound(){ return bound; }
+
+    /** Anytime route start -> goal; heuristic must be admissible. Re-expansions count in nodesExpanded. */
+    public GeneralSearch.Result search(GridGraph graph, int start, int goal, IntUnaryOperator heuristic, SearchOptions options){
+        int gen = nextGeneration();
+        open.clear();
+        bound = Double.POSITIVE_INFINITY;
+        stamp[start] = gen;
+        g[start] = 0;
+        h[start] = heuristic.applyAsInt(start);
+        parent[start] = GridGraph.NONE;
+        double w = options.initialWeight();
+        open.push(start, key(start, w));
+        int expanded = 0;
+        while(true){
+            while(!open.isEmpty() && (int) (open.minKey() >>> 32) < goalCost(goal, gen)){
+                if(options.stop(expanded)) return stopped(graph, start, goal, gen, expanded);
+                int u = open.poll();
+                expanded++;
+                int gu = g[u];
+                for(int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++){
+                    int v = graph.edgeTarget(e);
+                    int ng = gu + graph.edgeCost(e);
+                    if(stamp[v] == gen){
+                        if(ng >= g[v]) continue;
+                    } else {
+                        stamp[v] = gen;
+                        h[v] = heuristic.applyAsInt(v);
+                    }
+                    g[v] = ng;
+                    parent[v] = u;
+                    parentEdge[v] = e;
+                    open.push(v, key(v, w));
+                }
+            }
+            if(stamp[goal] != gen) return new GeneralSearch.Result(null, expanded);
+            bound = Math.min(w, proven(goal));
+            if(w <= 1 || bound <= 1) return new GeneralSearch.Result(path(graph, start, goal), expanded);
+            w = Math.max(1, w - options.weightStep());
+            rekey(w);
+        }
+    }
+
+    /** The route so far, or the partial one toward the reached cell nearest the goal. */
+    private GeneralSearch.Result stopped(GridGraph graph, int start, int goal, int gen, int expanded){
+        if(stamp[goal] == gen){
+            bound = Math.min(bound, proven(goal));
+            return new GeneralSearch.Result(path(graph, start, goal), expanded, true, null);
+        }
+        int near = start;
+        for(int c = 0; c < graph.cellCount; c++){
+            if(stamp[c] == gen && (h[c] < h[near] || (h[c] == h[near] && g[c] < g[near]))) near = c;
+        }
+        return new GeneralSearch.Result(null, expanded, true, path(graph, start, near));
+    }
+
+    /** g(goal) over the least g + h still open, which bounds the optimum from below. */
+    private double proven(int goal){
+        long lb = Long.MAX_VALUE;
+        for(int i = 0; i < open.size(); i++){
+            int c = open.at(i);
+            lb = Math.min(lb, (long) g[c] + h[c]);
+        }
+        if(lb >= g[goal]) return 1;
+        return lb <= 0 ? Double.POSITIVE_INFINITY : (double) g[goal] / lb;
+    }
+
+    private int goalCost(int goal, int gen){ return stamp[goal] == gen ? g[goal] : Integer.MAX_VALUE; }
+
+    private void rekey(double w){
+        int n = open.size();
+        for(int i = 0; i < n; i++) queued[i] = open.at(i);
+        open.clear();
+        for(int i = 0; i < n; i++) open.push(queued[i], key(queued[i], w));
+    }
+
+    /** f = g + w*h (below Integer.MAX_VALUE) above, ties to the deeper cell below. */
+    private long key(int c, double w){
+        int f = (int) Math.min(Integer.MAX_VALUE - 1L, g[c] + (long) (w * h[c]));
+        return ((long) f << 32) | (Integer.MAX_VALUE - g[c]);
+    }
+
+    private int nextGeneration(){
+        if(++generation == Integer.MAX_VALUE){
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        return generation;
+    }
+
+    private Node path(GridGraph graph, int start, int target){
+        int len = 0;
+        for(int c = target; c != start; c = parent[c]) len++;
+        int[] cells = new int[len + 1];
+        for(int c = target, i = len; i >= 0; c = parent[c], i--) cells[i] = c;
+
+        Node node = new Node(graph.position(start));
+        for(int i = 1; i <= len; i++){
+            int c = cells[i];
+            int e = parentEdge[c];
+            node = new Node(graph.position(c), node, graph.edgeOp(e), graph.edgeCost(e));
+        }
+        return node;
+    }
+}
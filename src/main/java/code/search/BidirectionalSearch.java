@@ -0,0 +1,209 @@
+package code.search;
+
+import code.model.GridGraph;
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * BidirectionalSearch: BFS, UCS and A* run from both ends of a leg over a compiled GridGraph.
+ *
+ * The forward side follows the CSR edges from the start, the backward side follows the reverse
+ * CSR from the goal, so directed EDGE costs and one-way tunnel hops are respected on both sides.
+ * The side with the smaller frontier is advanced. mu is the best start->goal cost seen where the
+ * two searches touched:
+ *  - BFS expands whole layers and stops after the layer in which they first touched (fewest moves);
+ *  - UCS stops once the two queue minima add up to mu (bidirectional Dijkstra);
+ *  - A* prunes nodes whose g + h already reaches mu and stops once either queue's minimum f does.
+ *    This only needs admissible heuristics (the tunnel-aware bounds are not always consistent),
+ *    reopening nodes whose g drops like GridSearchEngine.
+ * Arrays are generation-stamped and kept per thread.
+ */
+public final class BidirectionalSearch {
+    private static final ThreadLocal<BidirectionalSearch> LOCAL = new ThreadLocal<>();
+
+    private final int capacity;
+    private final Side fwd, bwd;
+    private int generation;
+
+    /** One direction's state. edge[] holds forward edge ids: into the cell (forward), out of it (backward). */
+    private static final class Side {
+        final int[] g;
+        final int[] h;
+        final int[] edge;
+        final int[] stamp;
+        final IndexedMinHeap open;
+        final int[] layer, nextLayer;     // BFS frontiers
+        IntUnaryOperator heuristic;
+        Side(int n){
+            g = new int[n]; h = new int[n]; edge = new int[n]; stamp = new int[n];
+            open = new IndexedMinHeap(n);
+            layer = new int[n]; nextLayer = new int[n];
+        }
+    }
+
+    private BidirectionalSearch(int capacity){
+        this.capacity = capacity;
+        fwd = new Side(capacity);
+        bwd = new Side(capacity);
+    }
+
+    /** Engine for the calling thread, grown if the graph has more cells than it can hold. */
+    public static BidirectionalSearch forGraph(GridGraph graph){
+        BidirectionalSearch e = LOCAL.get();
+        if(e == null || e.capacity < graph.cellCount){
+            e = new BidirectionalSearch(graph.cellCount);
+            LOCAL.set(e);
+        }
+        return e;
+    }
+
+    // ---- BFS ----
+
+    /** Fewest-moves route start -> goal. */
+    public GeneralSearch.Result bfs(GridGraph graph, int start, int goal){
+        return bfs(graph, start, goal, SearchOptions.UNLIMITED);
+    }
+
+    /**
+     * As above, stopping with a limited Result once options says so; its partial route leads to
+     * the forward side's reached cell nearest the goal.
+     */
+    public GeneralSearch.Result bfs(GridGraph graph, int start, int goal, SearchOptions options){
+        int gen = nextGeneration();
+        init(fwd, start, gen, null);
+        init(bwd, goal, gen, null);
+        if(start == goal) return result(graph, start, goal, start, 0);
+        int fSize = 1, bSize = 1, expanded = 0;
+        fwd.layer[0] = start;
+        bwd.layer[0] = goal;
+        while(fSize > 0 && bSize > 0){
+            boolean forward = fSize <= bSize;
+            Side s = forward ? fwd : bwd, o = forward ? bwd : fwd;
+            int n = forward ? fSize : bSize, next = 0, best = Integer.MAX_VALUE, meet = GridGraph.NONE;
+            for(int i = 0; i < n; i++){
+                int u = s.layer[i];
+                if(options.stop(expanded)) return stopped(graph, start, goal, gen, expanded);
+                expanded++;
+                int first = forward ? graph.firstEdge(u) : graph.firstInEdge(u);
+                int end = forward ? graph.endEdge(u) : graph.endInEdge(u);
+                for(int k = first; k < end; k++){
+                    int e = forward ? k : graph.inEdgeForward(k);
+                    int v = forward ? graph.edgeTarget(e) : graph.inEdgeSource(k);
+                    if(s.stamp[v] == gen) continue;
+                    s.stamp[v] = gen;
+                    s.g[v] = s.g[u] + 1;
+                    s.edge[v] = e;
+                    s.nextLayer[next++] = v;
+                    if(o.stamp[v] == gen && s.g[v] + o.g[v] < best){ best = s.g[v] + o.g[v]; meet = v; }
+                }
+            }
+            if(meet != GridGraph.NONE) return result(graph, start, goal, meet, expanded);
+            System.arraycopy(s.nextLayer, 0, s.layer, 0, next);
+            if(forward) fSize = next; else bSize = next;
+        }
+        return new GeneralSearch.Result(null, expanded);
+    }
+
+    // ---- UCS / A* ----
+
+    /**
+     * Cheapest route start -> goal. toGoal bounds d(c, goal) and fromStart bounds d(start, c);
+     * pass null for both to run bidirectional Dijkstra.
+     */
+    public GeneralSearch.Result search(GridGraph graph, int start, int goal, IntUnaryOperator toGoal, IntUnaryOperator fromStart){
+        return search(graph, start, goal, toGoal, fromStart, SearchOptions.UNLIMITED);
+    }
+
+    /** As above, stopping with a limited Result once options says so (partial as for bfs, by toGoal if given). */
+    public GeneralSearch.Result search(GridGraph graph, int start, int goal, IntUnaryOperator toGoal,
+                                       IntUnaryOperator fromStart, SearchOptions options){
+        boolean informed = toGoal != null;
+        int gen = nextGeneration();
+        init(fwd, start, gen, toGoal);
+        init(bwd, goal, gen, fromStart);
+        fwd.open.push(start, key(fwd.h[start], 0));
+        bwd.open.push(goal, key(bwd.h[goal], 0));
+        int mu = start == goal ? 0 : GridGraph.UNREACHABLE, meet = start == goal ? start : GridGraph.NONE;
+        int expanded = 0;
+        while(!fwd.open.isEmpty() && !bwd.open.isEmpty()){
+            int fTop = (int) (fwd.open.minKey() >>> 32), bTop = (int) (bwd.open.minKey() >>> 32);
+            if(informed ? Math.max(fTop, bTop) >= mu : fTop + bTop >= mu) break;
+            boolean forward = fwd.open.size() <= bwd.open.size();
+            Side s = forward ? fwd : bwd, o = forward ? bwd : fwd;
+            int u = s.open.poll();
+            int gu = s.g[u];
+            if(informed && gu + s.h[u] >= mu) continue;
+            if(options.stop(expanded)) return stopped(graph, start, goal, gen, expanded);
+            expanded++;
+            int first = forward ? graph.firstEdge(u) : graph.firstInEdge(u);
+            int end = forward ? graph.endEdge(u) : graph.endInEdge(u);
+            for(int k = first; k < end; k++){
+                int e = forward ? k : graph.inEdgeForward(k);
+                int v = forward ? graph.edgeTarget(e) : graph.inEdgeSource(k);
+                int ng = gu + graph.edgeCost(e);
+                if(s.stamp[v] == gen){
+                    if(ng >= s.g[v]) continue;
+                } else {
+                    s.stamp[v] = gen;
+                    s.h[v] = s.heuristic == null ? 0 : s.heuristic.applyAsInt(v);
+                }
+                s.g[v] = ng;
+                s.edge[v] = e;
+                if(o.stamp[v] == gen && ng + o.g[v] < mu){ mu = ng + o.g[v]; meet = v; }
+                if(!informed || ng + s.h[v] < mu) s.open.push(v, key(ng + s.h[v], ng));
+            }
+        }
+        if(meet == GridGraph.NONE) return new GeneralSearch.Result(null, expanded);
+        return result(graph, start, goal, meet, expanded);
+    }
+
+    private static void init(Side s, int root, int gen, IntUnaryOperator heuristic){
+        s.open.clear();
+        s.heuristic = heuristic;
+        s.stamp[root] = gen;
+        s.g[root] = 0;
+        s.h[root] = heuristic == null ? 0 : heuristic.applyAsInt(root);
+        s.edge[root] = GridGraph.NONE;
+    }
+
+    private static long key(int f, int g){ return ((long) f << 32) | (Integer.MAX_VALUE - g); }
+
+    private int nextGeneration(){
+        if(++generation == Integer.MAX_VALUE){
+            Arrays.fill(fwd.stamp, 0);
+            Arrays.fill(bwd.stamp, 0);
+            generation = 1;
+        }
+        return generation;
+    }
+
+    /** Forward chain to the reached cell nearest the goal (by the forward heuristic, else Manhattan). */
+    private GeneralSearch.Result stopped(GridGraph graph, int start, int goal, int gen, int expanded){
+        int near = start;
+        long best = Long.MAX_VALUE;
+        for(int c = 0; c < graph.cellCount; c++){
+            if(fwd.stamp[c] != gen) continue;
+            int d = fwd.heuristic != null ? fwd.h[c] : Math.abs(graph.x(c) - graph.x(goal)) + Math.abs(graph.y(c) - graph.y(goal));
+            long k = ((long) d << 32) | fwd.g[c];
+            if(k < best){ best = k; near = c; }
+        }
+        List<Integer> edges = new ArrayList<>();
+        for(int c = near; c != start; c = graph.edgeSource(fwd.edge[c])) edges.add(fwd.edge[c]);
+        Collections.reverse(edges);
+        Node node = new Node(graph.position(start));
+        for(int e : edges) node = new Node(graph.position(graph.edgeTarget(e)), node, graph.edgeOp(e), graph.edgeCost(e));
+        return new GeneralSearch.Result(null, expanded, true, node);
+    }
+
+    /** Joins the forward chain start..meet with the backward chain meet..goal. */
+    private GeneralSearch.Result result(GridGraph graph, int start, int goal, int meet, int expanded){
+        List<Integer> edges = new ArrayList<>();
+        for(int c = meet; c != start; c = graph.edgeSource(fwd.edge[c])) edges.add(fwd.edge[c]);
+        Collections.reverse(edges);
+        for(int c = meet; c != goal; c = graph.edgeTarget(bwd.edge[c])) edges.add(bwd.edge[c]);
+
+        Node node = new Node(graph.position(start));
+        for(int e : edges) node = new Node(graph.position(graph.edgeTarget(e)), node, graph.edgeOp(e), graph.edgeCost(e));
+        return new GeneralSearch.Result(node, expanded);
+    }
+}
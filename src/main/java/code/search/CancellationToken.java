@@ -0,0 +1,21 @@
+package code.search;
+
+/**
+ * CancellationToken: a flag a search polls between expansions (see SearchOptions.token).
+ * Cancelling is one-way and may happen from any thread; a child() is also cancelled with its parent.
+ */
+public final class CancellationToken {
+    private final CancellationToken parent;
+    private volatile boolean cancelled;
+
+    public CancellationToken(){ this(null); }
+
+    private CancellationToken(CancellationToken parent){ this.parent = parent; }
+
+    /** A token cancelled by cancel() on either itself or this one. */
+    public CancellationToken child(){ return new CancellationToken(this); }
+
+    public void cancel(){ cancelled = true; }
+
+    public boolean isCancelled(){ return cancelled || (parent != null && parent.isCancelled()); }
+}
@@ -1,205 +1,356 @@
 package code.search;
 
 import java.util.*;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
 
 /**
- * GeneralGraphSearch supporting BFS, DFS, UCS, IDS, GREEDY, ASTAR.
+ * GeneralGraphSearch supporting BFS, DFS, UCS, IDS, GREEDY, ASTAR, JPS
+ * the bidirectional BIBFS, BIUCS, BIASTAR, hierarchical HPA, anytime ARASTAR
+ * and the low-memory IDASTAR and SMASTAR.
  */
 public class GeneralSearch {
 
     public static class Result {
+        private static final byte[] NO_PLAN = {};
+
         public final Node node;
         public final int nodesExpanded;
-        public final List<String> actions;
+        /** Operators start -> goal (Problem/GridGraph op codes); empty when nothing was found. */
+        public final byte[] plan;
+        /**
+         * True if a SearchOptions limit ended the search: node is then the best route so far
+         * (anytime search) or null, which proves nothing.
+         */
+        public final boolean limited;
+        /** When limited without a route: the path to the reached state judged nearest the goal, if any. */
+        public final Node partial;
+
+        public Result(Node n, int expanded) {
+            this(n, expanded, false, null);
+        }
 
-        public Result(Node n, int expanded, List<String> actions) {
+        public Result(Node n, int expanded, boolean limited, Node partial) {
             this.node = n;
             this.nodesExpanded = expanded;
-            this.actions = actions != null ? new ArrayList<>(actions) : Collections.emptyList();
+            this.plan = n != null ? n.plan() : NO_PLAN;
+            this.limited = limited;
+            this.partial = partial;
         }
     }
 
-    private static List<String> getActionSequence(Node goal) {
-        List<String> actions = new ArrayList<>();
-        Node current = goal;
-        while (current != null && current.parent != null) {
-            actions.add(current.action);
-            current = current.parent;
-        }
-        Collections.reverse(actions);
-        return actions;
+    public static Result generalSearch(Problem problem, SearchStrategy strat) {
+        return generalSearch(problem, strat, SearchOptions.UNLIMITED);
     }
 
-    public static Result generalSearch(Problem problem, SearchStrategy strat) {
+    /** Like generalSearch(problem, strat), giving up once options says so. */
+    public static Result generalSearch(Problem problem, SearchStrategy strat, SearchOptions options) {
         switch (strat) {
-            case BFS: return bfs(problem);
-            case DFS: return dfs(problem);
-            case UCS: return ucs(problem);
-            case IDS: return ids(problem, 60);
-            case GREEDY: return greedy(problem);
-            case ASTAR: return aStar(problem);
-            default: return new Result(null, 0, null);
+            case BFS: return bfs(problem, options);
+            case DFS: return dfs(problem, options);
+            case UCS: return ucs(problem, options);
+            case IDS: return IdaStar.deepening(problem, near(problem), options);
+            case GREEDY: return greedy(problem, options);
+            case ASTAR: return aStar(problem, options);
+            case JPS: return jps(problem, options);
+            case BIBFS: return bidirectional(problem, strat, options);
+            case BIUCS: return bidirectional(problem, strat, options);
+            case BIASTAR: return bidirectional(problem, strat, options);
+            case HPA: return hpa(problem, options);
+            case ARASTAR: return anytime(problem, options);
+            case IDASTAR: return IdaStar.idaStar(problem, admissible(problem), options);
+            case SMASTAR: return smaStar(problem, options);
+            default: return new Result(null, 0);
         }
     }
 
-    private static Result bfs(Problem problem) {
+    private static Result bfs(Problem problem, SearchOptions options) {
         Queue<Node> frontier = new ArrayDeque<>();
         Set<Object> explored = new HashSet<>();
         frontier.add(new Node(problem.initialState()));
         int nodesExpanded = 0;
+        Closest closest = new Closest(problem, options);
+        Successors succ = new Successors();
         while (!frontier.isEmpty()) {
             Node node = frontier.poll();
             if (problem.goalTest(node.state)) {
-                return new Result(node, nodesExpanded, getActionSequence(node));
+                return new Result(node, nodesExpanded);
             }
             if (explored.contains(node.state)) continue;
             explored.add(node.state);
+            if (options.stop(nodesExpanded)) return closest.stopped(nodesExpanded);
+            closest.offer(node);
             nodesExpanded++;
-            for (String op : problem.operators()) {
-                Object s2 = problem.apply(node.state, op);
-                if (s2 == null) continue;
-                Node child = new Node(s2, node, op, problem.stepCost(node.state, op));
-                frontier.add(child);
+            problem.expand(node.state, succ);
+            for (int i = 0; i < succ.size(); i++) {
+                frontier.add(new Node(succ.state(i), node, succ.op(i), succ.cost(i)));
             }
         }
-        return new Result(null, nodesExpanded, null);
+        return new Result(null, nodesExpanded);
     }
 
-    private static Result dfs(Problem problem) {
+    private static Result dfs(Problem problem, SearchOptions options) {
         Deque<Node> frontier = new ArrayDeque<>();
         Set<Object> explored = new HashSet<>();
         frontier.addFirst(new Node(problem.initialState()));
         int nodesExpanded = 0;
+        Closest closest = new Closest(problem, options);
+        Successors succ = new Successors();
         while (!frontier.isEmpty()) {
             Node node = frontier.removeFirst();
             if (problem.goalTest(node.state)) {
-                return new Result(node, nodesExpanded, getActionSequence(node));
+                return new Result(node, nodesExpanded);
             }
             if (explored.contains(node.state)) continue;
             explored.add(node.state);
+            if (options.stop(nodesExpanded)) return closest.stopped(nodesExpanded);
+            closest.offer(node);
             nodesExpanded++;
-            List<String> ops = problem.operators();
-            for (int i = ops.size() - 1; i >= 0; i--) {
-                String op = ops.get(i);
-                Object s2 = problem.apply(node.state, op);
-                if (s2 == null) continue;
-                Node child = new Node(s2, node, op, problem.stepCost(node.state, op));
-                frontier.addFirst(child);
+            problem.expand(node.state, succ);
+            for (int i = succ.size() - 1; i >= 0; i--) {
+                frontier.addFirst(new Node(succ.state(i), node, succ.op(i), succ.cost(i)));
             }
         }
-        return new Result(null, nodesExpanded, null);
+        return new Result(null, nodesExpanded);
     }
 
-    private static Result ucs(Problem problem) {
+    private static Result ucs(Problem problem, SearchOptions options) {
+        if (problem instanceof code.delivery.DeliveryProblem) {
+            Result r = gridSearch((code.delivery.DeliveryProblem) problem, false, options);
+            if (r != null) return r;
+        }
         Comparator<Node> cmp = Comparator.comparingInt(n -> n.pathCost);
         PriorityQueue<Node> frontier = new PriorityQueue<>(cmp);
         Map<Object, Integer> best = new HashMap<>();
         frontier.add(new Node(problem.initialState()));
         int nodesExpanded = 0;
+        Closest closest = new Closest(problem, options);
+        Successors succ = new Successors();
         while (!frontier.isEmpty()) {
             Node node = frontier.poll();
             if (problem.goalTest(node.state)) {
-                return new Result(node, nodesExpanded, getActionSequence(node));
+                return new Result(node, nodesExpanded);
             }
             Integer prev = best.get(node.state);
             if (prev != null && prev <= node.pathCost) continue;
             best.put(node.state, node.pathCost);
+            if (options.stop(nodesExpanded)) return closest.stopped(nodesExpanded);
+            closest.offer(node);
             nodesExpanded++;
-            for (String op : problem.operators()) {
-                Object s2 = problem.apply(node.state, op);
-                if (s2 == null) continue;
-                int step = problem.stepCost(node.state, op);
-                Node child = new Node(s2, node, op, step);
-                frontier.add(child);
+            problem.expand(node.state, succ);
+            for (int i = 0; i < succ.size(); i++) {
+                frontier.add(new Node(succ.state(i), node, succ.op(i), succ.cost(i)));
             }
         }
-        return new Result(null, nodesExpanded, null);
+        return new Result(null, nodesExpanded);
     }
 
-    private static Result greedy(Problem problem) {
-        if (!(problem instanceof code.delivery.DeliveryProblem)) return new Result(null, 0, null);
+    private static Result greedy(Problem problem, SearchOptions options) {
+        if (!(problem instanceof code.delivery.DeliveryProblem)) return new Result(null, 0);
         code.delivery.DeliveryProblem dp = (code.delivery.DeliveryProblem) problem;
-        Comparator<Node> cmp = Comparator.comparingInt(n -> Heuristics.tunnelAware(dp, n.state));
-        PriorityQueue<Node> frontier = new PriorityQueue<>(cmp);
+        ToIntFunction<Object> h = heuristic(dp);
+        PriorityQueue<Scored> frontier = new PriorityQueue<>(Comparator.comparingInt((Scored s) -> s.key));
         Set<Object> explored = new HashSet<>();
-        frontier.add(new Node(problem.initialState()));
+        Node root = new Node(problem.initialState());
+        frontier.add(new Scored(root, h.applyAsInt(root.state)));
         int nodesExpanded = 0;
+        Closest closest = new Closest(options.hasLimits() ? h : null);
+        Successors succ = new Successors();
         while (!frontier.isEmpty()) {
-            Node node = frontier.poll();
+            Node node = frontier.poll().node;
             if (problem.goalTest(node.state)) {
-                return new Result(node, nodesExpanded, getActionSequence(node));
+                return new Result(node, nodesExpanded);
             }
             if (explored.contains(node.state)) continue;
             explored.add(node.state);
+            if (options.stop(nodesExpanded)) return closest.stopped(nodesExpanded);
+            closest.offer(node);
             nodesExpanded++;
-            for (String op : problem.operators()) {
-                Object s2 = problem.apply(node.state, op);
-                if (s2 == null) continue;
-                Node child = new Node(s2, node, op, problem.stepCost(node.state, op));
-                frontier.add(child);
+            problem.expand(node.state, succ);
+            for (int i = 0; i < succ.size(); i++) {
+                Object s2 = succ.state(i);
+                frontier.add(new Scored(new Node(s2, node, succ.op(i), succ.cost(i)), h.applyAsInt(s2)));
             }
         }
-        return new Result(null, nodesExpanded, null);
+        return new Result(null, nodesExpanded);
     }
 
-    private static Result aStar(Problem problem) {
-        if (!(problem instanceof code.delivery.DeliveryProblem)) return new Result(null, 0, null);
+    private static Result aStar(Problem problem, SearchOptions options) {
+        if (!(problem instanceof code.delivery.DeliveryProblem)) return new Result(null, 0);
         code.delivery.DeliveryProblem dp = (code.delivery.DeliveryProblem) problem;
-        Comparator<Node> cmp = Comparator.comparingInt(n -> n.pathCost + Heuristics.tunnelAware(dp, n.state));
-        PriorityQueue<Node> frontier = new PriorityQueue<>(cmp);
+        Result fast = gridSearch(dp, true, options);
+        if (fast != null) return fast;
+        ToIntFunction<Object> h = heuristic(dp);
+        PriorityQueue<Scored> frontier = new PriorityQueue<>(Comparator.comparingInt((Scored s) -> s.key));
         Map<Object, Integer> best = new HashMap<>();
-        frontier.add(new Node(problem.initialState()));
+        Node root = new Node(problem.initialState());
+        frontier.add(new Scored(root, h.applyAsInt(root.state)));
         int nodesExpanded = 0;
+        Closest closest = new Closest(options.hasLimits() ? h : null);
+        Successors succ = new Successors();
         while (!frontier.isEmpty()) {
-            Node node = frontier.poll();
+            Node node = frontier.poll().node;
             if (problem.goalTest(node.state)) {
-                return new Result(node, nodesExpanded, getActionSequence(node));
+                return new Result(node, nodesExpanded);
             }
             Integer prev = best.get(node.state);
             if (prev != null && prev <= node.pathCost) continue;
             best.put(node.state, node.pathCost);
+            if (options.stop(nodesExpanded)) return closest.stopped(nodesExpanded);
+            closest.offer(node);
             nodesExpanded++;
-            for (String op : problem.operators()) {
-                Object s2 = problem.apply(node.state, op);
-                if (s2 == null) continue;
-                Node child = new Node(s2, node, op, problem.stepCost(node.state, op));
-                frontier.add(child);
+            problem.expand(node.state, succ);
+            for (int i = 0; i < succ.size(); i++) {
+                Object s2 = succ.state(i);
+                Node child = new Node(s2, node, succ.op(i), succ.cost(i));
+                frontier.add(new Scored(child, child.pathCost + h.applyAsInt(s2)));
             }
         }
-        return new Result(null, nodesExpanded, null);
+        return new Result(null, nodesExpanded);
     }
 
-    private static Result ids(Problem problem, int maxDepth) {
-        for (int depth = 0; depth <= maxDepth; depth++) {
-            Result r = depthLimitedSearch(problem, depth);
-            if (r.node != null) return r;
+    /** Jump Point Search on the compiled grid; plain A* when start or goal lies off it. */
+    private static Result jps(Problem problem, SearchOptions options) {
+        if (problem instanceof code.delivery.DeliveryProblem) {
+            code.delivery.DeliveryProblem dp = (code.delivery.DeliveryProblem) problem;
+            code.model.GridGraph graph = dp.graph;
+            int start = graph.cellOf(dp.start), goal = graph.cellOf(dp.goal);
+            if (start != code.model.GridGraph.NONE && goal != code.model.GridGraph.NONE) {
+                return JumpPointSearch.forGraph(graph).search(graph, start, goal, Heuristics.precomputed(graph, goal), options);
+            }
         }
-        return new Result(null, 0, null);
+        return aStar(problem, options);
     }
 
-    private static Result depthLimitedSearch(Problem problem, int limit) {
-        Deque<Node> frontier = new ArrayDeque<>();
-        Set<Object> explored = new HashSet<>();
-        frontier.addFirst(new Node(problem.initialState()));
-        int nodesExpanded = 0;
-        while (!frontier.isEmpty()) {
-            Node node = frontier.removeFirst();
-            if (problem.goalTest(node.state)) {
-                return new Result(node, nodesExpanded, getActionSequence(node));
+    /** Bidirectional BFS / UCS / A* on the compiled grid; the one-way search when start or goal lies off it. */
+    private static Result bidirectional(Problem problem, SearchStrategy strat, SearchOptions options) {
+        if (problem instanceof code.delivery.DeliveryProblem) {
+            code.delivery.DeliveryProblem dp = (code.delivery.DeliveryProblem) problem;
+            code.model.GridGraph graph = dp.graph;
+            int start = graph.cellOf(dp.start), goal = graph.cellOf(dp.goal);
+            if (start != code.model.GridGraph.NONE && goal != code.model.GridGraph.NONE) {
+                BidirectionalSearch search = BidirectionalSearch.forGraph(graph);
+                switch (strat) {
+                    case BIBFS: return search.bfs(graph, start, goal, options);
+                    case BIUCS: return search.search(graph, start, goal, null, null, options);
+                    default:
+                        LandmarkHeuristic h = LandmarkHeuristic.ifBuilt(graph);
+                        if (h != null) return search.search(graph, start, goal, h.toward(goal), h.from(start), options);
+                        return search.search(graph, start, goal, c -> Heuristics.tunnelAware(graph, c, goal),
+                                c -> Heuristics.tunnelAware(graph, start, c), options);
+                }
             }
-            if (node.depth >= limit) continue;
-            if (explored.contains(node.state)) continue;
-            explored.add(node.state);
-            nodesExpanded++;
-            List<String> ops = problem.operators();
-            for (int i = ops.size() - 1; i >= 0; i--) {
-                String op = ops.get(i);
-                Object s2 = problem.apply(node.state, op);
-                if (s2 == null) continue;
-                Node child = new Node(s2, node, op, problem.stepCost(node.state, op));
-                frontier.addFirst(child);
+        }
+        switch (strat) {
+            case BIBFS: return bfs(problem, options);
+            case BIUCS: return ucs(problem, options);
+            default: return aStar(problem, options);
+        }
+    }
+
+    /**
+     * HPA* over the grid's cluster abstraction (near-optimal). Falls back to A* when the
+     * abstraction finds nothing, since one-way edges can hide a crossing from it.
+     */
+    private static Result hpa(Problem problem, SearchOptions options) {
+        if (problem instanceof code.delivery.DeliveryProblem) {
+            code.delivery.DeliveryProblem dp = (code.delivery.DeliveryProblem) problem;
+            Result r = HpaStar.forGrid(dp.grid).search(dp.start, dp.goal, options);
+            if (r.node != null || r.limited) return r;
+        }
+        return aStar(problem, options);
+    }
+
+    /**
+     * ARA*-style anytime A* (AnytimeSearch) on the compiled grid, weights from options; plain A*
+     * when start or goal lies off it.
+     */
+    private static Result anytime(Problem problem, SearchOptions options) {
+        if (problem instanceof code.delivery.DeliveryProblem) {
+            code.delivery.DeliveryProblem dp = (code.delivery.DeliveryProblem) problem;
+            code.model.GridGraph graph = dp.graph;
+            int start = graph.cellOf(dp.start), goal = graph.cellOf(dp.goal);
+            if (start != code.model.GridGraph.NONE && goal != code.model.GridGraph.NONE) {
+                return AnytimeSearch.forGraph(graph).search(graph, start, goal, Heuristics.precomputed(graph, goal), options);
+            }
+        }
+        return aStar(problem, options);
+    }
+
+    /** SMA* (SmaStar) within options.nodeCap() nodes on the compiled grid; IDA* when start or goal lies off it. */
+    private static Result smaStar(Problem problem, SearchOptions options) {
+        if (problem instanceof code.delivery.DeliveryProblem) {
+            code.delivery.DeliveryProblem dp = (code.delivery.DeliveryProblem) problem;
+            code.model.GridGraph graph = dp.graph;
+            int start = graph.cellOf(dp.start), goal = graph.cellOf(dp.goal);
+            if (start != code.model.GridGraph.NONE && goal != code.model.GridGraph.NONE) {
+                return SmaStar.forGraph(graph, options.nodeCap()).search(graph, start, goal, Heuristics.precomputed(graph, goal), options);
             }
         }
-        return new Result(null, nodesExpanded, null);
+        return IdaStar.idaStar(problem, admissible(problem), options);
+    }
+
+    /** UCS / A* on the compiled grid; null when start or goal lies off the grid. */
+    private static Result gridSearch(code.delivery.DeliveryProblem dp, boolean heuristic, SearchOptions options) {
+        code.model.GridGraph graph = dp.graph;
+        int start = graph.cellOf(dp.start), goal = graph.cellOf(dp.goal);
+        if (start == code.model.GridGraph.NONE || goal == code.model.GridGraph.NONE) return null;
+        return GridSearchEngine.forGraph(graph).search(graph, start, goal,
+                heuristic ? Heuristics.precomputed(graph, goal) : null, options);
+    }
+
+    /** Frontier entry whose priority is computed once, not on every comparison. */
+    private static final class Scored {
+        final Node node;
+        final int key;
+        Scored(Node node, int key) { this.node = node; this.key = key; }
+    }
+
+    /**
+     * Expanded node nearest the goal by h (then cheapest), the partial answer of a limited search.
+     * Only tracked when options have limits; h is Manhattan distance for the uninformed loops.
+     */
+    private static final class Closest {
+        final ToIntFunction<Object> h;
+        Node node;
+        int key;
+
+        Closest(ToIntFunction<Object> h) { this.h = h; }
+
+        Closest(Problem problem, SearchOptions options) {
+            this(options.hasLimits() ? near(problem) : null);
+        }
+
+        void offer(Node n) {
+            if (h == null) return;
+            int k = h.applyAsInt(n.state);
+            if (node == null || k < key || (k == key && n.pathCost < node.pathCost)) { node = n; key = k; }
+        }
+
+        Result stopped(int expanded) { return new Result(null, expanded, true, node); }
+    }
+
+    /** Manhattan distance to the goal of a DeliveryProblem, null for other problems. */
+    private static ToIntFunction<Object> near(Problem problem) {
+        if (!(problem instanceof code.delivery.DeliveryProblem)) return null;
+        code.model.Position goal = ((code.delivery.DeliveryProblem) problem).goal;
+        return s -> Heuristics.manhattan((code.model.Position) s, goal);
+    }
+
+    /** heuristic() for a DeliveryProblem, 0 (still admissible) for any other problem. */
+    private static ToIntFunction<Object> admissible(Problem problem) {
+        return problem instanceof code.delivery.DeliveryProblem ? heuristic((code.delivery.DeliveryProblem) problem) : s -> 0;
+    }
+
+    /** Precomputed bound toward the goal on the compiled grid; the tunnel scan if the goal is off it. */
+    private static ToIntFunction<Object> heuristic(code.delivery.DeliveryProblem dp) {
+        code.model.GridGraph graph = dp.graph;
+        int goal = graph.cellOf(dp.goal);
+        if (goal == code.model.GridGraph.NONE) return s -> Heuristics.tunnelAware(dp, s);
+        IntUnaryOperator h = Heuristics.precomputed(graph, goal);
+        return s -> {
+            int c = graph.cellOf((code.model.Position) s);
+            return c == code.model.GridGraph.NONE ? 0 : h.applyAsInt(c);
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package code.search;
+
+import code.model.GridGraph;
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * GridSearchEngine: allocation-free UCS / A* over a compiled GridGraph.
+ *
+ * Open list is an IndexedMinHeap with decrease-key; g, h and parent live in dense int arrays
+ * sized to the cell count. A generation stamp marks which entries belong to the current call,
+ * so the arrays are reused between searches without clearing. One engine is kept per thread.
+ * Only the solution path is materialised (as the usual Node chain).
+ */
+public final class GridSearchEngine {
+    private static final ThreadLocal<GridSearchEngine> LOCAL = new ThreadLocal<>();
+
+    private final int capacity;
+    private final int[] g;
+    private final int[] h;
+    private final int[] parentEdge;
+    private final int[] parent;
+    private final int[] stamp;
+    private final IndexedMinHeap open;
+    private int generation;
+
+    private GridSearchEngine(int capacity){
+        this.capacity = capacity;
+        g = new int[capacity];
+        h = new int[capacity];
+        parentEdge = new int[capacity];
+        parent = new int[capacity];
+        stamp = new int[capacity];
+        open = new IndexedMinHeap(capacity);
+    }
+
+    /** Engine for the calling thread, grown if the graph has more cells than it can hold. */
+    public static GridSearchEngine forGraph(GridGraph graph){
+        GridSearchEngine e = LOCAL.get();
+        if(e == null || e.capacity < graph.cellCount){
+            e = new GridSearchEngine(graph.cellCount);
+            LOCAL.set(e);
+        }
+        return e;
+    }
+
+    /**
+     * Best-first search from start to goal ordered by g + heuristic (pass null for UCS).
+     * Ties prefer the deeper node. Nodes are reopened when a cheaper path shows up,
+     * so an inconsistent heuristic still gives the same answers as GeneralSearch.
+     */
+    public GeneralSearch.Result search(GridGraph graph, int start, int goal, IntUnaryOperator heuristic){
+        return search(graph, start, goal, heuristic, SearchOptions.UNLIMITED);
+    }
+
+    /**
+     * As above, stopping with a limited Result once options says so; its partial route leads to
+     * the reached cell nearest the goal (by heuristic, else Manhattan distance).
+     */
+    public GeneralSearch.Result search(GridGraph graph, int start, int goal, IntUnaryOperator heuristic, SearchOptions options){
+        int gen = nextGeneration();
+        open.clear();
+        stamp[start] = gen;
+        g[start] = 0;
+        h[start] = heuristic == null ? 0 : heuristic.applyAsInt(start);
+        parent[start] = GridGraph.NONE;
+        open.push(start, key(h[start], 0));
+        int expanded = 0;
+        while(!open.isEmpty()){
+            int u = open.poll();
+            if(u == goal) return result(graph, start, goal, expanded);
+            if(options.stop(expanded)) return stopped(graph, start, goal, gen, heuristic != null, expanded);
+            expanded++;
+            int gu = g[u];
+            for(int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++){
+                int v = graph.edgeTarget(e);
+                int ng = gu + graph.edgeCost(e);
+                if(stamp[v] == gen){
+                    if(ng >= g[v]) continue;
+                } else {
+                    stamp[v] = gen;
+                    h[v] = heuristic == null ? 0 : heuristic.applyAsInt(v);
+                }
+                g[v] = ng;
+                parent[v] = u;
+                parentEdge[v] = e;
+                open.push(v, key(ng + h[v], ng));
+            }
+        }
+        return new GeneralSearch.Result(null, expanded);
+    }
+
+    private static long key(int f, int g){ return ((long) f << 32) | (Integer.MAX_VALUE - g); }
+
+    private int nextGeneration(){
+        if(++generation == Integer.MAX_VALUE){
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        return generation;
+    }
+
+    private GeneralSearch.Result result(GridGraph graph, int start, int goal, int expanded){
+        return new GeneralSearch.Result(path(graph, start, goal), expanded);
+    }
+
+    private GeneralSearch.Result stopped(GridGraph graph, int start, int goal, int gen, boolean informed, int expanded){
+        int near = start;
+        long best = Long.MAX_VALUE;
+        for(int c = 0; c < graph.cellCount; c++){
+            if(stamp[c] != gen) continue;
+            int d = informed ? h[c] : Math.abs(graph.x(c) - graph.x(goal)) + Math.abs(graph.y(c) - graph.y(goal));
+            long k = ((long) d << 32) | g[c];
+            if(k < best){ best = k; near = c; }
+        }
+        return new GeneralSearch.Result(null, expanded, true, path(graph, start, near));
+    }
+
+    private Node path(GridGraph graph, int start, int target){
+        int len = 0;
+        for(int c = target; c != start; c = parent[c]) len++;
+        int[] cells = new int[len + 1];
+        for(int c = target, i = len; i >= 0; c = parent[c], i--) cells[i] = c;
+
+        Node node = new Node(graph.position(start));
+        for(int i = 1; i <= len; i++){
+            int c = cells[i];
+            int e = parentEdge[c];
+            node = new Node(graph.position(c), node, graph.edgeOp(e), graph.edgeCost(e));
+        }
+        return node;
+    }
+}
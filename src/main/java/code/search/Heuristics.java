@@ -2,7 +2,7 @@ package code.search;
 
 import code.model.*;
 import code.delivery.DeliveryProblem;
-import java.util.List;
+import java.util.function.IntUnaryOperator;
 
 public final class Heuristics {
     private Heuristics(){}
@@ -13,23 +13,60 @@ public final class Heuristics {
 
     public static int deliveryAdmissible(DeliveryProblem p, Object state){
         Position pos = (Position) state;
-        return manhattan(pos, p.goal) * Math.max(1, p.grid.minEdgeCost());
+        return manhattan(pos, p.goal) * Math.max(1, p.graph.minEdgeCost());
     }
 
+    /**
+     * Walking costs at least minEdgeCost per step, a tunnel hop costs its length: the cheaper of
+     * walking straight and walking to a tunnel, hopping and walking on. Scans every tunnel, so
+     * searches on the compiled grid use precomputed() instead.
+     */
     public static int tunnelAware(DeliveryProblem p, Object state){
-        Position pos = (Position) state;
-        Position goal = p.goal;
-        int base = manhattan(pos, goal);
-        Grid grid = p.grid;
-        int best = base;
-        List<Position[]> tunnels = grid.getTunnels();
-        for(Position[] t : tunnels){
+        return tunnelAware((Position) state, p.goal, p.graph);
+    }
+
+    /** tunnelAware over cell ids of a compiled graph. */
+    public static int tunnelAware(GridGraph graph, int cell, int goal){
+        return tunnelAware(graph.position(cell), graph.position(goal), graph);
+    }
+
+    private static int tunnelAware(Position pos, Position goal, GridGraph graph){
+        int m = Math.max(1, graph.minEdgeCost());
+        int best = manhattan(pos, goal) * m;
+        for(Position[] t : graph.tunnels()){
+            int len = Math.max(1, manhattan(t[0], t[1]));
+            int via1 = (manhattan(pos, t[0]) + manhattan(t[1], goal)) * m + len;
+            int via2 = (manhattan(pos, t[1]) + manhattan(t[0], goal)) * m + len;
+            best = Math.min(best, Math.min(via1, via2));
+        }
+        return best;
+    }
+
+    /**
+     * Landmark + tunnel-matrix bound toward goal once the graph has its LandmarkHeuristic tables,
+     * O(#landmarks) per cell; tunnelAware until then, while they build in the background. Both
+     * are admissible and consistent, so optimal strategies find the same costs either way; the
+     * nodes expanded, tie-breaks and GREEDY's routes may change once the tables arrive.
+     */
+    public static IntUnaryOperator precomputed(GridGraph graph, int goal){
+        LandmarkHeuristic h = LandmarkHeuristic.ifBuilt(graph);
+        return h != null ? h.toward(goal) : c -> tunnelAware(graph, c, goal);
+    }
+
+    /**
+     * Unscaled tunnelAware: a lower bound for any costs >= 1, so it stays consistent while
+     * edges are edited (what incremental searches such as LpaStar need).
+     */
+    public static int tunnelDistance(GridGraph graph, int cell, int goal){
+        int x = graph.x(cell), y = graph.y(cell), gx = graph.x(goal), gy = graph.y(goal);
+        int best = Math.abs(x - gx) + Math.abs(y - gy);
+        for(Position[] t : graph.tunnels()){
             Position e1 = t[0], e2 = t[1];
             int len = Math.abs(e1.x - e2.x) + Math.abs(e1.y - e2.y);
-            int via1 = manhattan(pos, e1) + len + manhattan(e2, goal);
-            int via2 = manhattan(pos, e2) + len + manhattan(e1, goal);
+            int via1 = Math.abs(x - e1.x) + Math.abs(y - e1.y) + len + Math.abs(e2.x - gx) + Math.abs(e2.y - gy);
+            int via2 = Math.abs(x - e2.x) + Math.abs(y - e2.y) + len + Math.abs(e1.x - gx) + Math.abs(e1.y - gy);
             best = Math.min(best, Math.min(via1, via2));
         }
-        return best * Math.max(1, grid.minEdgeCost());
+        return best;
     }
 }
@@ -0,0 +1,519 @@
+package code.search;
+
+import code.model.Grid;
+import code.model.GridGraph;
+import code.model.Position;
+import java.util.*;
+
+/**
+ * HpaStar: hierarchical path-finding (HPA*) for large grids.
+ *
+ * The grid is cut into square clusters. Along every border between two clusters each run of
+ * crossable cells gets one transition (in its middle) or two (at its ends, for runs of 6+);
+ * the cells on both sides of a transition and every tunnel endpoint are abstract nodes.
+ * Per cluster the distances between its abstract nodes are precomputed by a Dijkstra that
+ * never leaves the cluster. A query links start and goal into their clusters, runs A* over
+ * the abstract graph (intra-cluster distances, border crossings, tunnel hops) and refines each
+ * intra-cluster hop with a search confined to that cluster. Routes are near-optimal: a
+ * crossing that is not a transition is never used.
+ *
+ * The compiled graph is diffed against the previous one before a query; only clusters with a
+ * changed edge (and neighbours whose shared border changed) are rebuilt. findAbstract() returns
+ * the waypoints only, refined segment by segment as they are asked for.
+ *
+ * refresh() runs under the instance lock; queries read each cluster's nodes and distances
+ * through one volatile reference, so a concurrent rebuild never mixes two builds. Queries under
+ * SearchOptions poll them per cluster rebuilt, abstract node expanded and hop refined; a refresh
+ * stopped that way leaves the remaining clusters to the next one.
+ */
+public final class HpaStar {
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+    private static final int INF = GridGraph.UNREACHABLE;
+    private static final int LONG_ENTRANCE = 6;
+    private static final byte REFINE = -1;
+    private static final int[] DX = {0, 0, -1, 1};   // GridGraph UP, DOWN, LEFT, RIGHT
+    private static final int[] DY = {-1, 1, 0, 0};
+
+    private final Grid grid;
+    private final int size;
+    private final int cw, ch;
+    private final Cluster[] clusters;
+    private final int[][] hBorder;        // (cx,cy)|(cx+1,cy): transition pairs left,right
+    private final int[][] vBorder;        // (cx,cy)|(cx,cy+1): transition pairs top,bottom
+    private final ThreadLocal<Local> local;
+    private volatile GridGraph graph;
+    private boolean pending;              // a stopped refresh left dirty clusters
+    private int rebuilt;
+
+    private static final class Cluster {
+        final int x0, y0, w, h;
+        volatile Table table = Table.EMPTY; // replaced whole by rebuild(), so queries outside the lock see one build
+        boolean dirty = true;
+        Cluster(int x0, int y0, int w, int h){ this.x0 = x0; this.y0 = y0; this.w = w; this.h = h; }
+        boolean contains(int x, int y){ return x >= x0 && y >= y0 && x < x0 + w && y < y0 + h; }
+        int indexOf(int cell){ return table.indexOf(cell); }
+    }
+
+    /** One build of a cluster's abstract nodes and the distances between them. */
+    private static final class Table {
+        static final Table EMPTY = new Table(new int[0], new int[0]);
+        final int[] nodes;                 // abstract cells, sorted
+        final int[] dist;                  // nodes^2: d(nodes[i], nodes[j]) inside the cluster
+        Table(int[] nodes, int[] dist){ this.nodes = nodes; this.dist = dist; }
+        int indexOf(int cell){ return Arrays.binarySearch(nodes, cell); }
+    }
+
+    /** Scratch arrays for searches confined to one cluster, one set per thread. */
+    private static final class Local {
+        final int[] dist, parent, stamp;
+        final byte[] op;
+        final IndexedMinHeap heap;
+        int gen;
+        Local(int n){
+            dist = new int[n]; parent = new int[n]; stamp = new int[n]; op = new byte[n];
+            heap = new IndexedMinHeap(n);
+        }
+    }
+
+    public HpaStar(Grid grid){ this(grid, DEFAULT_CLUSTER_SIZE); }
+
+    public HpaStar(Grid grid, int clusterSize){
+        if(clusterSize < 2) throw new IllegalArgumentException("Cluster size must be at least 2");
+        this.grid = grid;
+        this.size = clusterSize;
+        this.cw = (grid.width + size - 1) / size;
+        this.ch = (grid.height + size - 1) / size;
+        clusters = new Cluster[cw * ch];
+        for(int cy = 0; cy < ch; cy++){
+            for(int cx = 0; cx < cw; cx++){
+                int x0 = cx * size, y0 = cy * size;
+                clusters[cy*cw + cx] = new Cluster(x0, y0, Math.min(size, grid.width - x0), Math.min(size, grid.height - y0));
+            }
+        }
+        hBorder = new int[cw * ch][];
+        vBorder = new int[cw * ch][];
+        local = ThreadLocal.withInitial(() -> new Local(size * size));
+    }
+
+    /** Shared instance for grid (default cluster size), built on first use and held by the grid (Grid.derived). */
+    public static HpaStar forGrid(Grid grid){
+        return grid.derived(HpaStar.class, HpaStar::new);
+    }
+
+    public int clusterCount(){ return clusters.length; }
+
+    /** Clusters rebuilt so far (all of them on the first query, then only the edited ones). */
+    public synchronized int rebuiltClusters(){ return rebuilt; }
+
+    // ---- abstraction upkeep ----
+
+    /** Brings the abstraction up to date with the grid's current edges. */
+    public void refresh(){ refresh(SearchOptions.UNLIMITED); }
+
+    /** As above; false if options stopped it first, leaving the clusters not yet rebuilt dirty. */
+    synchronized boolean refresh(SearchOptions options){
+        GridGraph current = grid.graph();
+        GridGraph old = graph;
+        if(current == old && !pending) return true;
+        if(current != old){
+            if(old != null) markChanges(old, current);
+            graph = current;
+            List<Cluster> dirty = new ArrayList<>();
+            for(Cluster c : clusters) if(c.dirty) dirty.add(c);
+            boolean[] touched = new boolean[clusters.length];
+            for(Cluster c : dirty){
+                int cx = c.x0 / size, cy = c.y0 / size;
+                if(cx + 1 < cw) touched[cy*cw + cx + 1] |= updateBorder(cx, cy, true);
+                if(cx > 0) touched[cy*cw + cx - 1] |= updateBorder(cx - 1, cy, true);
+                if(cy + 1 < ch) touched[(cy + 1)*cw + cx] |= updateBorder(cx, cy, false);
+                if(cy > 0) touched[(cy - 1)*cw + cx] |= updateBorder(cx, cy - 1, false);
+            }
+            for(int i = 0; i < clusters.length; i++) if(touched[i]) clusters[i].dirty = true;
+        }
+        List<Cluster> stale = new ArrayList<>();
+        for(Cluster c : clusters) if(c.dirty) stale.add(c);
+        // clusters only read the borders and write their own tables, so they rebuild in parallel
+        stale.parallelStream().forEach(c -> {
+            if(options.stop(0)) return;
+            rebuild(c);
+            c.dirty = false;
+        });
+        pending = false;
+        for(Cluster c : stale){
+            if(c.dirty) pending = true;
+            else rebuilt++;
+        }
+        return !pending;
+    }
+
+    private void markChanges(GridGraph old, GridGraph current){
+        for(int c = 0; c < current.cellCount; c++){
+            if(old.tunnelPartner(c) != current.tunnelPartner(c)) clusterAt(current, c).dirty = true;
+            for(int d = 0; d < 4; d++){
+                if(old.dirCost(c, d) == current.dirCost(c, d)) continue;
+                clusterAt(current, c).dirty = true;
+                int q = current.step(c, d);
+                if(q != GridGraph.NONE) clusterAt(current, q).dirty = true;
+            }
+        }
+    }
+
+    /** Recomputes the transitions on one border; true when they changed. */
+    private boolean updateBorder(int cx, int cy, boolean horizontal){
+        Cluster a = clusters[cy*cw + cx];
+        int len = horizontal ? a.h : a.w;
+        Set<Integer> picked = new TreeSet<>();
+        for(boolean outward : new boolean[]{true, false}){
+            int runStart = -1;
+            for(int i = 0; i <= len; i++){
+                boolean open = i < len && crossable(a, horizontal, i, outward);
+                if(runStart >= 0 && (!open || !alongBorder(a, horizontal, i))){
+                    int runEnd = i - 1;
+                    if(runEnd - runStart + 1 >= LONG_ENTRANCE){
+                        picked.add(runStart);
+                        picked.add(runEnd);
+                    } else {
+                        picked.add((runStart + runEnd) / 2);
+                    }
+                    runStart = -1;
+                }
+                if(open && runStart < 0) runStart = i;
+            }
+        }
+        int[] t = new int[picked.size() * 2];
+        int n = 0;
+        for(int i : picked){ t[n++] = inside(a, horizontal, i); t[n++] = outside(a, horizontal, i); }
+        int[][] borders = horizontal ? hBorder : vBorder;
+        boolean changed = !Arrays.equals(borders[cy*cw + cx], t);
+        borders[cy*cw + cx] = t;
+        return changed;
+    }
+
+    /** The border can be crossed at i (outward: from a into its neighbour). */
+    private boolean crossable(Cluster a, boolean horizontal, int i, boolean outward){
+        int out = horizontal ? GridGraph.RIGHT : GridGraph.DOWN, back = horizontal ? GridGraph.LEFT : GridGraph.UP;
+        return outward ? graph.dirCost(inside(a, horizontal, i), out) > 0 : graph.dirCost(outside(a, horizontal, i), back) > 0;
+    }
+
+    /** Cells i-1 and i are connected both ways on both sides, so one transition serves the run. */
+    private boolean alongBorder(Cluster a, boolean horizontal, int i){
+        if(i == 0 || i >= (horizontal ? a.h : a.w)) return false;
+        int fwd = horizontal ? GridGraph.DOWN : GridGraph.RIGHT, back = horizontal ? GridGraph.UP : GridGraph.LEFT;
+        int in0 = inside(a, horizontal, i - 1), in1 = inside(a, horizontal, i);
+        int out0 = outside(a, horizontal, i - 1), out1 = outside(a, horizontal, i);
+        return graph.dirCost(in0, fwd) > 0 && graph.dirCost(in1, back) > 0
+                && graph.dirCost(out0, fwd) > 0 && graph.dirCost(out1, back) > 0;
+    }
+
+    private int inside(Cluster a, boolean horizontal, int i){
+        return horizontal ? graph.cell(a.x0 + a.w - 1, a.y0 + i) : graph.cell(a.x0 + i, a.y0 + a.h - 1);
+    }
+
+    private int outside(Cluster a, boolean horizontal, int i){
+        return horizontal ? graph.cell(a.x0 + a.w, a.y0 + i) : graph.cell(a.x0 + i, a.y0 + a.h);
+    }
+
+    private void rebuild(Cluster c){
+        int cx = c.x0 / size, cy = c.y0 / size;
+        Set<Integer> cells = new TreeSet<>();
+        addInside(cells, c, cx < cw - 1 ? hBorder[cy*cw + cx] : null);
+        addInside(cells, c, cx > 0 ? hBorder[cy*cw + cx - 1] : null);
+        addInside(cells, c, cy < ch - 1 ? vBorder[cy*cw + cx] : null);
+        addInside(cells, c, cy > 0 ? vBorder[(cy - 1)*cw + cx] : null);
+        for(int y = c.y0; y < c.y0 + c.h; y++){
+            for(int x = c.x0; x < c.x0 + c.w; x++){
+                if(graph.tunnelPartner(graph.cell(x, y)) != GridGraph.NONE) cells.add(graph.cell(x, y));
+            }
+        }
+        int k = cells.size();
+        int[] nodes = new int[k];
+        int i = 0;
+        for(int cell : cells) nodes[i++] = cell;
+        int[] dist = new int[k * k];
+        for(i = 0; i < k; i++){
+            Local l = localDijkstra(c, nodes[i], false);
+            for(int j = 0; j < k; j++) dist[i*k + j] = l.stamp[index(c, nodes[j])] == l.gen ? l.dist[index(c, nodes[j])] : INF;
+        }
+        c.table = new Table(nodes, dist);
+    }
+
+    private void addInside(Set<Integer> cells, Cluster c, int[] pairs){
+        if(pairs == null) return;
+        for(int cell : pairs) if(c.contains(graph.x(cell), graph.y(cell))) cells.add(cell);
+    }
+
+    private Cluster clusterAt(GridGraph g, int cell){ return clusters[g.y(cell) / size * cw + g.x(cell) / size]; }
+
+    private static int index(Cluster c, int x, int y){ return (y - c.y0) * c.w + (x - c.x0); }
+
+    private int index(Cluster c, int cell){ return index(c, graph.x(cell), graph.y(cell)); }
+
+    // ---- searches confined to one cluster ----
+
+    /** Dijkstra from cell (to cell when reverse) that never leaves c; results in the thread's scratch. */
+    private Local localDijkstra(Cluster c, int root, boolean reverse){
+        Local l = local.get();
+        int gen = ++l.gen;
+        l.heap.clear();
+        int r = index(c, root);
+        l.stamp[r] = gen;
+        l.dist[r] = 0;
+        l.heap.push(r, 0);
+        while(!l.heap.isEmpty()){
+            int u = l.heap.poll();
+            int lx = u % c.w, ly = u / c.w, uc = graph.cell(c.x0 + lx, c.y0 + ly);
+            for(int d = 0; d < 4; d++){
+                int nx = lx + DX[d], ny = ly + DY[d];
+                if(nx < 0 || ny < 0 || nx >= c.w || ny >= c.h) continue;
+                int v = uc + DX[d] + DY[d] * graph.width;
+                int w = reverse ? graph.dirCost(v, reverse(d)) : graph.dirCost(uc, d);
+                if(w <= 0) continue;
+                int vi = ny * c.w + nx, nd = l.dist[u] + w;
+                if(l.stamp[vi] == gen && nd >= l.dist[vi]) continue;
+                l.stamp[vi] = gen;
+                l.dist[vi] = nd;
+                l.parent[vi] = u;
+                l.op[vi] = (byte) d;
+                l.heap.push(vi, nd);
+            }
+        }
+        return l;
+    }
+
+    private static int reverse(int d){ return d ^ 1; }
+
+    /** Cheapest from -> to inside c as single moves appended to cells/ops; false if there is none. */
+    private boolean refineInside(Cluster c, int from, int to, List<Integer> cells, List<Byte> ops){
+        Local l = localDijkstra(c, from, false);
+        int t = index(c, to);
+        if(l.stamp[t] != l.gen) return false;
+        int s = index(c, from);
+        int mark = cells.size();
+        for(int v = t; v != s; v = l.parent[v]){
+            cells.add(graph.cell(c.x0 + v % c.w, c.y0 + v / c.w));
+            ops.add(l.op[v]);
+        }
+        Collections.reverse(cells.subList(mark, cells.size()));
+        Collections.reverse(ops.subList(mark, ops.size()));
+        return true;
+    }
+
+    // ---- queries ----
+
+    /** Waypoints of a route start -> goal; each hop is refined into cells only when asked for. */
+    public final class Path {
+        public final int cost;
+        /** Abstract nodes expanded to find it. */
+        public final int expanded;
+        private final int[] waypoints;
+        private final byte[] ops;         // move into waypoint i (a direction, TUNNEL) or REFINE
+        private final List<List<Position>> segments;
+
+        private Path(int cost, int expanded, int[] waypoints, byte[] ops){
+            this.cost = cost;
+            this.expanded = expanded;
+            this.waypoints = waypoints;
+            this.ops = ops;
+            this.segments = new ArrayList<>(Collections.nCopies(Math.max(0, waypoints.length - 1), (List<Position>) null));
+        }
+
+        public int hops(){ return waypoints.length - 1; }
+
+        public List<Position> waypoints(){
+            List<Position> out = new ArrayList<>(waypoints.length);
+            for(int c : waypoints) out.add(graph.position(c));
+            return out;
+        }
+
+        /** Cells of hop i, both waypoints included; empty if the grid changed and it no longer exists. */
+        public synchronized List<Position> segment(int i){
+            List<Position> s = segments.get(i);
+            if(s == null){
+                s = new ArrayList<>();
+                List<Integer> cells = new ArrayList<>();
+                List<Byte> moves = new ArrayList<>();
+                if(hop(i, cells, moves)){
+                    s.add(graph.position(waypoints[i]));
+                    for(int c : cells) s.add(graph.position(c));
+                }
+                segments.set(i, s);
+            }
+            return s;
+        }
+
+        /** The route cell by cell, refining each hop when the walk reaches it. */
+        public Iterator<Position> cells(){
+            return new Iterator<Position>(){
+                int hop = -1, at = 0;
+                List<Position> seg = Collections.singletonList(graph.position(waypoints[0]));
+                @Override public boolean hasNext(){
+                    while(at >= seg.size() && hop + 1 < hops()){
+                        seg = segment(++hop);
+                        at = 1;
+                        if(seg.isEmpty()) hop = hops(); // hop vanished after an edit: the walk ends here
+                    }
+                    return at < seg.size();
+                }
+                @Override public Position next(){
+                    if(!hasNext()) throw new NoSuchElementException();
+                    return seg.get(at++);
+                }
+            };
+        }
+
+        /** Everything refined at once, as a search result. */
+        public GeneralSearch.Result refine(){ return refine(SearchOptions.UNLIMITED); }
+
+        /** As above, a limited result if options stops it between hops. */
+        public GeneralSearch.Result refine(SearchOptions options){
+            List<Integer> cells = new ArrayList<>();
+            List<Byte> moves = new ArrayList<>();
+            for(int i = 0; i < hops(); i++){
+                if(options.stop(expanded) || !refresh(options)) return new GeneralSearch.Result(null, expanded, true, null);
+                if(!hop(i, cells, moves)) return new GeneralSearch.Result(null, expanded);
+            }
+            int prev = waypoints[0];
+            Node node = new Node(graph.position(prev));
+            for(int i = 0; i < cells.size(); i++){
+                int c = cells.get(i), op = moves.get(i);
+                int w = op == GridGraph.TUNNEL ? graph.tunnelCost(prev, c) : graph.dirCost(prev, op);
+                node = new Node(graph.position(c), node, op, w);
+                prev = c;
+            }
+            return new GeneralSearch.Result(node, expanded);
+        }
+
+        private boolean hop(int i, List<Integer> cells, List<Byte> moves){
+            int from = waypoints[i], to = waypoints[i + 1];
+            if(ops[i + 1] != REFINE){
+                cells.add(to);
+                moves.add(ops[i + 1]);
+                return true;
+            }
+            refresh();
+            return refineInside(clusterAt(graph, from), from, to, cells, moves);
+        }
+    }
+
+    /** Refined route start -> goal (near-optimal), null node when there is none. */
+    public GeneralSearch.Result search(Position start, Position goal){
+        return search(start, goal, SearchOptions.UNLIMITED);
+    }
+
+    /** As above, a limited result (without a partial route) once options says so. */
+    public GeneralSearch.Result search(Position start, Position goal, SearchOptions options){
+        Stop stop = new Stop();
+        Path p = findAbstract(start, goal, options, stop);
+        if(p == null) return new GeneralSearch.Result(null, stop.expanded, stop.hit, null);
+        return p.refine(options);
+    }
+
+    /** Abstract route start -> goal, or null when there is none (or an end lies off the grid). */
+    public Path findAbstract(Position start, Position goal){
+        return findAbstract(start, goal, SearchOptions.UNLIMITED, new Stop());
+    }
+
+    /** Why a query under options ended without a Path. */
+    private static final class Stop {
+        boolean hit;                      // options stopped it
+        int expanded;
+    }
+
+    /** As above; null also when options stopped it, which stop then records. */
+    private Path findAbstract(Position start, Position goal, SearchOptions options, Stop stop){
+        if(!refresh(options)){ stop.hit = true; return null; }
+        GridGraph g = graph;
+        int s = g.cellOf(start), t = g.cellOf(goal);
+        if(s == GridGraph.NONE || t == GridGraph.NONE) return null;
+        if(s == t) return new Path(0, 0, new int[]{s}, new byte[]{REFINE});
+
+        Cluster sc = clusterAt(g, s), tc = clusterAt(g, t);
+        Map<Integer, Integer> fromStart = localRow(sc, s, false, t);
+        Map<Integer, Integer> toGoal = localRow(tc, t, true, GridGraph.NONE);
+
+        LongLongMap best = new LongLongMap();
+        LongLongMap parent = new LongLongMap();       // cell -> parent cell << 8 | op into the cell
+        PriorityQueue<long[]> open = new PriorityQueue<>(Comparator.comparingLong((long[] e) -> e[0]));
+        best.put(s, 0);
+        open.add(new long[]{key(Heuristics.tunnelAware(g, s, t), 0), s});
+        int expanded = 0;
+        while(!open.isEmpty()){
+            long[] top = open.poll();
+            int u = (int) top[1];
+            int gu = Integer.MAX_VALUE - (int) (top[0] & 0xFFFFFFFFL);
+            if(gu != best.get(u, INF)) continue;
+            if(u == t) return path(s, t, gu, expanded, parent);
+            if(options.stop(expanded)){ stop.hit = true; stop.expanded = expanded; return null; }
+            expanded++;
+            if(u == s){
+                for(Map.Entry<Integer, Integer> e : fromStart.entrySet()){
+                    if(e.getKey() != s) relax(g, u, e.getKey(), gu + e.getValue(), REFINE, t, best, parent, open);
+                }
+            }
+            Cluster uc = clusterAt(g, u);
+            Table ut = uc.table;
+            int ui = ut.indexOf(u);
+            if(ui >= 0){
+                int k = ut.nodes.length;
+                for(int j = 0; j < k; j++){
+                    int d = ut.dist[ui*k + j];
+                    if(j != ui && d < INF) relax(g, u, ut.nodes[j], gu + d, REFINE, t, best, parent, open);
+                }
+                for(int d = 0; d < 4; d++){
+                    int v = g.step(u, d);
+                    if(v == GridGraph.NONE || g.dirCost(u, d) <= 0 || clusterAt(g, v) == uc || clusterAt(g, v).indexOf(v) < 0) continue;
+                    relax(g, u, v, gu + g.dirCost(u, d), (byte) d, t, best, parent, open);
+                }
+                int p = g.tunnelPartner(u);
+                if(p != GridGraph.NONE) relax(g, u, p, gu + g.tunnelCost(u, p), GridGraph.TUNNEL, t, best, parent, open);
+            }
+            if(uc == tc){
+                Integer d = toGoal.get(u);
+                if(d != null) relax(g, u, t, gu + d, REFINE, t, best, parent, open);
+            }
+        }
+        stop.expanded = expanded;
+        return null;
+    }
+
+    private static long key(int f, int g){ return ((long) f << 32) | (Integer.MAX_VALUE - g); }
+
+    private void relax(GridGraph g, int u, int v, int ng, byte op, int goal, LongLongMap best,
+                       LongLongMap parent, PriorityQueue<long[]> open){
+        if(best.get(v, INF) <= ng) return;
+        best.put(v, ng);
+        parent.put(v, (long) u << 8 | (op & 0xFF));
+        open.add(new long[]{key(ng + Heuristics.tunnelAware(g, v, goal), ng), v});
+    }
+
+    /** Distances inside c from cell (to cell when reverse) to c's abstract nodes and to extra if it is in c. */
+    private Map<Integer, Integer> localRow(Cluster c, int cell, boolean reverse, int extra){
+        Local l = localDijkstra(c, cell, reverse);
+        Map<Integer, Integer> row = new HashMap<>();
+        for(int v = 0; v < c.w * c.h; v++){
+            if(l.stamp[v] != l.gen) continue;
+            int vc = graph.cell(c.x0 + v % c.w, c.y0 + v / c.w);
+            if(vc == extra || c.indexOf(vc) >= 0) row.put(vc, l.dist[v]);
+        }
+        return row;
+    }
+
+    private Path path(int s, int t, int cost, int expanded, LongLongMap parent){
+        List<Integer> cells = new ArrayList<>();
+        List<Byte> ops = new ArrayList<>();
+        for(int c = t; c != s; ){
+            long p = parent.get(c, GridGraph.NONE);
+            cells.add(c);
+            ops.add((byte) p);
+            c = (int) (p >> 8);
+        }
+        cells.add(s);
+        ops.add(REFINE);
+        Collections.reverse(cells);
+        Collections.reverse(ops);
+        int[] w = new int[cells.size()];
+        byte[] o = new byte[ops.size()];
+        for(int i = 0; i < w.length; i++){ w[i] = cells.get(i); o[i] = ops.get(i); }
+        return new Path(cost, expanded, w, o);
+    }
+}
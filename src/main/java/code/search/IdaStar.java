@@ -0,0 +1,207 @@
+package code.search;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * IdaStar: iterative deepening on any Problem, holding only the current path.
+ *
+ *  idaStar   - cost-bounded IDA*: depth-first passes that cut off where g + h exceeds the bound,
+ *              which then grows to the least f that was cut off. Optimal for an admissible h.
+ *  deepening - the same on depth with h = 0, i.e. iterative deepening search (fewest moves).
+ *
+ * Each pass keeps the least g (or depth) it has reached every state with and skips a state
+ * reached again no cheaper, which also rules out cycles; it also skips a state reached more
+ * dearly than the previous pass reached it, since the cheaper path is still within the bound.
+ * Passes are thus about linear in the states within their bound instead of exponential in the
+ * routes to them. The g values live in a BestG table: three ints per state for problems with a
+ * stateIndex (DeliveryProblem: per grid cell), otherwise a hash table of at most MAX_SLOTS
+ * entries that forgets states once full, which only weakens the pruning. There is no depth cap;
+ * a pass that cuts nothing off proves the goal unreachable. Options without a node budget stop
+ * after SearchOptions.deepeningBudget expansions.
+ */
+public final class IdaStar {
+    /** Entries the hash table of a problem without a stateIndex grows to. */
+    public static final int MAX_SLOTS = 1 << 20;
+
+    private static final int INF = Integer.MAX_VALUE;
+
+    private IdaStar(){}
+
+    /** Least-cost route by IDA* under h, which must be admissible. */
+    public static GeneralSearch.Result idaStar(Problem problem, ToIntFunction<Object> h, SearchOptions options){
+        return search(problem, h, false, options.hasLimits() ? h : null, options);
+    }
+
+    /** Fewest-moves route by iterative deepening; a limited result's partial is nearest by near (may be null). */
+    public static GeneralSearch.Result deepening(Problem problem, ToIntFunction<Object> near, SearchOptions options){
+        return search(problem, s -> 0, true, options.hasLimits() ? near : null, options);
+    }
+
+    private static GeneralSearch.Result search(Problem problem, ToIntFunction<Object> h, boolean byDepth,
+                                               ToIntFunction<Object> near, SearchOptions options){
+        Node root = new Node(problem.initialState());
+        List<Successors> succ = new ArrayList<>();
+        List<Node> path = new ArrayList<>();
+        int[] next = new int[16];
+        BestG best = new BestG(problem);
+        long budget = options.maxExpanded() == Long.MAX_VALUE ? options.deepeningBudget() : Long.MAX_VALUE;
+        Node closest = null;
+        int closestKey = INF;
+        int expanded = 0;
+        int bound = h.applyAsInt(root.state);
+        while(true){
+            int cutoff = INF;
+            path.clear();
+            path.add(root);
+            best.put(root.state, 0);
+            boolean entering = true;
+            while(!path.isEmpty()){
+                int d = path.size() - 1;
+                Node n = path.get(d);
+                if(entering){
+                    if(problem.goalTest(n.state)) return new GeneralSearch.Result(n, expanded);
+                    if(options.stop(expanded) || expanded >= budget) return new GeneralSearch.Result(null, expanded, true, closest);
+                    if(near != null){
+                        int k = near.applyAsInt(n.state);
+                        if(closest == null || k < closestKey || (k == closestKey && n.pathCost < closest.pathCost)){ closest = n; closestKey = k; }
+                    }
+                    expanded++;
+                    if(succ.size() == d) succ.add(new Successors());
+                    if(next.length == d) next = Arrays.copyOf(next, d * 2);
+                    problem.expand(n.state, succ.get(d));
+                    next[d] = 0;
+                }
+                Successors s = succ.get(d);
+                entering = false;
+                while(next[d] < s.size()){
+                    int i = next[d]++;
+                    Object state = s.state(i);
+                    int g = byDepth ? n.depth + 1 : n.pathCost + s.cost(i);
+                    if(best.prune(state, g)) continue;
+                    long f = (long) g + h.applyAsInt(state);
+                    if(f > bound){
+                        cutoff = (int) Math.min(cutoff, f);
+                        continue;
+                    }
+                    path.add(new Node(state, n, s.op(i), s.cost(i)));
+                    best.put(state, g);
+                    entering = true;
+                    break;
+                }
+                if(!entering) path.remove(d);
+            }
+            if(cutoff == INF) return new GeneralSearch.Result(null, expanded);
+            bound = cutoff;
+            best.nextPass();
+        }
+    }
+
+    /**
+     * Least g per state in this pass and the one before, told apart by a pass stamp so that no
+     * pass clears the table. Dense problems get one slot per stateIndex; others a hash table,
+     * PROBES slots per state, that doubles up to MAX_SLOTS and then overwrites a state's first
+     * slot. A forgotten entry only prunes less: g grows along every cycle, so the bound still
+     * ends each pass.
+     */
+    private static final class BestG {
+        private static final int PROBES = 8;
+
+        private final Problem problem;
+        private final boolean dense;
+        private Object[] keys;
+        private int[] stamp, g, prev;
+        private int pass = 2;                      // stamp 0 = empty, pass - 1 = the pass before
+
+        BestG(Problem problem){
+            this.problem = problem;
+            int n = problem.stateCount();
+            dense = n >= 0;
+            allocate(dense ? n : 1024);
+        }
+
+        private void allocate(int n){
+            keys = dense ? null : new Object[n];
+            stamp = new int[n];
+            g = new int[n];
+            prev = new int[n];
+        }
+
+        void nextPass(){
+            if(pass == Integer.MAX_VALUE){
+                for(int i = 0; i < stamp.length; i++) stamp[i] = stamp[i] == pass ? 1 : 0;
+                pass = 1;
+            }
+            pass++;
+        }
+
+        /** True if this pass reached state no dearer than g, or the pass before more cheaply. */
+        boolean prune(Object state, int g){
+            int i = find(state);
+            if(i < 0) return false;
+            if(stamp[i] == pass) return this.g[i] <= g || prev[i] < g;
+            return stamp[i] == pass - 1 && this.g[i] < g;
+        }
+
+        void put(Object state, int v){
+            int i = dense ? problem.stateIndex(state) : claim(state);
+            if(i < 0) return;
+            if(stamp[i] != pass){
+                prev[i] = stamp[i] == pass - 1 ? g[i] : INF;
+                stamp[i] = pass;
+            }
+            g[i] = v;
+        }
+
+        private int find(Object state){
+            if(dense) return problem.stateIndex(state);
+            int mask = keys.length - 1;
+            for(int k = 0, i = home(state); k < PROBES; k++, i = (i + 1) & mask){
+                if(stamp[i] >= pass - 1 && state.equals(keys[i])) return i;
+            }
+            return -1;
+        }
+
+        private int claim(Object state){
+            int i = find(state);
+            if(i >= 0) return i;
+            while(true){
+                int mask = keys.length - 1, h = home(state);
+                for(int k = 0, j = h; k < PROBES; k++, j = (j + 1) & mask){
+                    if(stamp[j] < pass - 1) return take(j, state);
+                }
+                if(keys.length >= MAX_SLOTS) return take(h, state);
+                grow();
+            }
+        }
+
+        private int take(int i, Object state){
+            keys[i] = state;
+            stamp[i] = 0;
+            return i;
+        }
+
+        private void grow(){
+            Object[] oldKeys = keys;
+            int[] oldStamp = stamp, oldG = g, oldPrev = prev;
+            allocate(keys.length * 2);
+            int mask = keys.length - 1;
+            for(int i = 0; i < oldKeys.length; i++){
+                if(oldStamp[i] < pass - 1) continue;
+                for(int k = 0, j = home(oldKeys[i]); k < PROBES; k++, j = (j + 1) & mask){
+                    if(stamp[j] != 0) continue;
+                    keys[j] = oldKeys[i];
+                    stamp[j] = oldStamp[i];
+                    g[j] = oldG[i];
+                    prev[j] = oldPrev[i];
+                    break;
+                }
+            }
+        }
+
+        private int home(Object state){
+            int h = state.hashCode() * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & (keys.length - 1);
+        }
+    }
+}
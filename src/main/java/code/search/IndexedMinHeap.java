@@ -0,0 +1,114 @@
+package code.search;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap over int ids in [0, capacity) with long priorities.
+ * push() doubles as decrease-key; polled ids leave the index, so clear() only
+ * touches the ids still queued and the heap can be reused across searches.
+ */
+public final class IndexedMinHeap {
+    private final int[] heap;
+    private final int[] index;   // position of id in heap, -1 when absent
+    private final long[] key;
+    private int size;
+
+    public IndexedMinHeap(int capacity){
+        heap = new int[capacity];
+        index = new int[capacity];
+        key = new long[capacity];
+        Arrays.fill(index, -1);
+    }
+
+    public int capacity(){ return heap.length; }
+    public int size(){ return size; }
+    public boolean isEmpty(){ return size == 0; }
+    public boolean contains(int id){ return index[id] >= 0; }
+    public long key(int id){ return key[id]; }
+    public int peek(){ return heap[0]; }
+    public long minKey(){ return key[heap[0]]; }
+    /** The id at heap position i (0 <= i < size), for walking the queued ids in no particular order. */
+    public int at(int i){ return heap[i]; }
+
+    /** Inserts id, or lowers its key if already queued with a larger one. */
+    public void push(int id, long k){
+        int i = index[id];
+        if(i >= 0){
+            if(k < key[id]){ key[id] = k; up(i); }
+            return;
+        }
+        key[id] = k;
+        heap[size] = id;
+        index[id] = size;
+        up(size++);
+    }
+
+    /** Sets the key of a queued id in either direction, inserting it if absent. */
+    public void update(int id, long k){
+        int i = index[id];
+        if(i < 0){ push(id, k); return; }
+        long old = key[id];
+        key[id] = k;
+        if(k < old) up(i); else down(i);
+    }
+
+    public int poll(){
+        int top = heap[0];
+        removeAt(0);
+        return top;
+    }
+
+    public void remove(int id){
+        int i = index[id];
+        if(i >= 0) removeAt(i);
+    }
+
+    public void clear(){
+        for(int i = 0; i < size; i++) index[heap[i]] = -1;
+        size = 0;
+    }
+
+    private void removeAt(int i){
+        int id = heap[i];
+        index[id] = -1;
+        size--;
+        if(i == size) return;
+        int last = heap[size];
+        heap[i] = last;
+        index[last] = i;
+        if(i > 0 && key[last] < key[heap[(i - 1) >>> 1]]) up(i); else down(i);
+    }
+
+    private void up(int i){
+        int id = heap[i];
+        long k = key[id];
+        while(i > 0){
+            int p = (i - 1) >>> 1;
+            int pid = heap[p];
+            if(key[pid] <= k) break;
+            heap[i] = pid;
+            index[pid] = i;
+            i = p;
+        }
+        heap[i] = id;
+        index[id] = i;
+    }
+
+    private void down(int i){
+        int id = heap[i];
+        long k = key[id];
+        int half = size >>> 1;
+        while(i < half){
+            int c = 2*i + 1;
+            int r = c + 1;
+            if(r < size && key[heap[r]] < key[heap[c]]) c = r;
+            int cid = heap[c];
+            if(k <= key[cid]) break;
+            heap[i] = cid;
+            index[cid] = i;
+            i = c;
+        }
+        heap[i] = id;
+        index[id] = i;
+    }
+}
@@ -0,0 +1,230 @@
+package code.search;
+
+import code.model.GridGraph;
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * JumpPointSearch: A* over jump points of a compiled GridGraph (4-neighbour JPS).
+ *
+ * Among equal-cost routes only the canonical one is followed: horizontal moves before vertical
+ * ones. A vertical move therefore only continues straight, unless turning sideways is strictly
+ * cheaper than the horizontal-first detour through the previous row (a forced neighbour; this is
+ * where blocked and non-uniform edges fall back to ordinary expansion). Straight runs are scanned
+ * without touching the open list and stop at the goal, at tunnel endpoints (always jump points,
+ * the hop restarts the canonical order) and at forced cells. Costs match ASTAR.
+ *
+ * A cell can be reached with the same g from several directions; a per-cell mask of directions
+ * still to expand makes sure every one of them gets expanded. Arrays are generation-stamped and
+ * kept per thread like GridSearchEngine.
+ */
+public final class JumpPointSearch {
+    private static final ThreadLocal<JumpPointSearch> LOCAL = new ThreadLocal<>();
+
+    private static final int V = (1 << GridGraph.UP) | (1 << GridGraph.DOWN);
+    private static final int T = 1 << GridGraph.TUNNEL;
+    private static final int ALL = V | (1 << GridGraph.LEFT) | (1 << GridGraph.RIGHT) | T;
+    private static final int[] REVERSE = {GridGraph.DOWN, GridGraph.UP, GridGraph.RIGHT, GridGraph.LEFT};
+
+    private final int capacity;
+    private final int[] g;
+    private final int[] h;
+    private final int[] parent;
+    private final byte[] parentOp;        // direction of the straight run (or TUNNEL) that reached the cell
+    private final byte[] pending;         // directions still to expand at the current g
+    private final byte[] done;            // directions already expanded at the current g
+    private final int[] stamp;
+    private final IndexedMinHeap open;
+    private int generation;
+
+    private GridGraph graph;
+    private int goal;
+    private int jumpCost;                 // cost of the last successful jump
+
+    private JumpPointSearch(int capacity){
+        this.capacity = capacity;
+        g = new int[capacity];
+        h = new int[capacity];
+        parent = new int[capacity];
+        parentOp = new byte[capacity];
+        pending = new byte[capacity];
+        done = new byte[capacity];
+        stamp = new int[capacity];
+        open = new IndexedMinHeap(capacity);
+    }
+
+    /** Engine for the calling thread, grown if the graph has more cells than it can hold. */
+    public static JumpPointSearch forGraph(GridGraph graph){
+        JumpPointSearch e = LOCAL.get();
+        if(e == null || e.capacity < graph.cellCount){
+            e = new JumpPointSearch(graph.cellCount);
+            LOCAL.set(e);
+        }
+        return e;
+    }
+
+    /** Cheapest route start -> goal; heuristic must be admissible. nodesExpanded counts jump points. */
+    public GeneralSearch.Result search(GridGraph graph, int start, int goal, IntUnaryOperator heuristic){
+        return search(graph, start, goal, heuristic, SearchOptions.UNLIMITED);
+    }
+
+    /**
+     * As above, stopping with a limited Result once options says so; its partial route leads to
+     * the reached jump point nearest the goal by heuristic.
+     */
+    public GeneralSearch.Result search(GridGraph graph, int start, int goal, IntUnaryOperator heuristic, SearchOptions options){
+        this.graph = graph;
+        this.goal = goal;
+        int gen = nextGeneration();
+        open.clear();
+        stamp[start] = gen;
+        g[start] = 0;
+        h[start] = heuristic.applyAsInt(start);
+        parent[start] = GridGraph.NONE;
+        pending[start] = (byte) ALL;
+        done[start] = 0;
+        open.push(start, key(h[start], 0));
+        int expanded = 0;
+        while(!open.isEmpty()){
+            int u = open.poll();
+            if(u == goal) return new GeneralSearch.Result(path(start, goal), expanded);
+            int dirs = pending[u] & ~done[u];
+            done[u] |= pending[u];
+            pending[u] = 0;
+            if(dirs == 0) continue;
+            if(options.stop(expanded)) return stopped(start, gen, expanded);
+            expanded++;
+            for(int d = GridGraph.UP; d <= GridGraph.RIGHT; d++){
+                if((dirs & (1 << d)) == 0) continue;
+                int j = d <= GridGraph.DOWN ? jumpVertical(u, d) : jumpHorizontal(u, d);
+                if(j != GridGraph.NONE) relax(u, j, d, g[u] + jumpCost, gen, heuristic);
+            }
+            int p = graph.tunnelPartner(u);
+            if((dirs & T) != 0 && p != GridGraph.NONE) relax(u, p, GridGraph.TUNNEL, g[u] + graph.tunnelCost(u, p), gen, heuristic);
+        }
+        return new GeneralSearch.Result(null, expanded);
+    }
+
+    private void relax(int u, int v, int op, int ng, int gen, IntUnaryOperator heuristic){
+        int dirs = arrivalDirections(v, op);
+        if(stamp[v] != gen){
+            stamp[v] = gen;
+            h[v] = heuristic.applyAsInt(v);
+        } else if(ng > g[v]){
+            return;
+        } else if(ng == g[v]){
+            int extra = dirs & ~done[v] & ~pending[v];
+            if(extra == 0) return;
+            pending[v] = (byte) (pending[v] | extra);
+            open.push(v, key(ng + h[v], ng));
+            return;
+        }
+        g[v] = ng;
+        parent[v] = u;
+        parentOp[v] = (byte) op;
+        pending[v] = (byte) dirs;
+        done[v] = 0;
+        open.push(v, key(ng + h[v], ng));
+    }
+
+    /** Directions a canonical route may leave v by, given how it arrived. */
+    private int arrivalDirections(int v, int op){
+        if(op == GridGraph.TUNNEL) return ALL;
+        int tunnel = graph.tunnelPartner(v) != GridGraph.NONE ? T : 0;
+        if(op == GridGraph.LEFT || op == GridGraph.RIGHT) return ALL & ~(1 << REVERSE[op]);
+        int prev = graph.step(v, REVERSE[op]);
+        int dirs = (1 << op) | tunnel;
+        if(forced(prev, v, op, GridGraph.LEFT)) dirs |= 1 << GridGraph.LEFT;
+        if(forced(prev, v, op, GridGraph.RIGHT)) dirs |= 1 << GridGraph.RIGHT;
+        return dirs;
+    }
+
+    /** Side move out of n (reached from p going d) that the horizontal-first detour via p's side cannot match. */
+    private boolean forced(int p, int n, int d, int side){
+        int out = graph.dirCost(n, side);
+        if(out <= 0) return false;
+        int a = graph.dirCost(p, side);
+        if(a <= 0) return true;
+        int b = graph.dirCost(graph.step(p, side), d);
+        if(b <= 0) return true;
+        return a + b > graph.dirCost(p, d) + out;
+    }
+
+    /** Runs straight up/down from c; the first jump point, or NONE at a dead end. Sets jumpCost. */
+    private int jumpVertical(int c, int d){
+        int cost = 0;
+        while(true){
+            int w = graph.dirCost(c, d);
+            if(w <= 0) return GridGraph.NONE;
+            int n = graph.step(c, d);
+            cost += w;
+            if(n == goal || graph.tunnelPartner(n) != GridGraph.NONE
+                    || forced(c, n, d, GridGraph.LEFT) || forced(c, n, d, GridGraph.RIGHT)){
+                jumpCost = cost;
+                return n;
+            }
+            c = n;
+        }
+    }
+
+    /** Runs straight left/right from c, stopping where a vertical scan finds something. Sets jumpCost. */
+    private int jumpHorizontal(int c, int d){
+        int cost = 0;
+        while(true){
+            int w = graph.dirCost(c, d);
+            if(w <= 0) return GridGraph.NONE;
+            int n = graph.step(c, d);
+            cost += w;
+            if(n == goal || graph.tunnelPartner(n) != GridGraph.NONE
+                    || jumpVertical(n, GridGraph.UP) != GridGraph.NONE || jumpVertical(n, GridGraph.DOWN) != GridGraph.NONE){
+                jumpCost = cost;
+                return n;
+            }
+            c = n;
+        }
+    }
+
+    private static long key(int f, int g){ return ((long) f << 32) | (Integer.MAX_VALUE - g); }
+
+    private int nextGeneration(){
+        if(++generation == Integer.MAX_VALUE){
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        return generation;
+    }
+
+    private GeneralSearch.Result stopped(int start, int gen, int expanded){
+        int near = start;
+        long best = Long.MAX_VALUE;
+        for(int c = 0; c < graph.cellCount; c++){
+            if(stamp[c] != gen) continue;
+            long k = ((long) h[c] << 32) | g[c];
+            if(k < best){ best = k; near = c; }
+        }
+        return new GeneralSearch.Result(null, expanded, true, path(start, near));
+    }
+
+    /** Unrolls the jump points start..target into single moves. */
+    private Node path(int start, int target){
+        List<Integer> cells = new ArrayList<>();
+        List<Integer> ops = new ArrayList<>();
+        for(int c = target; c != start; c = parent[c]){
+            int op = parentOp[c];
+            if(op == GridGraph.TUNNEL){ cells.add(c); ops.add(op); continue; }
+            for(int s = c; s != parent[c]; s = graph.step(s, REVERSE[op])){ cells.add(s); ops.add(op); }
+        }
+        Collections.reverse(cells);
+        Collections.reverse(ops);
+
+        Node node = new Node(graph.position(start));
+        int prev = start;
+        for(int i = 0; i < cells.size(); i++){
+            int c = cells.get(i), op = ops.get(i);
+            int cost = op == GridGraph.TUNNEL ? graph.tunnelCost(prev, c) : graph.dirCost(prev, op);
+            node = new Node(graph.position(c), node, op, cost);
+            prev = c;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,270 @@
+package code.search;
+
+import code.model.GridGraph;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * LandmarkHeuristic: precomputed lower bounds for one compiled GridGraph, built once and shared.
+ *
+ * ALT part: a few landmarks picked by farthest-point selection, with exact distances from and to
+ * each one (Dijkstra over the forward and reverse CSR). By the triangle inequality
+ * d(c,goal) >= d(L,goal) - d(L,c) and d(c,goal) >= d(c,L) - d(goal,L), so the bound is a max over
+ * landmarks read from one interleaved row per cell.
+ *
+ * Geometric part: walking moves cost at least minEdgeCost per Manhattan step, tunnel hops cost
+ * their length. With few tunnels an exact endpoint-to-endpoint distance matrix gives, per goal,
+ * the cheapest way to finish once a tunnel has been entered; with many tunnels a per-cell
+ * distance to the nearest endpoint keeps the bound O(1). Both parts are admissible, so is their max.
+ *
+ * The tables belong to the graph instance (GridGraph.derived). An edit that only raises costs or
+ * blocks moves keeps them (GridGraph.LowerBound): distances only grew, so they are still
+ * admissible and consistent, if looser. Any other edit compiles a graph without tables.
+ *
+ * Building costs two Dijkstras per landmark, so searches ask ifBuilt() and fall back to a
+ * geometric bound meanwhile; every WARMUP_QUERIES such asks on a graph queue a build on a
+ * background thread, which runs one build at a time and keeps only the newest one waiting.
+ */
+public final class LandmarkHeuristic implements GridGraph.LowerBound {
+    /** Landmarks per graph (each costs two int rows). */
+    public static final int LANDMARKS = 8;
+    /** Up to this many tunnel endpoints the exact endpoint matrix is used. */
+    public static final int MAX_MATRIX_ENDPOINTS = 32;
+    /** Queries a graph answers without tables before ifBuilt() queues their build. */
+    public static final int WARMUP_QUERIES = 8;
+
+    private static final int INF = GridGraph.UNREACHABLE;
+
+    private static final ExecutorService BUILDER = builder();
+
+    private final int width;              // cell ids are y*width + x, the same in every edit of a grid
+    private final int k;                  // landmarks actually placed
+    private final int[] landmarks;
+    private final int[] from;             // cell*k + i: d(landmark i, cell)
+    private final int[] to;               // cell*k + i: d(cell, landmark i)
+    private final int minEdge;
+    private final int[] endpoints;        // tunnel endpoint cells
+    private final int[] matrix;           // endpoints^2 exact distances, null when too many endpoints
+    private final int[] nearestEndpoint;  // Manhattan distance to the closest endpoint, null with a matrix
+
+    private LandmarkHeuristic(GridGraph graph){
+        this.width = graph.width;
+        this.minEdge = Math.max(1, graph.minEdgeCost());
+        int n = graph.cellCount;
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+
+        List<int[]> fwd = new ArrayList<>(), bwd = new ArrayList<>();
+        List<Integer> picked = new ArrayList<>();
+        int[] closest = new int[n];           // min over picked landmarks of d(L, c)
+        Arrays.fill(closest, INF);
+        int next = firstCandidate(graph);
+        while(next != GridGraph.NONE && picked.size() < LANDMARKS){
+            picked.add(next);
+            int[] f = dijkstra(graph, next, false, heap);
+            fwd.add(f);
+            bwd.add(dijkstra(graph, next, true, heap));
+            for(int c = 0; c < n; c++) closest[c] = Math.min(closest[c], f[c]);
+            next = farthest(graph, closest);
+        }
+        k = picked.size();
+        landmarks = new int[k];
+        from = new int[n * k];
+        to = new int[n * k];
+        for(int i = 0; i < k; i++){
+            landmarks[i] = picked.get(i);
+            int[] f = fwd.get(i), b = bwd.get(i);
+            for(int c = 0; c < n; c++){
+                from[c*k + i] = f[c];
+                to[c*k + i] = b[c];
+            }
+        }
+
+        int[] ends = new int[n];
+        int m = 0;
+        for(int c = 0; c < n; c++) if(graph.tunnelPartner(c) != GridGraph.NONE) ends[m++] = c;
+        endpoints = Arrays.copyOf(ends, m);
+        if(m <= MAX_MATRIX_ENDPOINTS){
+            matrix = new int[m * m];
+            for(int i = 0; i < m; i++){
+                int[] d = dijkstra(graph, endpoints[i], false, heap);
+                for(int j = 0; j < m; j++) matrix[i*m + j] = d[endpoints[j]];
+            }
+            nearestEndpoint = null;
+        } else {
+            matrix = null;
+            nearestEndpoint = manhattanTransform(graph, endpoints);
+        }
+    }
+
+    /** Tables of graph, built on first use (by the caller) and held by the graph (GridGraph.derived). */
+    public static LandmarkHeuristic forGraph(GridGraph graph){
+        return graph.derived(LandmarkHeuristic.class, LandmarkHeuristic::new);
+    }
+
+    /** The tables of graph if they are built or kept from an edit, else null, counting the query toward a build. */
+    public static LandmarkHeuristic ifBuilt(GridGraph graph){
+        LandmarkHeuristic h = graph.derivedIfPresent(LandmarkHeuristic.class);
+        if(h == null && graph.derived(Queries.class, g -> new Queries()).count.incrementAndGet() % WARMUP_QUERIES == 0){
+            BUILDER.execute(() -> forGraph(graph));
+        }
+        return h;
+    }
+
+    /** ifBuilt() calls a graph has answered without tables. */
+    private static final class Queries {
+        final AtomicInteger count = new AtomicInteger();
+    }
+
+    private static ExecutorService builder(){
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1),
+                Thread.ofPlatform().name("landmarks").daemon().factory(), new ThreadPoolExecutor.DiscardOldestPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public int landmarkCount(){ return k; }
+    public int landmark(int i){ return landmarks[i]; }
+
+    /** ALT bound on d(cell, goal): O(#landmarks), 0 when no landmark sees both cells. */
+    public int alt(int cell, int goal){
+        int best = 0, cb = cell * k, gb = goal * k;
+        for(int i = 0; i < k; i++){
+            int fc = from[cb + i], fg = from[gb + i];
+            if(fc < INF && fg < INF && fg - fc > best) best = fg - fc;
+            int tc = to[cb + i], tg = to[gb + i];
+            if(tc < INF && tg < INF && tc - tg > best) best = tc - tg;
+        }
+        return best;
+    }
+
+    /** Heuristic toward goal: the per-goal tunnel table is built here once, not per evaluation. */
+    public IntUnaryOperator toward(int goal){
+        int gx = goal % width, gy = goal / width;
+        int m = endpoints.length;
+        if(m == 0) return c -> Math.max(alt(c, goal), minEdge * manhattan(c, gx, gy));
+        if(matrix == null){
+            // entering a tunnel costs the walk to some endpoint, at least one hop, and the walk out of some endpoint
+            int tail = minEdge * nearestEndpoint[goal] + 1;
+            return c -> Math.max(alt(c, goal), Math.min(minEdge * manhattan(c, gx, gy), minEdge * nearestEndpoint[c] + tail));
+        }
+        // exit[i]: cheapest finish once standing on endpoint i (exact travel to the last endpoint used, then walking)
+        int[] exit = new int[m];
+        for(int i = 0; i < m; i++){
+            int best = INF;
+            for(int j = 0; j < m; j++){
+                int d = matrix[i*m + j];
+                if(d < INF) best = Math.min(best, d + minEdge * manhattan(endpoints[j], gx, gy));
+            }
+            exit[i] = best;
+        }
+        return c -> {
+            int geo = minEdge * manhattan(c, gx, gy);
+            for(int i = 0; i < m; i++){
+                if(exit[i] >= geo) continue;
+                int via = minEdge * manhattan(c, endpoints[i] % width, endpoints[i] / width) + exit[i];
+                if(via < geo) geo = via;
+            }
+            return Math.max(alt(c, goal), geo);
+        };
+    }
+
+    /** Mirror of toward(): bound on d(source, c), for searches running backwards from a goal. */
+    public IntUnaryOperator from(int source){
+        int sx = source % width, sy = source / width;
+        int m = endpoints.length;
+        if(m == 0) return c -> Math.max(alt(source, c), minEdge * manhattan(c, sx, sy));
+        if(matrix == null){
+            int head = minEdge * nearestEndpoint[source] + 1;
+            return c -> Math.max(alt(source, c), Math.min(minEdge * manhattan(c, sx, sy), minEdge * nearestEndpoint[c] + head));
+        }
+        // entry[j]: cheapest arrival on endpoint j (walking to the first endpoint used, then exact travel)
+        int[] entry = new int[m];
+        for(int j = 0; j < m; j++){
+            int best = INF;
+            for(int i = 0; i < m; i++){
+                int d = matrix[i*m + j];
+                if(d < INF) best = Math.min(best, minEdge * manhattan(endpoints[i], sx, sy) + d);
+            }
+            entry[j] = best;
+        }
+        return c -> {
+            int geo = minEdge * manhattan(c, sx, sy);
+            for(int j = 0; j < m; j++){
+                if(entry[j] >= geo) continue;
+                int via = entry[j] + minEdge * manhattan(c, endpoints[j] % width, endpoints[j] / width);
+                if(via < geo) geo = via;
+            }
+            return Math.max(alt(source, c), geo);
+        };
+    }
+
+    private int manhattan(int c, int gx, int gy){
+        return Math.abs(c % width - gx) + Math.abs(c / width - gy);
+    }
+
+    /** Some cell with an outgoing move, NONE on a graph without edges. */
+    private static int firstCandidate(GridGraph graph){
+        for(int c = 0; c < graph.cellCount; c++) if(graph.firstEdge(c) < graph.endEdge(c)) return c;
+        return GridGraph.NONE;
+    }
+
+    /** Next landmark: a movable cell no landmark reaches yet, else the one farthest from all of them. */
+    private static int farthest(GridGraph graph, int[] closest){
+        int best = GridGraph.NONE, bestDist = 0;
+        for(int c = 0; c < graph.cellCount; c++){
+            if(graph.firstEdge(c) == graph.endEdge(c) || closest[c] == 0) continue;
+            if(closest[c] >= INF) return c;
+            if(closest[c] > bestDist){ best = c; bestDist = closest[c]; }
+        }
+        return best;
+    }
+
+    /** Distances from source (reverse = to source, over incoming moves). */
+    private static int[] dijkstra(GridGraph graph, int source, boolean reverse, IndexedMinHeap heap){
+        int[] dist = new int[graph.cellCount];
+        Arrays.fill(dist, INF);
+        dist[source] = 0;
+        heap.push(source, 0);
+        while(!heap.isEmpty()){
+            int u = heap.poll();
+            int du = dist[u];
+            int first = reverse ? graph.firstInEdge(u) : graph.firstEdge(u);
+            int end = reverse ? graph.endInEdge(u) : graph.endEdge(u);
+            for(int i = first; i < end; i++){
+                int e = reverse ? graph.inEdgeForward(i) : i;
+                int v = reverse ? graph.inEdgeSource(i) : graph.edgeTarget(e);
+                int nd = du + graph.edgeCost(e);
+                if(nd < dist[v]){
+                    dist[v] = nd;
+                    heap.push(v, nd);
+                }
+            }
+        }
+        return dist;
+    }
+
+    /** Manhattan distance from every cell to the nearest of cells (two-pass distance transform). */
+    private static int[] manhattanTransform(GridGraph graph, int[] cells){
+        int w = graph.width, h = graph.height;
+        int[] d = new int[graph.cellCount];
+        Arrays.fill(d, INF);
+        for(int c : cells) d[c] = 0;
+        for(int y = 0; y < h; y++){
+            for(int x = 0; x < w; x++){
+                int c = y*w + x;
+                if(x > 0) d[c] = Math.min(d[c], d[c - 1] + 1);
+                if(y > 0) d[c] = Math.min(d[c], d[c - w] + 1);
+            }
+        }
+        for(int y = h - 1; y >= 0; y--){
+            for(int x = w - 1; x >= 0; x--){
+                int c = y*w + x;
+                if(x < w - 1) d[c] = Math.min(d[c], d[c + 1] + 1);
+                if(y < h - 1) d[c] = Math.min(d[c], d[c + w] + 1);
+            }
+        }
+        return d;
+    }
+}
@@ -0,0 +1,86 @@
+package code.search;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing long -> long map over primitive arrays, for search bookkeeping keyed by
+ * packed cells/coordinates (Position.pack, (t, cell) pairs, ...) without boxing. Keys may be
+ * any long except Long.MIN_VALUE, which marks empty slots. No removal.
+ */
+public final class LongLongMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    public LongLongMap(){ this(16); }
+
+    public LongLongMap(int expected){
+        int cap = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        keys = new long[cap];
+        values = new long[cap];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private static int hash(long k){
+        k *= 0x9E3779B97F4A7C15L;
+        return (int) (k ^ (k >>> 32));
+    }
+
+    public int size(){ return size; }
+    public boolean isEmpty(){ return size == 0; }
+
+    public boolean containsKey(long key){ return keys[slot(key)] == key; }
+
+    /** Value stored for key, or missing if there is none. */
+    public long get(long key, long missing){
+        int i = slot(key);
+        return keys[i] == key ? values[i] : missing;
+    }
+
+    public void put(long key, long value){
+        int i = slot(key);
+        if(keys[i] != key){
+            if((size + 1) * 2 > keys.length){
+                grow();
+                i = slot(key);
+            }
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    /** Stores min(current, value), value if key was absent. */
+    public void putMin(long key, long value){ put(key, Math.min(get(key, Long.MAX_VALUE), value)); }
+
+    /** Stores max(current, value), value if key was absent. */
+    public void putMax(long key, long value){ put(key, Math.max(get(key, Long.MIN_VALUE), value)); }
+
+    public void clear(){
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /** Slot holding key, or the empty slot where it would go. */
+    private int slot(long key){
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while(keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void grow(){
+        long[] oldKeys = keys, oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[keys.length];
+        Arrays.fill(keys, EMPTY);
+        for(int j = 0; j < oldKeys.length; j++){
+            if(oldKeys[j] == EMPTY) continue;
+            int i = slot(oldKeys[j]);
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package code.search;
+
+import code.model.GridGraph;
+import code.model.Position;
+import java.util.*;
+
+/**
+ * LpaStar: Lifelong Planning A* for one fixed start/goal pair on a GridGraph.
+ *
+ * Keeps g/rhs in dense arrays between calls. After edges change, edgeChanged() is told the
+ * target cell of every changed edge and the next computeShortestPath() only re-expands the
+ * part of the search the change actually touches; an unrelated change costs nothing.
+ * Predecessors come from the graph's reverse CSR. Keys use Heuristics.tunnelDistance because
+ * minEdgeCost moves with edits and keys already queued must stay consistent.
+ */
+public final class LpaStar {
+    private static final int INF = GridGraph.UNREACHABLE;
+
+    private GridGraph graph;
+    private final int start;
+    private final int goal;
+    private final int[] g;
+    private final int[] rhs;
+    private final IndexedMinHeap open;
+    private int expanded;
+
+    public LpaStar(GridGraph graph, int start, int goal){
+        this.graph = graph;
+        this.start = start;
+        this.goal = goal;
+        g = new int[graph.cellCount];
+        rhs = new int[graph.cellCount];
+        Arrays.fill(g, INF);
+        Arrays.fill(rhs, INF);
+        open = new IndexedMinHeap(graph.cellCount);
+        rhs[start] = 0;
+        open.push(start, key(start));
+    }
+
+    public int start(){ return start; }
+    public int goal(){ return goal; }
+
+    /** Total expansions over the lifetime of this search. */
+    public int expanded(){ return expanded; }
+
+    /** Cost of the current shortest path, GridGraph.UNREACHABLE if there is none. */
+    public int cost(){ return g[goal]; }
+
+    /**
+     * Switches to the recompiled graph and re-evaluates the cells whose incoming edges changed.
+     * Cells are ids shared by both graphs (same width/height).
+     */
+    public void edgesChanged(GridGraph updated, int... targets){
+        this.graph = updated;
+        for(int v : targets) updateVertex(v);
+    }
+
+    /** Brings g up to date; returns the number of expansions this call needed (0 = nothing to repair). */
+    public int computeShortestPath(){
+        int before = expanded;
+        while(!open.isEmpty() && (open.minKey() < key(goal) || rhs[goal] != g[goal])){
+            int u = open.poll();
+            expanded++;
+            if(g[u] > rhs[u]){
+                g[u] = rhs[u];
+                for(int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) updateVertex(graph.edgeTarget(e));
+            } else {
+                g[u] = INF;
+                updateVertex(u);
+                for(int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) updateVertex(graph.edgeTarget(e));
+            }
+        }
+        return expanded - before;
+    }
+
+    private void updateVertex(int u){
+        if(u != start){
+            int best = INF;
+            for(int i = graph.firstInEdge(u), end = graph.endInEdge(u); i < end; i++){
+                int gp = g[graph.inEdgeSource(i)];
+                if(gp >= INF) continue;
+                best = Math.min(best, gp + graph.edgeCost(graph.inEdgeForward(i)));
+            }
+            rhs[u] = Math.min(best, INF);
+        }
+        if(g[u] != rhs[u]) open.update(u, key(u));
+        else open.remove(u);
+    }
+
+    private long key(int u){
+        int m = Math.min(g[u], rhs[u]);
+        int k1 = m >= INF ? INF + INF : m + Heuristics.tunnelDistance(graph, u, goal);
+        return ((long) k1 << 32) | m;
+    }
+
+    /** Forward edge indices of the current shortest path (start -> goal), null if unreachable. */
+    public int[] pathEdges(){
+        if(g[goal] >= INF) return null;
+        int[] rev = new int[16];
+        int n = 0;
+        for(int u = goal; u != start; ){
+            int bestEdge = GridGraph.NONE, bestSrc = GridGraph.NONE, best = INF;
+            for(int i = graph.firstInEdge(u), end = graph.endInEdge(u); i < end; i++){
+                int p = graph.inEdgeSource(i);
+                if(g[p] >= INF) continue;
+                int e = graph.inEdgeForward(i);
+                int c = g[p] + graph.edgeCost(e);
+                if(c < best){ best = c; bestEdge = e; bestSrc = p; }
+            }
+            if(bestEdge == GridGraph.NONE || n >= graph.cellCount) return null;
+            if(n == rev.length) rev = Arrays.copyOf(rev, n * 2);
+            rev[n++] = bestEdge;
+            u = bestSrc;
+        }
+        int[] path = new int[n];
+        for(int i = 0; i < n; i++) path[i] = rev[n - 1 - i];
+        return path;
+    }
+
+    /** Current shortest route (both endpoints included), empty if unreachable. */
+    public List<Position> route(){
+        int[] edges = pathEdges();
+        if(edges == null) return Collections.emptyList();
+        List<Position> route = new ArrayList<>(edges.length + 1);
+        route.add(graph.position(start));
+        for(int e : edges){
+            int v = graph.edgeTarget(e);
+            route.add(graph.position(v));
+        }
+        return route;
+    }
+
+    public List<String> actions(){
+        int[] edges = pathEdges();
+        if(edges == null) return Collections.emptyList();
+        List<String> actions = new ArrayList<>(edges.length);
+        for(int e : edges) actions.add(GridGraph.OP_NAMES[graph.edgeOp(e)]);
+        return actions;
+    }
+}
@@ -0,0 +1,183 @@
+package code.search;
+
+import code.model.GridGraph;
+import code.model.Position;
+import java.util.*;
+
+/**
+ * MultiGoalSearch: one Dijkstra wave from a start cell that stops once every goal, or the k
+ * nearest, has been settled. Replaces one search per (start, goal) pair when a caller ranks
+ * many targets from the same place (an agent scoring every store, a store every destination).
+ *
+ * Arrays are generation-stamped and kept per thread like GridSearchEngine. Per goal the result
+ * keeps the cost, how many cells were settled before it and, when asked for, its route.
+ */
+public final class MultiGoalSearch {
+    private static final ThreadLocal<MultiGoalSearch> LOCAL = new ThreadLocal<>();
+
+    private final int capacity;
+    private final int[] dist;
+    private final int[] parentEdge;
+    private final int[] rank;         // settle order, valid when settled[c] == generation
+    private final int[] stamp;
+    private final int[] settled;
+    private final int[] goalStamp;
+    private final IndexedMinHeap open;
+    private int generation;
+
+    private MultiGoalSearch(int capacity){
+        this.capacity = capacity;
+        dist = new int[capacity];
+        parentEdge = new int[capacity];
+        rank = new int[capacity];
+        stamp = new int[capacity];
+        settled = new int[capacity];
+        goalStamp = new int[capacity];
+        open = new IndexedMinHeap(capacity);
+    }
+
+    /** Engine for the calling thread, grown if the graph has more cells than it can hold. */
+    public static MultiGoalSearch forGraph(GridGraph graph){
+        MultiGoalSearch e = LOCAL.get();
+        if(e == null || e.capacity < graph.cellCount){
+            e = new MultiGoalSearch(graph.cellCount);
+            LOCAL.set(e);
+        }
+        return e;
+    }
+
+    /** search() over positions; goals (or a start) off the grid are never reached. */
+    public Result search(GridGraph graph, Position start, List<Position> goals, int k, boolean paths){
+        int[] cells = new int[goals.size()];
+        for(int i = 0; i < cells.length; i++) cells[i] = graph.cellOf(goals.get(i));
+        return search(graph, graph.cellOf(start), cells, k, paths);
+    }
+
+    /**
+     * Settles cells in cost order from start until k distinct goal cells are settled (pass
+     * goals.length, or more, for all of them). Goals may repeat or be NONE. With paths the
+     * route to every reached goal is kept; otherwise only costs and ranks are.
+     */
+    public Result search(GridGraph graph, int start, int[] goals, int k, boolean paths){
+        long t0 = System.nanoTime();
+        int gen = nextGeneration();
+        int remaining = 0;
+        for(int c : goals){
+            if(c == GridGraph.NONE || goalStamp[c] == gen) continue;
+            goalStamp[c] = gen;
+            remaining++;
+        }
+        int want = Math.min(k, remaining), found = 0, count = 0;
+        open.clear();
+        if(start != GridGraph.NONE && want > 0){
+            stamp[start] = gen;
+            dist[start] = 0;
+            parentEdge[start] = GridGraph.NONE;
+            open.push(start, 0);
+        }
+        while(!open.isEmpty() && found < want){
+            int u = open.poll();
+            settled[u] = gen;
+            rank[u] = count++;
+            if(goalStamp[u] == gen) found++;
+            int du = dist[u];
+            for(int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++){
+                int v = graph.edgeTarget(e);
+                int nd = du + graph.edgeCost(e);
+                if(stamp[v] == gen && nd >= dist[v]) continue;
+                stamp[v] = gen;
+                dist[v] = nd;
+                parentEdge[v] = e;
+                open.push(v, nd);
+            }
+        }
+
+        int n = goals.length;
+        int[] cost = new int[n], expanded = new int[n];
+        int[][] edges = paths ? new int[n][] : null;
+        for(int i = 0; i < n; i++){
+            int c = goals[i];
+            if(c == GridGraph.NONE || settled[c] != gen){
+                cost[i] = GridGraph.UNREACHABLE;
+                continue;
+            }
+            cost[i] = dist[c];
+            expanded[i] = rank[c];
+            if(paths) edges[i] = edgesTo(graph, start, c);
+        }
+        return new Result(graph, start, cost, expanded, edges, count, System.nanoTime() - t0);
+    }
+
+    private int[] edgesTo(GridGraph graph, int start, int c){
+        int len = 0;
+        for(int v = c; v != start; v = graph.edgeSource(parentEdge[v])) len++;
+        int[] out = new int[len];
+        for(int v = c, i = len - 1; v != start; v = graph.edgeSource(out[i--])) out[i] = parentEdge[v];
+        return out;
+    }
+
+    private int nextGeneration(){
+        if(++generation == Integer.MAX_VALUE){
+            Arrays.fill(stamp, 0);
+            Arrays.fill(settled, 0);
+            Arrays.fill(goalStamp, 0);
+            generation = 1;
+        }
+        return generation;
+    }
+
+    /** Per-goal answers, indexed like the goals passed to search(). */
+    public static final class Result {
+        private final GridGraph graph;
+        private final int start;
+        private final int[] cost;
+        private final int[] expanded;
+        private final int[][] edges;
+        /** Cells settled by the whole wave. */
+        public final int settled;
+        public final long timeNanos;
+
+        private Result(GridGraph graph, int start, int[] cost, int[] expanded, int[][] edges, int settled, long timeNanos){
+            this.graph = graph; this.start = start; this.cost = cost; this.expanded = expanded;
+            this.edges = edges; this.settled = settled; this.timeNanos = timeNanos;
+        }
+
+        public int goalCount(){ return cost.length; }
+
+        /** Cost of goal i, GridGraph.UNREACHABLE when it was not reached (or not among the k nearest). */
+        public int cost(int i){ return cost[i]; }
+
+        public boolean reached(int i){ return cost[i] < GridGraph.UNREACHABLE; }
+
+        /** Cells settled before goal i, what a single-goal UCS would have expanded. */
+        public int expanded(int i){ return expanded[i]; }
+
+        /** Indices of the reached goals, cheapest first (ties by goal index). */
+        public int[] nearest(){
+            Integer[] idx = new Integer[cost.length];
+            int n = 0;
+            for(int i = 0; i < cost.length; i++) if(reached(i)) idx[n++] = i;
+            Arrays.sort(idx, 0, n, Comparator.comparingInt((Integer i) -> cost[i]).thenComparingInt(i -> i));
+            int[] out = new int[n];
+            for(int i = 0; i < n; i++) out[i] = idx[i];
+            return out;
+        }
+
+        /** Operators start -> goal i (GridGraph op codes); null if unreached or paths were not kept. */
+        public byte[] plan(int i){
+            if(edges == null || edges[i] == null) return null;
+            byte[] plan = new byte[edges[i].length];
+            for(int j = 0; j < plan.length; j++) plan[j] = graph.edgeOp(edges[i][j]);
+            return plan;
+        }
+
+        /** Cells start -> goal i, both included; empty if unreached or paths were not kept. */
+        public List<Position> route(int i){
+            if(edges == null || edges[i] == null) return Collections.emptyList();
+            List<Position> route = new ArrayList<>(edges[i].length + 1);
+            route.add(graph.position(start));
+            for(int e : edges[i]) route.add(graph.position(graph.edgeTarget(e)));
+            return route;
+        }
+    }
+}
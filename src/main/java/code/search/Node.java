@@ -1,18 +1,27 @@
 package code.search;
 
 public class Node {
+    public static final byte NO_OP = -1;
+
     public final Object state;
     public final Node parent;
-    public final String action;
+    public final byte op;
     public final int pathCost;
     public final int depth;
-    public Node(Object state){ this(state, null, null, 0, 0); }
-    public Node(Object state, Node parent, String action, int stepCost, int depth){
-        this.state = state; this.parent = parent; this.action = action;
+    public Node(Object state){ this(state, null, NO_OP, 0, 0); }
+    public Node(Object state, Node parent, byte op, int stepCost, int depth){
+        this.state = state; this.parent = parent; this.op = op;
         this.pathCost = (parent==null) ? stepCost : parent.pathCost + stepCost;
         this.depth = depth;
     }
-    public Node(Object state, Node parent, String action, int stepCost){
-        this(state, parent, action, stepCost, (parent==null?0:parent.depth+1));
+    public Node(Object state, Node parent, int op, int stepCost){
+        this(state, parent, (byte) op, stepCost, (parent==null?0:parent.depth+1));
+    }
+
+    /** Operators from the root to this node. */
+    public byte[] plan(){
+        byte[] plan = new byte[depth];
+        for(Node n = this; n.parent != null; n = n.parent) plan[n.depth - 1] = n.op;
+        return plan;
     }
 }
@@ -0,0 +1,134 @@
+package code.search;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Portfolio: races several strategies on one Problem and keeps the first answer that settles
+ * the goal, cancelling the rest through their SearchOptions tokens.
+ *
+ *  FIRST   - any route; the first strategy to find one wins
+ *  OPTIMAL - a least-cost route; the first SearchStrategy.optimal() strategy to finish wins
+ * An exhaustive search that finds nothing without hitting a limit proves the goal unreachable
+ * and also ends the race. Otherwise the race waits for every strategy and returns the cheapest
+ * route found, if any. Losers are cancelled, not waited for; they stop at their next expansion.
+ *
+ * Each strategy runs with its own SearchOptions (node budget, deadline, token), so one that
+ * hits a limit drops out without holding up the others. The Problem is shared between threads
+ * and must not be mutated by expand() or goalTest().
+ */
+public final class Portfolio {
+    public enum Goal { FIRST, OPTIMAL }
+
+    /**
+     * Default pool: a daemon thread per core, kept for a minute when idle, so the grid engines
+     * each thread caches (GridSearchEngine.forGraph and the like) serve many races.
+     */
+    private static final ExecutorService SHARED = sharedPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final ExecutorService executor;
+
+    /** One race's answer. */
+    public static final class Outcome {
+        /** Strategy whose result was kept; null if none found a route. */
+        public final SearchStrategy winner;
+        /** The kept result; a failed Result when winner is null. */
+        public final GeneralSearch.Result result;
+        /** Results of every strategy that finished before the race ended, in finishing order. */
+        public final Map<SearchStrategy, GeneralSearch.Result> finished;
+        /** True if the goal was settled (see Goal) rather than the best of what finished. */
+        public final boolean decided;
+        public final long timeNanos;
+
+        Outcome(SearchStrategy winner, GeneralSearch.Result result, Map<SearchStrategy, GeneralSearch.Result> finished,
+                boolean decided, long timeNanos){
+            this.winner = winner; this.result = result; this.finished = finished;
+            this.decided = decided; this.timeNanos = timeNanos;
+        }
+    }
+
+    /**
+     * Races on a shared pool with a thread per core. Strategies beyond that queue in the order
+     * given and start as others finish; those still queued when the race ends never run.
+     */
+    public Portfolio(){ this(SHARED); }
+
+    /** Races on executor, which needs a thread per strategy to run them all at once. */
+    public Portfolio(ExecutorService executor){ this.executor = Objects.requireNonNull(executor); }
+
+    /** Races strategies without limits. */
+    public Outcome race(Problem problem, Collection<SearchStrategy> strategies, Goal goal){
+        Map<SearchStrategy, SearchOptions> limits = new LinkedHashMap<>();
+        for(SearchStrategy s : strategies) limits.put(s, SearchOptions.defaults());
+        return race(problem, limits, goal);
+    }
+
+    /**
+     * Races every key of limits under its options. The options are copied, so their tokens can
+     * still cancel the race from outside.
+     */
+    public Outcome race(Problem problem, Map<SearchStrategy, SearchOptions> limits, Goal goal){
+        long t0 = System.nanoTime();
+        CompletionService<GeneralSearch.Result> done = new ExecutorCompletionService<>(executor);
+        Map<Future<GeneralSearch.Result>, SearchStrategy> running = new HashMap<>();
+        List<CancellationToken> tokens = new ArrayList<>();
+        for(Map.Entry<SearchStrategy, SearchOptions> e : limits.entrySet()){
+            SearchOptions o = e.getValue().copy();
+            CancellationToken token = o.token() == null ? new CancellationToken() : o.token().child();
+            tokens.add(token);
+            SearchStrategy s = e.getKey();
+            running.put(done.submit(() -> GeneralSearch.generalSearch(problem, s, o.token(token))), s);
+        }
+
+        Map<SearchStrategy, GeneralSearch.Result> finished = new LinkedHashMap<>();
+        SearchStrategy winner = null;
+        GeneralSearch.Result best = null;
+        boolean decided = false;
+        try {
+            for(int left = running.size(); left > 0 && !decided; left--){
+                Future<GeneralSearch.Result> f = done.take();
+                SearchStrategy s = running.remove(f);
+                GeneralSearch.Result r = get(f, s);
+                finished.put(s, r);
+                if(r.node != null){
+                    if(best == null || r.node.pathCost < best.node.pathCost){ best = r; winner = s; }
+                    if(goal == Goal.FIRST || (s.optimal() && !r.limited)){ best = r; winner = s; decided = true; }
+                } else if(!r.limited && exhaustive(problem, s)){
+                    best = null; winner = null; decided = true;
+                }
+            }
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        } finally {
+            for(CancellationToken t : tokens) t.cancel();
+            for(Future<GeneralSearch.Result> f : running.keySet()) f.cancel(false);
+        }
+        return new Outcome(winner, best != null ? best : new GeneralSearch.Result(null, 0), finished, decided, System.nanoTime() - t0);
+    }
+
+    private static ExecutorService sharedPool(int threads){
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                Thread.ofPlatform().name("portfolio-", 0).daemon().factory());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static GeneralSearch.Result get(Future<GeneralSearch.Result> f, SearchStrategy s) throws InterruptedException {
+        try {
+            return f.get();
+        } catch(ExecutionException ex){
+            throw new IllegalStateException(s + " failed", ex.getCause());
+        }
+    }
+
+    /**
+     * True if s explores every reachable state before giving up: the generic BFS/DFS/UCS loops
+     * and IdaStar (IDS, IDASTAR) on any problem, every strategy on a DeliveryProblem.
+     */
+    private static boolean exhaustive(Problem problem, SearchStrategy s){
+        switch(s){
+            case BFS: case DFS: case UCS: case IDS: case IDASTAR: return true;
+            default: return problem instanceof code.delivery.DeliveryProblem;
+        }
+    }
+}
@@ -1,11 +1,31 @@
 package code.search;
 
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A search problem with int-encoded operators 0..operatorCount()-1. expand() reports every
+ * applicable operator with its successor and step cost in one call, in operator order;
+ * operatorName() is only needed when a plan is displayed.
+ */
 public abstract class Problem {
     public abstract Object initialState();
     public abstract boolean goalTest(Object state);
-    public abstract List<String> operators();
-    public abstract Object apply(Object state, String operator);
-    public abstract int stepCost(Object state, String operator);
+    public abstract int operatorCount();
+    public abstract String operatorName(int op);
+    /** Clears out and fills it with the moves out of state. */
+    public abstract void expand(Object state, Successors out);
+
+    /** Number of states stateIndex numbers, or -1 (the default) when they have no dense index. */
+    public int stateCount(){ return -1; }
+
+    /** Index of state in 0..stateCount()-1, or -1 for a state outside it; only used when stateCount() >= 0. */
+    public int stateIndex(Object state){ return -1; }
+
+    /** Operator names of a byte-encoded plan. */
+    public List<String> decode(byte[] plan){
+        List<String> names = new ArrayList<>(plan.length);
+        for(byte op : plan) names.add(operatorName(op));
+        return names;
+    }
 }
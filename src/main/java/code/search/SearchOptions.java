@@ -0,0 +1,123 @@
+package code.search;
+
+/**
+ * SearchOptions: limits for GeneralSearch.generalSearch and the grid engines.
+ * Setters return this so options can be chained: SearchOptions.defaults().maxExpanded(10_000).timeout(50).
+ *
+ * Searches poll stop() once per expansion: the node budget and the token every time, the
+ * clock every 256 expansions. A search that stops early returns a Result with limited set,
+ * carrying its best route so far (ARASTAR) or a partial one toward the goal.
+ */
+public final class SearchOptions {
+    /** No limits; shared by the overloads that take no options, so never handed out. */
+    static final SearchOptions UNLIMITED = new SearchOptions();
+
+    private static final int CLOCK_MASK = 255;
+
+    private long maxExpanded = Long.MAX_VALUE;
+    private boolean hasDeadline;
+    private long deadline;
+    private CancellationToken token;
+    private double initialWeight = 2.5;
+    private double weightStep = 0.5;
+    private int nodeCap = 1 << 20;
+    private long deepeningBudget = 10_000_000L;
+
+    public static SearchOptions defaults(){ return new SearchOptions(); }
+
+    /** A copy with the same limits and token. */
+    public SearchOptions copy(){
+        SearchOptions o = new SearchOptions();
+        o.maxExpanded = maxExpanded;
+        o.hasDeadline = hasDeadline;
+        o.deadline = deadline;
+        o.token = token;
+        o.initialWeight = initialWeight;
+        o.weightStep = weightStep;
+        o.nodeCap = nodeCap;
+        o.deepeningBudget = deepeningBudget;
+        return o;
+    }
+
+    /** Stop after this many expansions; unlimited by default. */
+    public SearchOptions maxExpanded(long nodes){
+        if(nodes < 0) throw new IllegalArgumentException("maxExpanded must be >= 0, got " + nodes);
+        this.maxExpanded = nodes;
+        return this;
+    }
+
+    public long maxExpanded(){ return maxExpanded; }
+
+    /** Stop once System.nanoTime() reaches deadlineNanos. */
+    public SearchOptions deadline(long deadlineNanos){
+        this.hasDeadline = true;
+        this.deadline = deadlineNanos;
+        return this;
+    }
+
+    /** Deadline millis from now. */
+    public SearchOptions timeout(long millis){
+        if(millis < 0) throw new IllegalArgumentException("timeout must be >= 0, got " + millis);
+        return deadline(System.nanoTime() + millis * 1_000_000L);
+    }
+
+    public boolean hasDeadline(){ return hasDeadline; }
+
+    /** The deadline in System.nanoTime() terms; meaningless unless hasDeadline(). */
+    public long deadline(){ return deadline; }
+
+    /** Stop once token is cancelled; null (the default) for none. */
+    public SearchOptions token(CancellationToken token){
+        this.token = token;
+        return this;
+    }
+
+    public CancellationToken token(){ return token; }
+
+    /**
+     * ARASTAR's heuristic weight in its first round and how much it drops per round until 1;
+     * 2.5 and 0.5 by default. Other strategies ignore them.
+     */
+    public SearchOptions weights(double initial, double step){
+        if(!(initial >= 1)) throw new IllegalArgumentException("initial weight must be >= 1, got " + initial);
+        if(!(step > 0)) throw new IllegalArgumentException("weight step must be > 0, got " + step);
+        this.initialWeight = initial;
+        this.weightStep = step;
+        return this;
+    }
+
+    public double initialWeight(){ return initialWeight; }
+
+    public double weightStep(){ return weightStep; }
+
+    /** Search nodes SMASTAR may hold at once; 2^20 by default. Other strategies ignore it. */
+    public SearchOptions nodeCap(int nodes){
+        if(nodes < 2) throw new IllegalArgumentException("nodeCap must be >= 2, got " + nodes);
+        this.nodeCap = nodes;
+        return this;
+    }
+
+    public int nodeCap(){ return nodeCap; }
+
+    /**
+     * Expansions IDS and IDASTAR may spend when maxExpanded is unlimited, since their passes
+     * repeat work; 10^7 by default, Long.MAX_VALUE for none. A search that runs out ends limited.
+     */
+    public SearchOptions deepeningBudget(long nodes){
+        if(nodes < 0) throw new IllegalArgumentException("deepeningBudget must be >= 0, got " + nodes);
+        this.deepeningBudget = nodes;
+        return this;
+    }
+
+    public long deepeningBudget(){ return deepeningBudget; }
+
+    /** True if any limit or token is set. */
+    public boolean hasLimits(){ return maxExpanded != Long.MAX_VALUE || hasDeadline || token != null; }
+
+    /** True if a search that has expanded this many nodes must give up now. */
+    public boolean stop(long expanded){
+        if(expanded >= maxExpanded) return true;
+        if(token != null && token.isCancelled()) return true;
+        return hasDeadline && (expanded & CLOCK_MASK) == 0 && System.nanoTime() - deadline >= 0;
+    }
+}
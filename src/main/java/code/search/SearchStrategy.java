@@ -1,5 +1,13 @@
 package code.search;
 
 public enum SearchStrategy {
-    BFS, DFS, UCS, IDS, GREEDY, ASTAR
+    BFS, DFS, UCS, IDS, GREEDY, ASTAR, JPS, BIBFS, BIUCS, BIASTAR, HPA, ARASTAR, IDASTAR, SMASTAR;
+
+    /** True if a route this strategy finds (without hitting a limit) is a least-cost one. */
+    public boolean optimal(){
+        switch(this){
+            case UCS: case ASTAR: case JPS: case BIUCS: case BIASTAR: case ARASTAR: case IDASTAR: case SMASTAR: return true;
+            default: return false;
+        }
+    }
 }
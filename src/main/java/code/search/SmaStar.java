@@ -0,0 +1,230 @@
+package code.search;
+
+import code.model.GridGraph;
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * SmaStar: memory-bounded A* (SMA*-style) over a compiled GridGraph that never holds more than
+ * SearchOptions.nodeCap() search nodes.
+ *
+ * Nodes form a tree in a fixed pool; f is path-maxed (never below the parent's). When the pool
+ * is full the shallowest of the highest-f leaves is dropped, and its f is remembered by its
+ * parent as `forgotten`. A node with a forgotten child stays open under that value; when it
+ * comes up again its moves are regenerated, and those still in memory are skipped. A cell
+ * reached again more cheaply replaces its old leaf. The goal is tested when polled, as in A*,
+ * so with an admissible heuristic the route is optimal as long as it fits in the pool.
+ * When nodeCap() is below the cell count, a breadth-first pass from the goal first counts the
+ * fewest moves left from every cell, and a move is dropped if the goal could not be reached
+ * from it within nodeCap() nodes on the path. If that happened the result is flagged limited,
+ * since the route (or the lack of one) may then not be optimal. A node polled again with
+ * nothing allocated or dropped since it last came up ends the search, limited, too.
+ *
+ * The pool is sized min(nodeCap, 2 * cells + 2) and kept per thread with the cell tables.
+ */
+public final class SmaStar {
+    private static final ThreadLocal<SmaStar> LOCAL = new ThreadLocal<>();
+    private static final int INF = Integer.MAX_VALUE;
+    private static final int NONE = GridGraph.NONE;
+
+    private final int cells;
+    private final int poolSize;
+    private final int[] at;               // cell -> node holding it, valid when atStamp matches
+    private final int[] atStamp;
+    private final int[] cell, parent, edge, g, h, f, forgotten, depth, children;
+    private final boolean[] expandedOnce;
+    private final int[] hops;             // cell -> fewest moves to the goal, valid when hopStamp matches
+    private final int[] hopStamp;
+    private final int[] queue;
+    private final int[] free;
+    private final IndexedMinHeap best;    // open: least f, then deepest
+    private final IndexedMinHeap worst;   // leaves: highest f, then shallowest
+    private int freeTop;
+    private int generation;
+    private int root, expanding;
+    private boolean truncated;
+    private int changes;                  // allocs + prunes, to spot a node re-expanded with nothing changed
+    private int stuck, stuckAt;
+
+    private SmaStar(int cells, int poolSize){
+        this.cells = cells;
+        this.poolSize = poolSize;
+        at = new int[cells];
+        atStamp = new int[cells];
+        cell = new int[poolSize]; parent = new int[poolSize]; edge = new int[poolSize];
+        g = new int[poolSize]; h = new int[poolSize]; f = new int[poolSize];
+        forgotten = new int[poolSize]; depth = new int[poolSize]; children = new int[poolSize];
+        expandedOnce = new boolean[poolSize];
+        hops = new int[cells];
+        hopStamp = new int[cells];
+        queue = new int[cells];
+        free = new int[poolSize];
+        best = new IndexedMinHeap(poolSize);
+        worst = new IndexedMinHeap(poolSize);
+    }
+
+    /** Engine for the calling thread, rebuilt if the graph or the pool it needs is larger. */
+    public static SmaStar forGraph(GridGraph graph, int nodeCap){
+        int pool = (int) Math.min(nodeCap, 2L * graph.cellCount + 2);
+        SmaStar e = LOCAL.get();
+        if(e == null || e.cells < graph.cellCount || e.poolSize < pool){
+            e = new SmaStar(graph.cellCount, pool);
+            LOCAL.set(e);
+        }
+        return e;
+    }
+
+    /** Cheapest route start -> goal held within options.nodeCap() nodes; heuristic must be admissible. */
+    public GeneralSearch.Result search(GridGraph graph, int start, int goal, IntUnaryOperator heuristic, SearchOptions options){
+        int cap = Math.min(options.nodeCap(), poolSize);
+        if(++generation == Integer.MAX_VALUE){
+            Arrays.fill(atStamp, 0);
+            Arrays.fill(hopStamp, 0);
+            generation = 1;
+        }
+        best.clear();
+        worst.clear();
+        freeTop = 0;
+        for(int i = cap - 1; i >= 0; i--) free[freeTop++] = i;
+        truncated = false;
+        expanding = NONE;
+        stuck = NONE;
+        boolean deep = cap <= graph.cellCount;
+        if(deep) countHops(graph, goal);
+        root = alloc(start, NONE, NONE, 0, heuristic.applyAsInt(start), 0);
+        f[root] = h[root];
+        reopen(root);
+        int expanded = 0;
+        while(true){
+            if(best.isEmpty()) return new GeneralSearch.Result(null, expanded, truncated, truncated ? nearest(graph) : null);
+            int n = best.peek();
+            if(cell[n] == goal) return new GeneralSearch.Result(path(graph, n), expanded, truncated, null);
+            if(options.stop(expanded) || (n == stuck && changes == stuckAt)) return new GeneralSearch.Result(null, expanded, true, nearest(graph));
+            best.remove(n);
+            worst.remove(n);
+            expanded++;
+            expanding = n;
+            int floor = pending(n);
+            int before = changes;
+            forgotten[n] = INF;
+            expandedOnce[n] = true;
+            int u = cell[n];
+            for(int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++){
+                int v = graph.edgeTarget(e);
+                int ng = g[n] + graph.edgeCost(e);
+                int dup = atStamp[v] == generation ? at[v] : NONE;
+                if(dup != NONE && g[dup] <= ng) continue;
+                if(deep){
+                    if(hopStamp[v] != generation) continue;
+                    if(depth[n] + 2 + hops[v] > cap){ truncated = true; continue; }
+                }
+                int hv = heuristic.applyAsInt(v);
+                int fv = (int) Math.max(floor, Math.min(INF - 1L, (long) ng + hv));
+                if(dup != NONE && children[dup] == 0 && dup != root) prune(dup, false);
+                if(freeTop == 0){
+                    if(worst.isEmpty()){ forgotten[n] = Math.min(forgotten[n], fv); continue; }
+                    prune(worst.peek(), true);
+                }
+                int c = alloc(v, n, e, ng, hv, depth[n] + 1);
+                f[c] = fv;
+                children[n]++;
+                reopen(c);
+            }
+            expanding = NONE;
+            if(children[n] == 0 && forgotten[n] == INF) prune(n, false);
+            else reopen(n);
+            if(changes == before){ stuck = n; stuckAt = changes; }
+        }
+    }
+
+    private int alloc(int c, int p, int e, int gv, int hv, int d){
+        int id = free[--freeTop];
+        changes++;
+        cell[id] = c; parent[id] = p; edge[id] = e;
+        g[id] = gv; h[id] = hv; depth[id] = d;
+        forgotten[id] = INF;
+        children[id] = 0;
+        expandedOnce[id] = false;
+        at[c] = id;
+        atStamp[c] = generation;
+        return id;
+    }
+
+    /** What is left to search below n: its own f until expanded, then its forgotten moves. */
+    private int pending(int n){ return expandedOnce[n] ? forgotten[n] : f[n]; }
+
+    /** Re-files n in the open list (if anything is pending) and the leaf list (if it is a leaf). */
+    private void reopen(int n){
+        int p = pending(n);
+        if(p == INF) best.remove(n);
+        else best.update(n, ((long) p << 32) | (Integer.MAX_VALUE - depth[n]));
+        if(children[n] == 0 && n != root && p != INF) worst.update(n, ((long) (Integer.MAX_VALUE - p) << 32) | depth[n]);
+        else worst.remove(n);
+    }
+
+    /**
+     * Drops leaf n, its pending f backed up into the parent when remember is set. A parent left
+     * without children or pending moves is dropped as well.
+     */
+    private void prune(int n, boolean remember){
+        while(true){
+            best.remove(n);
+            worst.remove(n);
+            if(n == root) return;
+            int p = parent[n];
+            if(remember) forgotten[p] = Math.min(forgotten[p], pending(n));
+            if(atStamp[cell[n]] == generation && at[cell[n]] == n) atStamp[cell[n]] = 0;
+            free[freeTop++] = n;
+            changes++;
+            children[p]--;
+            if(p == expanding) return;
+            if(children[p] == 0 && pending(p) == INF){
+                n = p;
+                remember = false;
+                continue;
+            }
+            reopen(p);
+            return;
+        }
+    }
+
+    /** Breadth-first over incoming moves from goal: hops[c] for every cell that can reach it. */
+    private void countHops(GridGraph graph, int goal){
+        int head = 0, tail = 0;
+        hops[goal] = 0;
+        hopStamp[goal] = generation;
+        queue[tail++] = goal;
+        while(head < tail){
+            int c = queue[head++];
+            for(int i = graph.firstInEdge(c), end = graph.endInEdge(c); i < end; i++){
+                int s = graph.inEdgeSource(i);
+                if(hopStamp[s] == generation) continue;
+                hops[s] = hops[c] + 1;
+                hopStamp[s] = generation;
+                queue[tail++] = s;
+            }
+        }
+    }
+
+    /** Path to the node in memory nearest the goal by heuristic, for a limited result. */
+    private Node nearest(GridGraph graph){
+        int near = root;
+        for(int i = 0; i < best.size(); i++){
+            int n = best.at(i);
+            if(h[n] < h[near] || (h[n] == h[near] && g[n] < g[near])) near = n;
+        }
+        return path(graph, near);
+    }
+
+    private Node path(GridGraph graph, int n){
+        int len = depth[n];
+        int[] ids = new int[len + 1];
+        for(int c = n, i = len; i >= 0; c = parent[c], i--) ids[i] = c;
+        Node node = new Node(graph.position(cell[root]));
+        for(int i = 1; i <= len; i++){
+            int e = edge[ids[i]];
+            node = new Node(graph.position(cell[ids[i]]), node, graph.edgeOp(e), graph.edgeCost(e));
+        }
+        return node;
+    }
+}
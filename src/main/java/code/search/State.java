@@ -1,7 +1,6 @@
 package code.search;
 
 import code.model.Position;
-import java.util.Objects;
 
 public class State {
     public final Position pos;
@@ -13,5 +12,5 @@ public class State {
         State s = (State)o;
         return pos.equals(s.pos) && goal.equals(s.goal);
     }
-    @Override public int hashCode(){ return Objects.hash(pos, goal); }
+    @Override public int hashCode(){ return 31 * pos.hashCode() + goal.hashCode(); }
 }
@@ -0,0 +1,33 @@
+package code.search;
+
+import java.util.Arrays;
+
+/** Reusable buffer of (operator, state, step cost) triples filled by Problem.expand. */
+public final class Successors {
+    private byte[] ops = new byte[8];
+    private Object[] states = new Object[8];
+    private int[] costs = new int[8];
+    private int size;
+
+    public int size(){ return size; }
+    public byte op(int i){ return ops[i]; }
+    public Object state(int i){ return states[i]; }
+    public int cost(int i){ return costs[i]; }
+
+    public void clear(){
+        Arrays.fill(states, 0, size, null);
+        size = 0;
+    }
+
+    public void add(int op, Object state, int cost){
+        if(size == ops.length){
+            ops = Arrays.copyOf(ops, size * 2);
+            states = Arrays.copyOf(states, size * 2);
+            costs = Arrays.copyOf(costs, size * 2);
+        }
+        ops[size] = (byte) op;
+        states[size] = state;
+        costs[size] = cost;
+        size++;
+    }
+}
@@ -1,5 +1,6 @@
 package code.viz;
 
+import code.delivery.CollisionAvoider;
 import code.model.*;
 import javax.swing.*;
 import javax.swing.Timer;
@@ -75,7 +76,7 @@ public class SwingVisualizer extends JPanel {
         for(int y=0;y<grid.height;y++){
             for(int x=0;x<grid.width;x++){
                 int sx = x*cellSize, sy = y*cellSize;
-                Position p = new Position(x,y);
+                Position p = grid.at(x,y);
                 if(grid.stores.contains(p)) g.setColor(new Color(80,130,230));
                 else if(grid.destinations.contains(p)) g.setColor(new Color(60,200,100));
                 else g.setColor(Color.WHITE);
@@ -132,8 +133,9 @@ public class SwingVisualizer extends JPanel {
     public static void showFrame(Grid grid, Map<Agent, List<Position>> plannedRoutes, int delayMs, boolean sequential){
         SwingVisualizer vis = new SwingVisualizer(grid);
         for(Map.Entry<Agent,List<Position>> e : plannedRoutes.entrySet()) vis.setRoute(e.getKey(), new ArrayList<>(e.getValue()));
-        // compute conflict-free schedules
-        Map<String, List<Position>> sched = vis.buildConflictFreeSchedules();
+        // waits where they help; collisions they cannot remove are named in the title
+        CollisionAvoider.Schedule schedule = vis.buildSchedules();
+        Map<String, List<Position>> sched = schedule.routes;
         Map<Agent, List<Position>> finalMap = new LinkedHashMap<>();
         for(Agent a : grid.agents){
             List<Position> r = sched.get(a.id);
@@ -141,7 +143,8 @@ public class SwingVisualizer extends JPanel {
             finalMap.put(a, r);
         }
 
-        JFrame f = new JFrame("Delivery Visualizer");
+        JFrame f = new JFrame(schedule.collisionFree() ? "Delivery Visualizer"
+                : "Delivery Visualizer - " + schedule.conflicts.size() + " unresolved collision(s): " + schedule.conflicts.get(0));
         f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         f.add(vis);
         for(Map.Entry<Agent,List<Position>> e : finalMap.entrySet()) vis.setRoute(e.getKey(), e.getValue());
@@ -152,8 +155,9 @@ public class SwingVisualizer extends JPanel {
         else vis.startSimultaneous(delayMs);
     }
 
-    // schedule builder copied to be accessible here
-    public Map<String, List<Position>> buildConflictFreeSchedules(){
+    // waits inserted by the shared CollisionAvoider (vertex + swap conflicts); Schedule.conflicts
+    // lists the collisions waiting could not remove, so the routes are not always collision-free
+    public CollisionAvoider.Schedule buildSchedules(){
         Map<String, List<Position>> sched = new LinkedHashMap<>();
         for(String id : routes.keySet()){
             List<Position> r = routes.get(id);
@@ -169,31 +173,6 @@ public class SwingVisualizer extends JPanel {
                 if(start != null){ r = new ArrayList<>(); r.add(start); sched.put(id, r); }
             }
         }
-        Map<Integer, Map<Position, String>> reserved = new HashMap<>();
-        boolean changed = true; int pass=0;
-        while(changed && pass<500){
-            changed = false; reserved.clear();
-            int maxT = 0;
-            for(List<Position> r : sched.values()) maxT = Math.max(maxT, r.size());
-            for(int t=0;t<maxT;t++){
-                for(String aid : new ArrayList<>(sched.keySet())){
-                    List<Position> r = sched.get(aid);
-                    Position p = (t < r.size()) ? r.get(t) : r.get(r.size()-1);
-                    Map<Position,String> atT = reserved.computeIfAbsent(t, k->new HashMap<>());
-                    if(atT.containsKey(p)){
-                        int insertPos = Math.min(t, r.size()-1);
-                        Position prev = r.get(Math.max(0, insertPos-1));
-                        r.add(insertPos, prev);
-                        changed = true;
-                        break;
-                    } else {
-                        atT.put(p, aid);
-                    }
-                }
-                if(changed) break;
-            }
-            pass++;
-        }
-        return sched;
+        return CollisionAvoider.makeSafe(sched);
     }
 }
@@ -0,0 +1,71 @@
+package code.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import code.model.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+class CollisionAvoiderTest {
+
+    private static List<Position> route(int... xy){
+        List<Position> r = new ArrayList<>();
+        for(int i = 0; i < xy.length; i += 2) r.add(new Position(xy[i], xy[i + 1]));
+        return r;
+    }
+
+    @Test
+    void crossingRoutesWaitInsteadOfColliding(){
+        Map<String, List<Position>> routes = new LinkedHashMap<>();
+        routes.put("a", route(0, 1, 1, 1, 2, 1));
+        routes.put("b", route(1, 0, 1, 1, 1, 2));
+        CollisionAvoider.Schedule s = CollisionAvoider.makeSafe(routes);
+        assertTrue(s.collisionFree());
+        assertEquals(route(1, 0, 1, 0, 1, 1, 1, 2), s.routes.get("b"));
+    }
+
+    @Test
+    void agentParkedOnTheRouteIsReported(){
+        Map<String, List<Position>> routes = new LinkedHashMap<>();
+        routes.put("a", route(1, 0));
+        routes.put("b", route(0, 0, 1, 0, 2, 0));
+        CollisionAvoider.Schedule s = CollisionAvoider.makeSafe(routes);
+        assertFalse(s.collisionFree());
+        assertEquals(Collections.singleton("b"), s.unresolved());
+        assertEquals(routes.get("b"), s.routes.get("b"));
+        CollisionAvoider.Conflict c = s.conflicts.get(0);
+        assertEquals("a", c.other);
+        assertEquals(1, c.time);
+        assertEquals(new Position(1, 0), c.at);
+        assertNull(c.to);
+    }
+
+    @Test
+    void unavoidableSwapIsReported(){
+        Map<String, List<Position>> routes = new LinkedHashMap<>();
+        routes.put("a", route(0, 0, 1, 0));
+        routes.put("b", route(1, 0, 0, 0));
+        CollisionAvoider.Schedule s = CollisionAvoider.makeSafe(routes);
+        assertEquals(Collections.singleton("b"), s.unresolved());
+        CollisionAvoider.Conflict c = s.conflicts.get(0);
+        assertEquals(0, c.time);
+        assertEquals(new Position(1, 0), c.at);
+        assertEquals(new Position(0, 0), c.to);
+    }
+
+    @Test
+    void plannerKeepsConflictsOnTheAssignment(){
+        Grid g = TestGrids.open(4, 1);                 // one corridor, b parked on a's way
+        g.agents.add(new Agent("a", new Position(1, 0)));
+        g.agents.add(new Agent("b", new Position(2, 0)));
+        g.stores.add(new Position(0, 0));
+        g.destinations.add(new Position(3, 0));
+        int conflicts = 0;
+        for(DeliveryPlanner.Assignment a : DeliveryPlanner.planMultiDelivery(g)){
+            assertEquals(a.conflicts.isEmpty(), a.collisionFree());
+            for(CollisionAvoider.Conflict c : a.conflicts) assertEquals(a.agent.id, c.agent);
+            conflicts += a.conflicts.size();
+        }
+        assertTrue(conflicts > 0);
+    }
+}
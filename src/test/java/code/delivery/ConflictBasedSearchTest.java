@@ -0,0 +1,102 @@
+package code.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import code.model.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+class ConflictBasedSearchTest {
+
+    /** UCS cost through waypoints in order, -1 if a leg is unreachable. */
+    private static int ucs(Grid g, List<Position> waypoints){
+        int c = 0;
+        for(int i = 1; i < waypoints.size(); i++){
+            int leg = TestSearches.ucs(g, waypoints.get(i - 1), waypoints.get(i));
+            if(leg < 0) return -1;
+            c += leg;
+        }
+        return c;
+    }
+
+    /** Moves cost their edge, waits 1; waiting on the final cell after the last move is free. */
+    private static long cost(Grid g, List<Position> route){
+        int end = route.size() - 1;
+        while(end > 0 && route.get(end).equals(route.get(end - 1))) end--;
+        long c = 0;
+        for(int i = 1; i <= end; i++) c += route.get(i).equals(route.get(i - 1)) ? 1 : g.moveCost(route.get(i - 1), route.get(i));
+        return c;
+    }
+
+    private static void assertCollisionFree(Map<String, List<Position>> routes){
+        List<List<Position>> all = new ArrayList<>(routes.values());
+        int horizon = 0;
+        for(List<Position> r : all) horizon = Math.max(horizon, r.size());
+        for(int t = 0; t < horizon; t++){
+            for(int a = 0; a < all.size(); a++){
+                for(int b = a + 1; b < all.size(); b++){
+                    assertNotEquals(at(all.get(a), t), at(all.get(b), t));
+                    boolean swap = t + 1 < horizon && at(all.get(a), t).equals(at(all.get(b), t + 1)) && at(all.get(a), t + 1).equals(at(all.get(b), t));
+                    assertFalse(swap, "swap at t=" + t);
+                }
+            }
+        }
+    }
+
+    private static Position at(List<Position> r, int t){ return r.get(Math.min(t, r.size() - 1)); }
+
+    @Test
+    void singleAgentMatchesUcsThroughItsWaypoints(){
+        Random r = new Random(5);
+        for(int world = 0; world < 15; world++){
+            Grid g = TestGrids.random(r.nextLong(), 10, 8, 0.1, 0);
+            List<Position> w = Arrays.asList(TestGrids.cell(r, g), TestGrids.cell(r, g), TestGrids.cell(r, g));
+            int expected = ucs(g, w);
+            Map<String, List<Position>> out = new ConflictBasedSearch(g, 1.0).solve(Collections.singletonMap("a", w));
+            if(expected < 0){ assertNull(out); continue; }
+            assertNotNull(out);
+            assertEquals(expected, cost(g, out.get("a")));
+        }
+    }
+
+    @Test
+    void agentsStayWithinTheBoundAndNeverCollide(){
+        Random r = new Random(9);
+        int solved = 0;
+        for(int world = 0; world < 15; world++){
+            Grid g = TestGrids.random(r.nextLong(), 8, 8, 0.05, 0);
+            Map<String, List<Position>> tasks = new LinkedHashMap<>();
+            Set<Position> starts = new HashSet<>(), ends = new HashSet<>();
+            long lower = 0;
+            boolean reachable = true;
+            while(tasks.size() < 3){
+                Position s = TestGrids.cell(r, g), t = TestGrids.cell(r, g);
+                if(!starts.add(s) || !ends.add(t)) continue;
+                List<Position> w = Arrays.asList(s, t);
+                int c = ucs(g, w);
+                reachable &= c >= 0;
+                lower += c;
+                tasks.put("a" + tasks.size(), w);
+            }
+            if(!reachable) continue;
+            long optimal = -1;
+            for(double bound : new double[]{1.0, 1.5}){
+                ConflictBasedSearch cbs = new ConflictBasedSearch(g, bound);
+                Map<String, List<Position>> out = cbs.solve(tasks);
+                if(out == null) continue;                  // e.g. an agent parked on the only way through
+                solved++;
+                assertCollisionFree(out);
+                long total = 0;
+                for(Map.Entry<String, List<Position>> e : out.entrySet()){
+                    assertEquals(tasks.get(e.getKey()).get(0), e.getValue().get(0));
+                    assertEquals(tasks.get(e.getKey()).get(1), e.getValue().get(e.getValue().size() - 1));
+                    total += cost(g, e.getValue());
+                }
+                assertTrue(total >= lower, "cheaper than the independent UCS routes");
+                if(bound == 1.0) optimal = total;
+                else if(optimal >= 0) assertTrue(total <= bound * optimal, total + " > " + bound + " * " + optimal);
+            }
+        }
+        assertTrue(solved > 10, "only " + solved + " instances solved");
+    }
+}
@@ -0,0 +1,55 @@
+package code.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class TaskAssignmentTest {
+
+    /** {pairs, total} of the best matching: most allowed pairs, then least cost. */
+    private static long[] brute(long[][] cost, int row, boolean[] used){
+        if(row == cost.length) return new long[]{0, 0};
+        long[] best = brute(cost, row + 1, used);      // row left unmatched
+        for(int c = 0; c < used.length; c++){
+            if(used[c] || cost[row][c] >= TaskAssignment.NO_PAIR) continue;
+            used[c] = true;
+            long[] rest = brute(cost, row + 1, used);
+            used[c] = false;
+            long pairs = rest[0] + 1, total = rest[1] + cost[row][c];
+            if(pairs > best[0] || (pairs == best[0] && total < best[1])) best = new long[]{pairs, total};
+        }
+        return best;
+    }
+
+    private static long[] score(long[][] cost, int[] match){
+        boolean[] used = new boolean[cost[0].length];
+        long pairs = 0, total = 0;
+        for(int row = 0; row < match.length; row++){
+            int c = match[row];
+            if(c < 0) continue;
+            assertFalse(used[c], "column " + c + " matched twice");
+            assertTrue(cost[row][c] < TaskAssignment.NO_PAIR, "forbidden pair");
+            used[c] = true;
+            pairs++;
+            total += cost[row][c];
+        }
+        return new long[]{pairs, total};
+    }
+
+    @Test
+    void hungarianAndAuctionMatchBruteForce(){
+        Random r = new Random(40);
+        for(int i = 0; i < 400; i++){
+            int n = 1 + r.nextInt(6), m = 1 + r.nextInt(6);
+            long[][] cost = new long[n][m];
+            for(long[] row : cost) for(int c = 0; c < m; c++) row[c] = r.nextInt(5) == 0 ? TaskAssignment.NO_PAIR : r.nextInt(50);
+            long[] best = brute(cost, 0, new boolean[m]);
+            long[] h = score(cost, TaskAssignment.hungarian(cost)), a = score(cost, TaskAssignment.auction(cost));
+            assertEquals(best[0], h[0], "hungarian pairs, case " + i);
+            assertEquals(best[1], h[1], "hungarian cost, case " + i);
+            assertEquals(best[0], a[0], "auction pairs, case " + i);
+            assertEquals(best[1], a[1], "auction cost, case " + i);
+        }
+    }
+}
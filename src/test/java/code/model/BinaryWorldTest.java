@@ -0,0 +1,43 @@
+package code.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.*;
+import org.junit.jupiter.api.Test;
+
+class BinaryWorldTest {
+
+    @Test
+    void negativeIdLengthIsAFormatError() throws Exception {
+        Grid g = TestGrids.open(2, 2);
+        g.agents.add(new Agent("a", new Position(1, 1)));
+        Path file = Files.createTempFile("agent", ".bworld");
+        try {
+            BinaryWorld.write(g, file);
+            byte[] bytes = Files.readAllBytes(file);
+            int at = bytes.length - 3;                 // short length, then the one-byte id
+            bytes[at] = (byte) 0xFF;
+            bytes[at + 1] = (byte) 0xFE;
+            Files.write(file, bytes);
+            WorldFormatException e = assertThrows(WorldFormatException.class, () -> BinaryWorld.load(file));
+            assertTrue(e.problem.contains("negative id length"), e.getMessage());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void foreignAndTruncatedFilesAreFormatErrors() throws Exception {
+        Path file = Files.createTempFile("foreign", ".bworld");
+        try {
+            Files.write(file, new byte[64]);
+            assertThrows(WorldFormatException.class, () -> BinaryWorld.load(file));
+            BinaryWorld.write(TestGrids.open(3, 3), file);
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 8));
+            assertThrows(WorldFormatException.class, () -> BinaryWorld.load(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package code.model;
+
+import java.util.Random;
+
+/** Small seeded grids for the tests. */
+public final class TestGrids {
+    private TestGrids(){}
+
+    /** Every neighbour pair connected both ways at cost 1. */
+    public static Grid open(int width, int height){
+        Grid g = new Grid(width, height);
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < width; x++){
+                if(x + 1 < width) road(g, new Position(x, y), new Position(x + 1, y), 1);
+                if(y + 1 < height) road(g, new Position(x, y), new Position(x, y + 1), 1);
+            }
+        }
+        return g;
+    }
+
+    /** Neighbour roads of cost 1..4, a `density` fraction of them blocked, and `tunnels` random tunnels. */
+    public static Grid random(long seed, int width, int height, double density, int tunnels){
+        Random r = new Random(seed);
+        Grid g = new Grid(width, height);
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < width; x++){
+                if(x + 1 < width) road(g, new Position(x, y), new Position(x + 1, y), r.nextDouble() < density ? 0 : 1 + r.nextInt(4));
+                if(y + 1 < height) road(g, new Position(x, y), new Position(x, y + 1), r.nextDouble() < density ? 0 : 1 + r.nextInt(4));
+            }
+        }
+        for(int i = 0; i < tunnels; i++) g.addTunnel(cell(r, g), cell(r, g));
+        return g;
+    }
+
+    public static Position cell(Random r, Grid g){ return new Position(r.nextInt(g.width), r.nextInt(g.height)); }
+
+    private static void road(Grid g, Position a, Position b, int cost){
+        g.setEdge(a, b, cost);
+        g.setEdge(b, a, cost);
+    }
+}
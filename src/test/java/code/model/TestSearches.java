@@ -0,0 +1,20 @@
+package code.model;
+
+import code.delivery.DeliveryProblem;
+import code.search.GeneralSearch;
+import code.search.SearchStrategy;
+
+/** Reference runs for the tests: any strategy on a DeliveryProblem, UCS as the yardstick. */
+public final class TestSearches {
+    private TestSearches(){}
+
+    public static GeneralSearch.Result run(Grid g, Position s, Position t, SearchStrategy strategy){
+        return GeneralSearch.generalSearch(new DeliveryProblem(g, s, t), strategy);
+    }
+
+    /** Cost of r's route, -1 when it has none. */
+    public static int cost(GeneralSearch.Result r){ return r.node == null ? -1 : r.node.pathCost; }
+
+    /** Least cost s -> t, -1 when t is unreachable. */
+    public static int ucs(Grid g, Position s, Position t){ return cost(run(g, s, t, SearchStrategy.UCS)); }
+}
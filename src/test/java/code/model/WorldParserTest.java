@@ -0,0 +1,29 @@
+package code.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class WorldParserTest {
+
+    private static Grid parse(byte[] world) throws Exception {
+        return WorldParser.parse(Channels.newChannel(new ByteArrayInputStream(world)), "test.world");
+    }
+
+    @Test
+    void agentIdsAreUtf8() throws Exception {
+        Grid g = parse("GRID 3 3\nAGENT Zoë-車 1 2\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("Zoë-車", g.agents.get(0).id);
+        assertEquals(new Position(1, 2), g.agents.get(0).pos);
+    }
+
+    @Test
+    void malformedUtf8IsAFormatError(){
+        byte[] world = {'G', 'R', 'I', 'D', ' ', '3', ' ', '3', '\n', 'A', 'G', 'E', 'N', 'T', ' ', 'a', (byte) 0xC3, ' ', '1', ' ', '1', '\n'};
+        WorldFormatException e = assertThrows(WorldFormatException.class, () -> parse(world));
+        assertEquals(2, e.line);
+    }
+}
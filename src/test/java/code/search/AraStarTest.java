@@ -0,0 +1,30 @@
+package code.search;
+
+import static code.model.TestSearches.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import code.delivery.DeliveryProblem;
+import code.model.*;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class AraStarTest {
+
+    @Test
+    void finalRoundMatchesUcs(){
+        Random r = new Random(25);
+        for(int world = 0; world < 20; world++){
+            Grid g = TestGrids.random(r.nextLong(), 14, 11, 0.2, 2);
+            for(int q = 0; q < 10; q++){
+                Position s = TestGrids.cell(r, g), t = TestGrids.cell(r, g);
+                int ucs = ucs(g, s, t);
+                GeneralSearch.Result ara = run(g, s, t, SearchStrategy.ARASTAR);
+                assertEquals(ucs, cost(ara));
+                assertFalse(ara.limited);
+                GeneralSearch.Result steep = GeneralSearch.generalSearch(new DeliveryProblem(g, s, t), SearchStrategy.ARASTAR,
+                        SearchOptions.defaults().weights(5, 4));
+                assertEquals(ucs, cost(steep));
+            }
+        }
+    }
+}
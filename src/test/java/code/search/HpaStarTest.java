@@ -0,0 +1,58 @@
+package code.search;
+
+import static code.model.TestSearches.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import code.model.*;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class HpaStarTest {
+
+    /** HPA* is near-optimal: it must find a route exactly when UCS does, never a cheaper one. */
+    private static void check(Grid g, HpaStar hpa, Position s, Position t){
+        int ucs = ucs(g, s, t);
+        int found = cost(hpa.search(s, t));
+        if(ucs < 0) assertEquals(-1, found, s + " -> " + t);
+        else assertTrue(found >= ucs, () -> s + " -> " + t + ": " + found + " < " + ucs);
+    }
+
+    @Test
+    void findsARouteExactlyWhenUcsDoes(){
+        Random r = new Random(13);
+        for(int world = 0; world < 8; world++){
+            Grid g = TestGrids.random(r.nextLong(), 40, 30, 0.2, 2);
+            HpaStar hpa = new HpaStar(g, 8);
+            for(int q = 0; q < 40; q++) check(g, hpa, TestGrids.cell(r, g), TestGrids.cell(r, g));
+        }
+    }
+
+    @Test
+    void followsEdits(){
+        Random r = new Random(21);
+        Grid g = TestGrids.random(3, 32, 32, 0.15, 0);
+        HpaStar hpa = new HpaStar(g, 8);
+        for(int edit = 0; edit < 30; edit++){
+            Position a = new Position(r.nextInt(31), r.nextInt(32)), b = new Position(a.x + 1, a.y);
+            int c = r.nextBoolean() ? 0 : 1 + r.nextInt(4);
+            g.setEdge(a, b, c);
+            g.setEdge(b, a, c);
+            for(int q = 0; q < 5; q++) check(g, hpa, TestGrids.cell(r, g), TestGrids.cell(r, g));
+        }
+    }
+
+    @Test
+    void cancelledQueryStopsAndTheNextOneFinishesTheRebuild(){
+        Grid g = TestGrids.random(5, 40, 40, 0.15, 1);
+        HpaStar hpa = new HpaStar(g, 8);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        GeneralSearch.Result r = hpa.search(new Position(0, 0), new Position(39, 39), SearchOptions.defaults().token(token));
+        assertNull(r.node);
+        assertTrue(r.limited);
+        assertEquals(0, hpa.rebuiltClusters());
+        Random q = new Random(8);
+        for(int i = 0; i < 20; i++) check(g, hpa, TestGrids.cell(q, g), TestGrids.cell(q, g));
+        assertEquals(hpa.clusterCount(), hpa.rebuiltClusters());
+    }
+}
@@ -0,0 +1,93 @@
+package code.search;
+
+import static code.model.TestSearches.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import code.delivery.DeliveryProblem;
+import code.model.*;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class IdaStarTest {
+
+    private static int depth(GeneralSearch.Result r){ return r.node == null ? -1 : r.node.depth; }
+
+    @Test
+    @Timeout(30)
+    void idaStarMatchesUcsAndIdsMatchesBfs(){
+        Random r = new Random(5);
+        for(int i = 0; i < 40; i++){
+            Grid g = TestGrids.random(i, 4 + r.nextInt(16), 4 + r.nextInt(16), 0.3, i % 3);
+            for(int q = 0; q < 5; q++){
+                Position a = TestGrids.cell(r, g), b = TestGrids.cell(r, g);
+                GeneralSearch.Result ida = run(g, a, b, SearchStrategy.IDASTAR), ids = run(g, a, b, SearchStrategy.IDS);
+                assertFalse(ida.limited || ids.limited);
+                assertEquals(ucs(g, a, b), cost(ida), a + "->" + b);
+                assertEquals(depth(run(g, a, b, SearchStrategy.BFS)), depth(ids), a + "->" + b);
+            }
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void unreachableGoalIsProvenQuickly(){
+        Grid g = TestGrids.open(30, 30);
+        Position goal = new Position(29, 29);
+        for(Position p : new Position[]{new Position(28, 29), new Position(29, 28)}){
+            g.setEdge(p, goal, 0);
+            g.setEdge(goal, p, 0);
+        }
+        for(SearchStrategy s : new SearchStrategy[]{SearchStrategy.IDS, SearchStrategy.IDASTAR}){
+            GeneralSearch.Result r = run(g, new Position(0, 0), goal, s);
+            assertNull(r.node);
+            assertFalse(r.limited, s + " gave up instead of proving the goal unreachable");
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void openGridCornerToCorner(){
+        Grid g = TestGrids.open(30, 30);
+        GeneralSearch.Result r = run(g, new Position(0, 0), new Position(29, 29), SearchStrategy.IDS);
+        assertEquals(58, depth(r));
+    }
+
+    @Test
+    void nodeBudgetEndsLimited(){
+        Grid g = TestGrids.open(30, 30);
+        GeneralSearch.Result r = GeneralSearch.generalSearch(new DeliveryProblem(g, new Position(0, 0), new Position(29, 29)),
+                SearchStrategy.IDS, SearchOptions.defaults().maxExpanded(100));
+        assertNull(r.node);
+        assertTrue(r.limited);
+        assertEquals(100, r.nodesExpanded);
+        assertNotNull(r.partial);
+    }
+
+    @Test
+    @Timeout(30)
+    void hashedStatesMatchIndexedOnes(){
+        Random r = new Random(9);
+        for(int i = 0; i < 20; i++){
+            Grid g = TestGrids.random(i, 4 + r.nextInt(16), 4 + r.nextInt(16), 0.3, i % 3);
+            for(int q = 0; q < 5; q++){
+                Position a = TestGrids.cell(r, g), b = TestGrids.cell(r, g);
+                Problem hashed = new DeliveryProblem(g, a, b){
+                    @Override public int stateCount(){ return -1; }
+                };
+                assertEquals(ucs(g, a, b), cost(GeneralSearch.generalSearch(hashed, SearchStrategy.IDASTAR)), a + "->" + b);
+                assertEquals(depth(run(g, a, b, SearchStrategy.IDS)), depth(GeneralSearch.generalSearch(hashed, SearchStrategy.IDS)));
+            }
+        }
+    }
+
+    @Test
+    void deepeningBudgetEndsLimited(){
+        Grid g = TestGrids.open(30, 30);
+        GeneralSearch.Result r = GeneralSearch.generalSearch(new DeliveryProblem(g, new Position(0, 0), new Position(29, 29)),
+                SearchStrategy.IDS, SearchOptions.defaults().deepeningBudget(500));
+        assertNull(r.node);
+        assertTrue(r.limited);
+        assertEquals(500, r.nodesExpanded);
+    }
+}
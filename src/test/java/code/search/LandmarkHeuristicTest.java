@@ -0,0 +1,48 @@
+package code.search;
+
+import static code.model.TestSearches.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import code.model.*;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class LandmarkHeuristicTest {
+
+    @Test
+    void tablesOutliveEditsThatOnlyRaiseCosts(){
+        Random r = new Random(3);
+        Grid g = TestGrids.random(7, 24, 24, 0.2, 3);
+        LandmarkHeuristic h = LandmarkHeuristic.forGraph(g.graph());
+        for(int edit = 0; edit < 40; edit++){
+            Position a = new Position(r.nextInt(23), r.nextInt(24)), b = new Position(a.x + 1, a.y);
+            Integer c = g.getEdgeCost(a, b);
+            if(c == null || c <= 0) continue;
+            g.setEdge(a, b, r.nextBoolean() ? 0 : c + 1 + r.nextInt(5));
+        }
+        GridGraph graph = g.graph();
+        assertSame(h, graph.derivedIfPresent(LandmarkHeuristic.class));
+        for(int q = 0; q < 60; q++){
+            Position s = TestGrids.cell(r, g), t = TestGrids.cell(r, g);
+            int d = ucs(g, s, t);
+            if(d < 0) continue;
+            int bound = h.toward(graph.cellOf(t)).applyAsInt(graph.cellOf(s));
+            assertTrue(bound <= d, () -> s + " -> " + t + ": " + bound + " > " + d);
+        }
+
+        g.addTunnel(new Position(0, 0), new Position(5, 5)); // a new move may undercut the old distances
+        assertNull(g.graph().derivedIfPresent(LandmarkHeuristic.class));
+    }
+
+    @Test
+    @Timeout(20)
+    void tablesArriveInTheBackgroundAfterWarmup() throws InterruptedException {
+        GridGraph graph = TestGrids.random(11, 30, 30, 0.1, 2).graph();
+        for(int i = 0; i < LandmarkHeuristic.WARMUP_QUERIES; i++) assertNull(LandmarkHeuristic.ifBuilt(graph));
+        while(graph.derivedIfPresent(LandmarkHeuristic.class) == null) Thread.sleep(5);
+        IntUnaryOperator h = Heuristics.precomputed(graph, 0);
+        assertEquals(LandmarkHeuristic.forGraph(graph).toward(0).applyAsInt(899), h.applyAsInt(899));
+    }
+}
@@ -0,0 +1,45 @@
+package code.search;
+
+import static code.model.TestSearches.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import code.model.*;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LpaStarTest {
+
+    private static int cost(LpaStar lpa){ return lpa.cost() >= GridGraph.UNREACHABLE ? -1 : lpa.cost(); }
+
+    private static int routeCost(Grid g, java.util.List<Position> route){
+        int c = 0;
+        for(int i = 1; i < route.size(); i++) c += g.moveCost(route.get(i - 1), route.get(i));
+        return c;
+    }
+
+    @Test
+    void repairsMatchUcsAfterEveryEdit(){
+        Random r = new Random(7);
+        for(int world = 0; world < 10; world++){
+            Grid g = TestGrids.random(r.nextLong(), 12, 10, 0.15, 1);
+            Position s = TestGrids.cell(r, g), t = TestGrids.cell(r, g);
+            GridGraph graph = g.graph();
+            LpaStar lpa = new LpaStar(graph, graph.cellOf(s), graph.cellOf(t));
+            lpa.computeShortestPath();
+            assertEquals(ucs(g, s, t), cost(lpa));
+            for(int edit = 0; edit < 40; edit++){
+                Position a = new Position(r.nextInt(g.width - 1), r.nextInt(g.height));
+                Position b = new Position(a.x + 1, a.y);
+                int cost = r.nextInt(3) == 0 ? 0 : 1 + r.nextInt(4);
+                g.setEdge(a, b, cost);
+                g.setEdge(b, a, cost);
+                graph = g.graph();
+                lpa.edgesChanged(graph, graph.cellOf(a), graph.cellOf(b));
+                lpa.computeShortestPath();
+                int expected = ucs(g, s, t);
+                assertEquals(expected, cost(lpa), "world " + world + " edit " + edit);
+                if(expected >= 0) assertEquals(expected, routeCost(g, lpa.route()));
+            }
+        }
+    }
+}
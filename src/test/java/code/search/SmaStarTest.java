@@ -0,0 +1,58 @@
+package code.search;
+
+import static code.model.TestSearches.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import code.delivery.DeliveryProblem;
+import code.model.*;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class SmaStarTest {
+
+    private static GeneralSearch.Result sma(Grid g, Position s, Position t, int cap){
+        return GeneralSearch.generalSearch(new DeliveryProblem(g, s, t), SearchStrategy.SMASTAR, SearchOptions.defaults().nodeCap(cap));
+    }
+
+    @Test
+    @Timeout(10)
+    void routeLongerThanTheCapEndsLimited(){
+        Grid g = TestGrids.open(3, 1);
+        GeneralSearch.Result r = sma(g, new Position(0, 0), new Position(2, 0), 2);
+        assertNull(r.node);
+        assertTrue(r.limited);
+    }
+
+    @Test
+    @Timeout(30)
+    void everyTinyCapEnds(){
+        Grid g = TestGrids.open(5, 4);
+        for(int cap = 2; cap <= 21; cap++){
+            for(int s = 0; s < 20; s++){
+                for(int t = 0; t < 20; t++){
+                    Position a = new Position(s % 5, s / 5), b = new Position(t % 5, t / 5);
+                    GeneralSearch.Result r = sma(g, a, b, cap);
+                    int ref = ucs(g, a, b);
+                    if(!r.limited) assertEquals(ref, r.node == null ? -1 : r.node.pathCost, "cap " + cap + " " + a + "->" + b);
+                    else if(r.node != null) assertTrue(r.node.pathCost >= ref);
+                }
+            }
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void matchesUcsWhenTheRouteFits(){
+        Random r = new Random(11);
+        for(int i = 0; i < 40; i++){
+            Grid g = TestGrids.random(i, 4 + r.nextInt(12), 4 + r.nextInt(12), 0.3, i % 3);
+            for(int q = 0; q < 5; q++){
+                Position a = TestGrids.cell(r, g), b = TestGrids.cell(r, g);
+                GeneralSearch.Result x = sma(g, a, b, 2 * g.width * g.height + 2);
+                assertFalse(x.limited);
+                assertEquals(ucs(g, a, b), cost(x), a + "->" + b);
+            }
+        }
+    }
+}